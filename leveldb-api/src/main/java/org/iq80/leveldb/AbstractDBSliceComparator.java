@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb;
+
+/**
+ * Base for comparators that implement only the region methods of {@link DBSliceComparator}; the
+ * whole-array methods of {@link DBComparator} are answered through them.
+ */
+public abstract class AbstractDBSliceComparator implements DBSliceComparator {
+    @Override
+    public int compare(byte[] left, byte[] right) {
+        return compare(left, 0, left.length, right, 0, right.length);
+    }
+
+    @Override
+    public byte[] findShortestSeparator(byte[] start, byte[] limit) {
+        byte[] separator = findShortestSeparator(start, 0, start.length, limit, 0, limit.length);
+        return separator == null ? start : separator;
+    }
+
+    @Override
+    public byte[] findShortSuccessor(byte[] key) {
+        byte[] successor = findShortSuccessor(key, 0, key.length);
+        return successor == null ? key : successor;
+    }
+}
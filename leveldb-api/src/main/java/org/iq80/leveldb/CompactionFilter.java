@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb;
+
+/**
+ * Inspects the entries a compaction writes, so expired or otherwise unwanted values are removed
+ * as part of the compactions that happen anyway instead of by scanning the database.
+ * <p>
+ * 压缩过滤器：compaction写出每条value时回调，可以保留、删除或修改该value
+ */
+public interface CompactionFilter {
+    String name();
+
+    /**
+     * Called for each value that survives a compaction and that no snapshot needs in its current
+     * form.  Merge operands and deletions are not passed to the filter.
+     *
+     * @param level the level the compaction reads from
+     * @return the value argument itself to keep the entry, another array to replace its value, or
+     * null to remove the entry
+     */
+    byte[] filter(int level, byte[] key, byte[] value);
+
+    /**
+     * Whether the filter looks at values that are stored in blob files.  When false, those values
+     * are not read back for the filter, which receives an empty array in their place; returning
+     * that array keeps the entry.
+     */
+    boolean needsBlobValues();
+}
@@ -18,6 +18,8 @@
 package org.iq80.leveldb;
 
 import java.io.Closeable;
+import java.io.File;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -37,6 +39,17 @@ public interface DB extends Iterable<Map.Entry<byte[], byte[]>>, Closeable {
 
     void delete(byte[] key) throws DBException;
 
+    /**
+     * Deletes every key in [begin, end) with a single range deletion record.
+     */
+    void deleteRange(byte[] begin, byte[] end) throws DBException;
+
+    /**
+     * Writes a merge operand that {@link Options#mergeOperator()} combines with the current value
+     * of the key when it is read, without looking the key up first.
+     */
+    void merge(byte[] key, byte[] value) throws DBException;
+
     void write(WriteBatch updates) throws DBException;
 
     WriteBatch createWriteBatch();
@@ -53,6 +66,18 @@ public interface DB extends Iterable<Map.Entry<byte[], byte[]>>, Closeable {
      */
     Snapshot delete(byte[] key, WriteOptions options) throws DBException;
 
+    /**
+     * @return null if options.isSnapshot()==false otherwise returns a snapshot
+     * of the DB after this operation.
+     */
+    Snapshot deleteRange(byte[] begin, byte[] end, WriteOptions options) throws DBException;
+
+    /**
+     * @return null if options.isSnapshot()==false otherwise returns a snapshot
+     * of the DB after this operation.
+     */
+    Snapshot merge(byte[] key, byte[] value, WriteOptions options) throws DBException;
+
     /**
      * @return null if options.isSnapshot()==false otherwise returns a snapshot
      * of the DB after this operation.
@@ -83,4 +108,12 @@ public interface DB extends Iterable<Map.Entry<byte[], byte[]>>, Closeable {
      * @param end   if null then compaction ends at the last key
      */
     void compactRange(byte[] begin, byte[] end) throws DBException;
+
+    /**
+     * Adds table files written outside the database to it without passing their entries through
+     * the log, the memtable and the upper levels.  The files must not overlap each other; their
+     * entries become newer than every entry already in the database, and each file is placed in
+     * the deepest level it can occupy.  The files themselves are left in place.
+     */
+    void ingestExternalFiles(List<File> files) throws DBException;
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb;
+
+/**
+ * A {@link DBComparator} that reads keys where they are stored, given as a region of an array, so
+ * the database does not copy both keys into new arrays for every comparison.  Extend
+ * {@link AbstractDBSliceComparator} to implement only the region methods.
+ * <p>
+ * 按数组区间比较key的比较器，避免每次比较都把key复制成新数组
+ */
+public interface DBSliceComparator extends DBComparator {
+    /**
+     * Compares the key in {@code left[leftOffset, leftOffset + leftLength)} to the key in
+     * {@code right[rightOffset, rightOffset + rightLength)}.  The arrays must not be modified.
+     */
+    int compare(byte[] left, int leftOffset, int leftLength, byte[] right, int rightOffset, int rightLength);
+
+    /**
+     * Region form of {@link #findShortestSeparator(byte[], byte[])}.
+     *
+     * @return a short key in [start, limit), or null to use start unchanged
+     */
+    byte[] findShortestSeparator(byte[] start, int startOffset, int startLength, byte[] limit, int limitOffset, int limitLength);
+
+    /**
+     * Region form of {@link #findShortSuccessor(byte[])}.
+     *
+     * @return a short key greater than or equal to key, or null to use key unchanged
+     */
+    byte[] findShortSuccessor(byte[] key, int offset, int length);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb;
+
+import java.util.List;
+
+/**
+ * Combines merge operands written with {@link DB#merge(byte[], byte[])} into a value, so a
+ * read-modify-write such as incrementing a counter can be written without reading the key first.
+ * <p>
+ * 合并操作符：merge只写入操作数，读取和Compaction时才把操作数与已有value合并
+ */
+public interface MergeOperator {
+    String name();
+
+    /**
+     * Applies the operands to the existing value of the key.
+     *
+     * @param existingValue the value the operands were written on top of, or null if the key had none
+     * @param operands the operands in the order they were written
+     * @return the merged value
+     */
+    byte[] fullMerge(byte[] key, byte[] existingValue, List<byte[]> operands);
+
+    /**
+     * Combines two adjacent operands into one when the existing value is not known yet, which lets
+     * compaction shrink long operand chains.  Simple implementations should return null.
+     *
+     * @param leftOperand the older operand
+     * @param rightOperand the newer operand
+     * @return the combined operand, or null if the operands cannot be combined
+     */
+    byte[] partialMerge(byte[] key, byte[] leftOperand, byte[] rightOperand);
+}
@@ -26,13 +26,30 @@ public class Options {
     private int writeBufferSize = 4 << 20;
 
     private int maxOpenFiles = 1000;
+    private long tableCacheIndexSize;
 
     private int blockRestartInterval = 16;
     private int blockSize = 4 * 1024;
+    private boolean blockHashIndex;
+    private boolean partitionedIndex;
+    private long indexCacheSize = 8 << 20;
+    private long compressedBlockCacheSize;
+    private int blobValueThreshold;
+    private double blobMinLiveRatio = 0.5;
+    private double compactionDeletionRatio;
+    private long maxFileAge;
     private CompressionType compressionType = CompressionType.SNAPPY;
+    private int compressionThreads;
+    private long bytesPerSync;
+    private int compactionReadaheadSize = 2 << 20;
+    private long maxCompactionBytes = 50 << 20;
+    private int preloadLevels;
+    private int preloadThreads = 4;
     private boolean verifyChecksums = true;
     private boolean paranoidChecks;
     private DBComparator comparator;
+    private MergeOperator mergeOperator;
+    private CompactionFilter compactionFilter;
     private Logger logger;
     private long cacheSize;
 
@@ -87,6 +104,19 @@ public class Options {
         return this;
     }
 
+    /**
+     * tableCacheIndexSize:打开的table常驻内存的索引（分区索引时为顶层索引）总大小上限（字节），超出时关闭最久未使用的table；0表示只按maxOpenFiles限制
+     * @return long
+     */
+    public long tableCacheIndexSize() {
+        return tableCacheIndexSize;
+    }
+
+    public Options tableCacheIndexSize(long tableCacheIndexSize) {
+        this.tableCacheIndexSize = tableCacheIndexSize;
+        return this;
+    }
+
     /**
      * blockRestartInterval: block重启点之间的key的个数
      * @return int
@@ -113,6 +143,111 @@ public class Options {
         return this;
     }
 
+    /**
+     * blockHashIndex:data block在重启点数组之后追加user key的哈希索引，点查时直接定位重启区间。
+     * 开启后写出的文件不能被不支持该格式的版本读取。自定义comparator可能认为字节不同的key相等，此时不生成哈希索引
+     * @return boolean
+     */
+    public boolean blockHashIndex() {
+        return blockHashIndex;
+    }
+
+    public Options blockHashIndex(boolean blockHashIndex) {
+        this.blockHashIndex = blockHashIndex;
+        return this;
+    }
+
+    /**
+     * partitionedIndex:index block切分为多个分区，table打开时只常驻顶层索引，分区按需加载
+     * @return boolean
+     */
+    public boolean partitionedIndex() {
+        return partitionedIndex;
+    }
+
+    public Options partitionedIndex(boolean partitionedIndex) {
+        this.partitionedIndex = partitionedIndex;
+        return this;
+    }
+
+    /**
+     * indexCacheSize:所有打开的table共享的index分区缓存大小（字节）
+     * @return long
+     */
+    public long indexCacheSize() {
+        return indexCacheSize;
+    }
+
+    public Options indexCacheSize(long indexCacheSize) {
+        this.indexCacheSize = indexCacheSize;
+        return this;
+    }
+
+    /**
+     * compressedBlockCacheSize:在堆外缓存从sstable读出的block原始（压缩）数据的总大小（字节），按文件号和block偏移查找，命中时只需解压而不读文件；compaction顺序读取不使用该缓存，mmap方式打开的文件也不使用；0表示不缓存
+     * @return long
+     */
+    public long compressedBlockCacheSize() {
+        return compressedBlockCacheSize;
+    }
+
+    public Options compressedBlockCacheSize(long compressedBlockCacheSize) {
+        this.compressedBlockCacheSize = compressedBlockCacheSize;
+        return this;
+    }
+
+    /**
+     * blobValueThreshold:大于等于该字节数的value在memtable刷盘和compaction时写入单独的blob文件，sstable中只保存指针；0表示不分离
+     * @return int
+     */
+    public int blobValueThreshold() {
+        return blobValueThreshold;
+    }
+
+    public Options blobValueThreshold(int blobValueThreshold) {
+        this.blobValueThreshold = blobValueThreshold;
+        return this;
+    }
+
+    /**
+     * blobMinLiveRatio:blob文件中仍被引用的数据比例低于该值时，后台GC会重写引用它的sstable并迁移有效value
+     * @return double
+     */
+    public double blobMinLiveRatio() {
+        return blobMinLiveRatio;
+    }
+
+    public Options blobMinLiveRatio(double blobMinLiveRatio) {
+        this.blobMinLiveRatio = blobMinLiveRatio;
+        return this;
+    }
+
+    /**
+     * compactionDeletionRatio:sstable中删除标记占记录数的比例达到该值时，即使所在level未超过大小限制也会被compaction；0表示不启用
+     * @return double
+     */
+    public double compactionDeletionRatio() {
+        return compactionDeletionRatio;
+    }
+
+    public Options compactionDeletionRatio(double compactionDeletionRatio) {
+        this.compactionDeletionRatio = compactionDeletionRatio;
+        return this;
+    }
+
+    /**
+     * maxFileAge:sstable写入后超过该毫秒数会被compaction到下一层（最后一层除外）；0表示不启用
+     * @return long
+     */
+    public long maxFileAge() {
+        return maxFileAge;
+    }
+
+    public Options maxFileAge(long maxFileAge) {
+        this.maxFileAge = maxFileAge;
+        return this;
+    }
+
     /**
      * CompressionType:压缩block的方式
      * @return CompressionType
@@ -127,6 +262,84 @@ public class Options {
         return this;
     }
 
+    /**
+     * compressionThreads:memtable刷盘和compaction写sstable时并行压缩data block的线程数，压缩后的block仍按顺序写入，文件格式不变；0表示在写文件的线程上压缩
+     * @return int
+     */
+    public int compressionThreads() {
+        return compressionThreads;
+    }
+
+    public Options compressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    /**
+     * bytesPerSync:写sstable时每写入该字节数就把已写入的数据同步到磁盘，避免文件写完时一次性刷出大量脏页；0表示只在文件写完时同步
+     * @return long
+     */
+    public long bytesPerSync() {
+        return bytesPerSync;
+    }
+
+    public Options bytesPerSync(long bytesPerSync) {
+        this.bytesPerSync = bytesPerSync;
+        return this;
+    }
+
+    /**
+     * compactionReadaheadSize:compaction顺序读取输入sstable时每次预读的字节数，并在后台提前读取下一段；0表示逐个block读取。mmap方式打开的文件不使用预读
+     * @return int
+     */
+    public int compactionReadaheadSize() {
+        return compactionReadaheadSize;
+    }
+
+    public Options compactionReadaheadSize(int compactionReadaheadSize) {
+        this.compactionReadaheadSize = compactionReadaheadSize;
+        return this;
+    }
+
+    /**
+     * maxCompactionBytes:一次compaction选取的本层输入文件总大小上限（字节），超出时不再扩展输入；手动compaction和level 0的compaction超出时按key范围（level 0按文件新旧）拆分为多次依次执行，每次单独提交版本；0表示不限制
+     * @return long
+     */
+    public long maxCompactionBytes() {
+        return maxCompactionBytes;
+    }
+
+    public Options maxCompactionBytes(long maxCompactionBytes) {
+        this.maxCompactionBytes = maxCompactionBytes;
+        return this;
+    }
+
+    /**
+     * preloadLevels:打开DB时预先打开从level 0开始的该数量的level中的所有sstable并加载其索引（包括分区索引），避免重启后最初的查询在请求路径上打开文件；0表示不预加载，DbConstants.NUM_LEVELS表示所有level
+     * @return int
+     */
+    public int preloadLevels() {
+        return preloadLevels;
+    }
+
+    public Options preloadLevels(int preloadLevels) {
+        this.preloadLevels = preloadLevels;
+        return this;
+    }
+
+    /**
+     * preloadThreads:预加载sstable时并行打开文件的线程数
+     * @return int
+     */
+    public int preloadThreads() {
+        return preloadThreads;
+    }
+
+    public Options preloadThreads(int preloadThreads) {
+        this.preloadThreads = preloadThreads;
+        return this;
+    }
+
     /**
      * verifChecksums:所有读取数据都会校验
      * @return boolean
@@ -167,6 +380,32 @@ public class Options {
         return this;
     }
 
+    /**
+     * mergeOperator:合并操作符，用于在读取和compaction时合并merge写入的操作数；为空时不能调用merge
+     * @return MergeOperator
+     */
+    public MergeOperator mergeOperator() {
+        return mergeOperator;
+    }
+
+    public Options mergeOperator(MergeOperator mergeOperator) {
+        this.mergeOperator = mergeOperator;
+        return this;
+    }
+
+    /**
+     * compactionFilter:compaction写出value时回调的过滤器，可删除过期或无用的数据；为空时不过滤
+     * @return CompactionFilter
+     */
+    public CompactionFilter compactionFilter() {
+        return compactionFilter;
+    }
+
+    public Options compactionFilter(CompactionFilter compactionFilter) {
+        this.compactionFilter = compactionFilter;
+        return this;
+    }
+
 
     /**
      * logger:db产生的处理和错误日志写入指定文件，若为空，则在同一个目录中创建一个文件写入db
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb;
+
+/**
+ * Removes values whose expiry time has passed.  Each value starts with its expiry time as an
+ * 8 byte big endian count of milliseconds since the epoch, where 0 means the value never
+ * expires; use {@link #withExpiry(byte[], long)} to write values and
+ * {@link #getExpiry(byte[])} and {@link #stripExpiry(byte[])} to read them.
+ * <p>
+ * Values are only removed when a compaction rewrites them, so reads must still check the
+ * expiry time of the values they find.
+ * <p>
+ * TTL过滤器：value前8字节为过期时间（毫秒），compaction时删除已过期的value
+ */
+public class TtlCompactionFilter implements CompactionFilter {
+    private static final int EXPIRY_LENGTH = 8;
+
+    @Override
+    public String name() {
+        return "leveldb.TtlCompactionFilter";
+    }
+
+    @Override
+    public byte[] filter(int level, byte[] key, byte[] value) {
+        if (value.length < EXPIRY_LENGTH) {
+            // not written with an expiry time
+            return value;
+        }
+        long expiry = getExpiry(value);
+        if (expiry != 0 && expiry <= currentTimeMillis()) {
+            return null;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean needsBlobValues() {
+        // the expiry time is part of the value
+        return true;
+    }
+
+    /**
+     * Returns the current time the expiry times are compared with.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public static byte[] withExpiry(byte[] value, long expiryMillis) {
+        Options.checkArgNotNull(value, "value");
+        byte[] result = new byte[EXPIRY_LENGTH + value.length];
+        for (int i = 0; i < EXPIRY_LENGTH; i++) {
+            result[i] = (byte) (expiryMillis >>> (8 * (EXPIRY_LENGTH - 1 - i)));
+        }
+        System.arraycopy(value, 0, result, EXPIRY_LENGTH, value.length);
+        return result;
+    }
+
+    public static long getExpiry(byte[] value) {
+        Options.checkArgNotNull(value, "value");
+        if (value.length < EXPIRY_LENGTH) {
+            throw new IllegalArgumentException("The value has no expiry time");
+        }
+        long expiry = 0;
+        for (int i = 0; i < EXPIRY_LENGTH; i++) {
+            expiry = (expiry << 8) | (value[i] & 0xFF);
+        }
+        return expiry;
+    }
+
+    public static byte[] stripExpiry(byte[] value) {
+        Options.checkArgNotNull(value, "value");
+        if (value.length < EXPIRY_LENGTH) {
+            throw new IllegalArgumentException("The value has no expiry time");
+        }
+        byte[] result = new byte[value.length - EXPIRY_LENGTH];
+        System.arraycopy(value, EXPIRY_LENGTH, result, 0, result.length);
+        return result;
+    }
+}
@@ -41,4 +41,20 @@ public interface WriteBatch extends Closeable {
      * @return WriteBatch
      */
     WriteBatch delete(byte[] key);
+
+    /**
+     * 删除[begin, end)范围内的所有key，只写入一条范围删除记录，被覆盖的数据在后台Compaction时清除
+     * @param begin 范围起始key（包含）
+     * @param end 范围结束key（不包含）
+     * @return WriteBatch
+     */
+    WriteBatch deleteRange(byte[] begin, byte[] end);
+
+    /**
+     * 写入一个合并操作数，读取时由{@link Options#mergeOperator()}与已有value合并，无需先读取key
+     * @param key key
+     * @param value 合并操作数
+     * @return WriteBatch
+     */
+    WriteBatch merge(byte[] key, byte[] value);
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Manifest state of a blob file: how many values were written to it and how many of those are
+ * no longer referenced by any table.  Instances are immutable.
+ */
+public class BlobFileMetaData {
+    private final long number;
+    private final long totalCount;
+    private final long totalBytes;
+    private final long garbageCount;
+    private final long garbageBytes;
+
+    public BlobFileMetaData(long number, long totalCount, long totalBytes) {
+        this(number, totalCount, totalBytes, 0, 0);
+    }
+
+    public BlobFileMetaData(long number, long totalCount, long totalBytes, long garbageCount, long garbageBytes) {
+        checkArgument(totalCount >= 0 && totalBytes >= 0, "totals must not be negative");
+        checkArgument(garbageCount >= 0 && garbageBytes >= 0, "garbage must not be negative");
+        this.number = number;
+        this.totalCount = totalCount;
+        this.totalBytes = totalBytes;
+        this.garbageCount = garbageCount;
+        this.garbageBytes = garbageBytes;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getGarbageCount() {
+        return garbageCount;
+    }
+
+    public long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * Fraction of the bytes in this file that are still referenced.
+     */
+    public double getLiveRatio() {
+        if (totalBytes == 0) {
+            return 1.0;
+        }
+        return 1.0 * (totalBytes - Math.min(garbageBytes, totalBytes)) / totalBytes;
+    }
+
+    /**
+     * Returns true once every value in the file has been dropped or relocated.
+     */
+    public boolean isObsolete() {
+        return garbageCount >= totalCount;
+    }
+
+    public BlobFileMetaData addGarbage(long count, long bytes) {
+        return new BlobFileMetaData(number, totalCount, totalBytes, garbageCount + count, garbageBytes + bytes);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("BlobFileMetaData");
+        sb.append("{number=").append(number);
+        sb.append(", totalCount=").append(totalCount);
+        sb.append(", totalBytes=").append(totalBytes);
+        sb.append(", garbageCount=").append(garbageCount);
+        sb.append(", garbageBytes=").append(garbageBytes);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import org.iq80.leveldb.util.PureJavaCrc32C;
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.Slices;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
+
+/**
+ * Appends values to a blob file.  Each record is the masked crc32c of the value followed by the
+ * value itself; the file has no header or footer, everything needed to read a record is in its
+ * {@link BlobIndex}.
+ */
+public class BlobFileWriter {
+    private final long fileNumber;
+    private final FileChannel fileChannel;
+    private final Slice header = Slices.allocate(SIZE_OF_INT);
+
+    private long position;
+    private long totalCount;
+    private long totalBytes;
+    private boolean closed;
+
+    public BlobFileWriter(File file, long fileNumber) throws IOException {
+        requireNonNull(file, "file is null");
+        this.fileNumber = fileNumber;
+        this.fileChannel = new FileOutputStream(file).getChannel();
+    }
+
+    public long getFileNumber() {
+        return fileNumber;
+    }
+
+    public BlobIndex add(Slice value) throws IOException {
+        requireNonNull(value, "value is null");
+        checkState(!closed, "blob file is closed");
+
+        header.setInt(0, checksum(value));
+        long offset = position;
+        ByteBuffer[] buffers = {header.toByteBuffer(), value.toByteBuffer()};
+        long length = SIZE_OF_INT + value.length();
+        long written = 0;
+        while (written < length) {
+            written += fileChannel.write(buffers);
+        }
+        position += length;
+
+        totalCount++;
+        totalBytes += value.length();
+        return new BlobIndex(fileNumber, offset, value.length());
+    }
+
+    /**
+     * Syncs and closes the file.
+     */
+    public BlobFileMetaData finish() throws IOException {
+        checkState(!closed, "blob file is closed");
+        closed = true;
+        try {
+            fileChannel.force(true);
+        } finally {
+            fileChannel.close();
+        }
+        return new BlobFileMetaData(fileNumber, totalCount, totalBytes);
+    }
+
+    public void abandon() throws IOException {
+        if (!closed) {
+            closed = true;
+            fileChannel.close();
+        }
+    }
+
+    static int checksum(Slice value) {
+        PureJavaCrc32C crc32c = new PureJavaCrc32C();
+        crc32c.update(value.getRawArray(), value.getRawOffset(), value.length());
+        return crc32c.getMaskedValue();
+    }
+}
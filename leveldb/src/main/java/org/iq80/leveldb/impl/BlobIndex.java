@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.SliceInput;
+import org.iq80.leveldb.util.SliceOutput;
+import org.iq80.leveldb.util.Slices;
+import org.iq80.leveldb.util.VariableLengthQuantity;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pointer stored in the LSM tree, under a {@link ValueType#BLOB_INDEX} key, in place of a value
+ * that was written to a blob file.  Encoded as three varints: file number, record offset and
+ * value size.
+ */
+public class BlobIndex {
+    public static final int MAX_ENCODED_LENGTH = 10 + 10 + 5;
+
+    private final long fileNumber;
+    private final long offset;
+    private final int size;
+
+    public BlobIndex(long fileNumber, long offset, int size) {
+        checkArgument(fileNumber > 0, "fileNumber must be positive");
+        checkArgument(offset >= 0, "offset is negative");
+        checkArgument(size >= 0, "size is negative");
+        this.fileNumber = fileNumber;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public long getFileNumber() {
+        return fileNumber;
+    }
+
+    /**
+     * Position of the record, including its checksum, in the blob file.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Size of the value, excluding the record checksum.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public Slice encode() {
+        Slice slice = Slices.allocate(MAX_ENCODED_LENGTH);
+        SliceOutput sliceOutput = slice.output();
+        VariableLengthQuantity.writeVariableLengthLong(fileNumber, sliceOutput);
+        VariableLengthQuantity.writeVariableLengthLong(offset, sliceOutput);
+        VariableLengthQuantity.writeVariableLengthInt(size, sliceOutput);
+        return slice.slice(0, sliceOutput.size());
+    }
+
+    public static BlobIndex decode(Slice slice) {
+        requireNonNull(slice, "slice is null");
+        SliceInput sliceInput = slice.input();
+        long fileNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+        long offset = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+        int size = VariableLengthQuantity.readVariableLengthInt(sliceInput);
+        return new BlobIndex(fileNumber, offset, size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("BlobIndex");
+        sb.append("{fileNumber=").append(fileNumber);
+        sb.append(", offset=").append(offset);
+        sb.append(", size=").append(size);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.iq80.leveldb.util.Closeables;
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.Slices;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
+
+/**
+ * Resolves {@link BlobIndex} pointers to values, keeping the most recently used blob files open.
+ * Readers retain the file they read from, so a file evicted from the cache is closed only once the
+ * last read in progress finishes.
+ */
+public class BlobStore {
+    private final LoadingCache<Long, BlobFile> cache;
+    private final boolean verifyChecksums;
+
+    public BlobStore(final File databaseDir, int openFiles, boolean verifyChecksums) {
+        requireNonNull(databaseDir, "databaseDir is null");
+        this.verifyChecksums = verifyChecksums;
+
+        cache = CacheBuilder.newBuilder().maximumSize(openFiles).removalListener(new RemovalListener<Long, BlobFile>() {
+            @Override
+            public void onRemoval(RemovalNotification<Long, BlobFile> notification) {
+                notification.getValue().release();
+            }
+        }).build(new CacheLoader<Long, BlobFile>() {
+            @Override
+            public BlobFile load(Long fileNumber) throws IOException {
+                return new BlobFile(new FileInputStream(new File(databaseDir, Filename.blobFileName(fileNumber))).getChannel());
+            }
+        });
+    }
+
+    /**
+     * Reads the value the encoded blob index points at.
+     */
+    public Slice read(Slice encodedBlobIndex) {
+        return read(BlobIndex.decode(encodedBlobIndex));
+    }
+
+    public Slice read(BlobIndex blobIndex) {
+        requireNonNull(blobIndex, "blobIndex is null");
+        BlobFile file;
+        try {
+            file = retainFile(blobIndex.getFileNumber());
+        } catch (ExecutionException e) {
+            Throwable cause = e;
+            if (e.getCause() != null) {
+                cause = e.getCause();
+            }
+            throw new RuntimeException("Could not open blob file " + blobIndex.getFileNumber(), cause);
+        }
+        try {
+            FileChannel channel = file.channel;
+
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_INT + blobIndex.getSize());
+            long position = blobIndex.getOffset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new IOException(String.format("Blob file %s is truncated: %s", blobIndex.getFileNumber(), blobIndex));
+                }
+            }
+
+            Slice record = Slices.wrappedBuffer(buffer.array());
+            Slice value = record.slice(SIZE_OF_INT, blobIndex.getSize());
+            if (verifyChecksums) {
+                int expected = record.getInt(0);
+                int actual = BlobFileWriter.checksum(value);
+                if (expected != actual) {
+                    throw new IOException(String.format("Blob record checksum mismatch: expected %s but was %s for %s", expected, actual, blobIndex));
+                }
+            }
+            return value;
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            file.release();
+        }
+    }
+
+    private BlobFile retainFile(long number) throws ExecutionException {
+        while (true) {
+            BlobFile file = cache.get(number);
+            // fails only when the file was evicted and closed after the lookup; look it up again
+            if (file.retain()) {
+                return file;
+            }
+        }
+    }
+
+    public void evict(long number) {
+        cache.invalidate(number);
+    }
+
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * An open blob file.  The cache holds the first reference and drops it on eviction.
+     */
+    private static final class BlobFile {
+        private final FileChannel channel;
+        private final AtomicInteger retained = new AtomicInteger(1);
+
+        private BlobFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int current = retained.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (retained.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            int now = retained.decrementAndGet();
+            checkState(now >= 0, "Blob file was released after it was closed");
+            if (now == 0) {
+                Closeables.closeQuietly(channel);
+            }
+        }
+    }
+}
@@ -42,6 +42,10 @@ public class Compaction {
     private final long maxOutputFileSize;
     private final VersionEdit edit = new VersionEdit();
 
+    // Set when the inputs must be rewritten rather than moved to the next level
+    private boolean rewriteRequired;
+    private boolean partial;
+
     // State used to check for number of of overlapping grandparent files
     // (parent == level_ + 1, grandparent == level_ + 2)
 
@@ -103,9 +107,27 @@ public class Compaction {
         return maxOutputFileSize;
     }
 
+    public void setRewriteRequired(boolean rewriteRequired) {
+        this.rewriteRequired = rewriteRequired;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    // Were some of the requested level inputs left out to keep the compaction within
+    // maxCompactionBytes?
+    public boolean isPartial() {
+        return partial;
+    }
+
     // Is this a trivial compaction that can be implemented by just
     // moving a single input file to the next level (no merging or splitting)
     public boolean isTrivialMove() {
+        if (rewriteRequired) {
+            return false;
+        }
+
         // Avoid a move if there is lots of overlapping grandparent data.
         // Otherwise, the move could create a parent file that will require
         // a very expensive merge later on.
@@ -157,6 +179,17 @@ public class Compaction {
         return true;
     }
 
+    // Returns true if no level greater than "level+1" holds data in the
+    // user key range [start, end).
+    public boolean isBaseLevelForRange(Slice start, Slice end) {
+        for (int level = this.level + 2; level < NUM_LEVELS; level++) {
+            if (inputVersion.overlapInLevel(level, start, end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // Returns true iff we should stop building the current output
     // before processing "internal_key".
     public boolean shouldStopBefore(InternalKey internalKey) {
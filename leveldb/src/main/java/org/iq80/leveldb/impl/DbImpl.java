@@ -18,11 +18,16 @@
 package org.iq80.leveldb.impl;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.iq80.leveldb.CompactionFilter;
 import org.iq80.leveldb.CompressionType;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBComparator;
 import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.MergeOperator;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.Range;
 import org.iq80.leveldb.ReadOptions;
@@ -34,10 +39,17 @@ import org.iq80.leveldb.impl.Filename.FileType;
 import org.iq80.leveldb.impl.MemTable.MemTableIterator;
 import org.iq80.leveldb.impl.WriteBatchImpl.Handler;
 import org.iq80.leveldb.table.BytewiseComparator;
+import org.iq80.leveldb.table.CompressedBlockCache;
 import org.iq80.leveldb.table.CustomUserComparator;
+import org.iq80.leveldb.table.FileChannelTable;
+import org.iq80.leveldb.table.IndexPartitionCache;
+import org.iq80.leveldb.table.Table;
 import org.iq80.leveldb.table.TableBuilder;
+import org.iq80.leveldb.table.TableProperties;
 import org.iq80.leveldb.table.UserComparator;
+import org.iq80.leveldb.util.Closeables;
 import org.iq80.leveldb.util.DbIterator;
+import org.iq80.leveldb.util.InternalTableIterator;
 import org.iq80.leveldb.util.MergingIterator;
 import org.iq80.leveldb.util.Slice;
 import org.iq80.leveldb.util.SliceInput;
@@ -45,6 +57,7 @@ import org.iq80.leveldb.util.SliceOutput;
 import org.iq80.leveldb.util.Slices;
 import org.iq80.leveldb.util.Snappy;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -52,17 +65,25 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -73,7 +94,10 @@ import static org.iq80.leveldb.impl.DbConstants.L0_SLOWDOWN_WRITES_TRIGGER;
 import static org.iq80.leveldb.impl.DbConstants.L0_STOP_WRITES_TRIGGER;
 import static org.iq80.leveldb.impl.DbConstants.NUM_LEVELS;
 import static org.iq80.leveldb.impl.SequenceNumber.MAX_SEQUENCE_NUMBER;
+import static org.iq80.leveldb.impl.ValueType.BLOB_INDEX;
 import static org.iq80.leveldb.impl.ValueType.DELETION;
+import static org.iq80.leveldb.impl.ValueType.MERGE;
+import static org.iq80.leveldb.impl.ValueType.RANGE_DELETION;
 import static org.iq80.leveldb.impl.ValueType.VALUE;
 import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
 import static org.iq80.leveldb.util.SizeOf.SIZE_OF_LONG;
@@ -83,13 +107,21 @@ import static org.iq80.leveldb.util.Slices.writeLengthPrefixedBytes;
 // todo make thread safe and concurrent
 @SuppressWarnings("AccessingNonPublicFieldOfAnotherObject")
 public class DbImpl implements DB {
+    // number of blob files kept open for reads
+    private static final int BLOB_STORE_OPEN_FILES = 64;
+
     private final Options options;
     private final File databaseDir;
     private final TableCache tableCache;
+    // null when disabled
+    private final CompressedBlockCache blockCache;
+    private final BlobStore blobStore;
     private final DbLock dbLock;
     private final VersionSet versions;
 
     private final AtomicBoolean shuttingDown = new AtomicBoolean();
+    // snapshots handed to users and not closed yet
+    private final AtomicInteger openSnapshots = new AtomicInteger();
     private final ReentrantLock mutex = new ReentrantLock();
     private final Condition backgroundCondition = mutex.newCondition();
 
@@ -121,8 +153,21 @@ public class DbImpl implements DB {
     private final ExecutorService compactionExecutor;
     private Future<?> backgroundCompaction;
 
+    // compresses the data blocks of the tables written by flushes and compactions; null when
+    // blocks are compressed on the writing thread
+    private final ExecutorService compressionExecutor;
+
+    // fetches the next chunk of each compaction input while the current one is merged
+    private final ExecutorService readaheadExecutor;
+
     private ManualCompaction manualCompaction;
 
+    // set when a released version left blob files behind that the next background run deletes
+    private boolean obsoleteFilesPending;
+
+    // the compaction whose outputs are being written while the mutex is released
+    private Compaction runningCompaction;
+
     public DbImpl(Options options, File databaseDir) throws IOException {
         requireNonNull(options, "options is null");
         requireNonNull(databaseDir, "databaseDir is null");
@@ -158,10 +203,35 @@ public class DbImpl implements DB {
             }
         }).build();
         compactionExecutor = Executors.newSingleThreadExecutor(compactionThreadFactory);
+        if (options.compressionThreads() > 0 && options.compressionType() != CompressionType.NONE) {
+            ThreadFactory compressionThreadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("leveldb-compression-%s")
+                    .setDaemon(true)
+                    .build();
+            compressionExecutor = Executors.newFixedThreadPool(options.compressionThreads(), compressionThreadFactory);
+        } else {
+            compressionExecutor = null;
+        }
+        if (options.compactionReadaheadSize() > 0) {
+            ThreadFactory readaheadThreadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("leveldb-readahead-%s")
+                    .setDaemon(true)
+                    .build();
+            readaheadExecutor = Executors.newCachedThreadPool(readaheadThreadFactory);
+        } else {
+            readaheadExecutor = null;
+        }
 
         // Reserve ten files or so for other uses and give the rest to TableCache.
         int tableCacheSize = options.maxOpenFiles() - 10;
-        tableCache = new TableCache(databaseDir, tableCacheSize, new InternalUserComparator(internalKeyComparator), options.verifyChecksums());
+        if (options.compressedBlockCacheSize() > 0) {
+            blockCache = new CompressedBlockCache(options.compressedBlockCacheSize());
+        } else {
+            blockCache = null;
+        }
+        tableCache = new TableCache(databaseDir, tableCacheSize, options.tableCacheIndexSize(), new InternalUserComparator(internalKeyComparator), options.verifyChecksums(),
+                new IndexPartitionCache(options.indexCacheSize()), blockCache, options.compactionReadaheadSize(), readaheadExecutor);
+        blobStore = new BlobStore(databaseDir, BLOB_STORE_OPEN_FILES, options.verifyChecksums());
 
         // create the version set
 
@@ -183,10 +253,22 @@ public class DbImpl implements DB {
                 checkArgument(!options.errorIfExists(), "Database '%s' exists and the error if exists option is enabled", databaseDir);
             }
 
-            versions = new VersionSet(databaseDir, tableCache, internalKeyComparator);
+            versions = new VersionSet(databaseDir, tableCache, internalKeyComparator, options, new Runnable() {
+                @Override
+                public void run() {
+                    mutex.lock();
+                    try {
+                        obsoleteFilesPending = true;
+                        maybeScheduleCompaction();
+                    } finally {
+                        mutex.unlock();
+                    }
+                }
+            });
 
             // load  (and recover) current version
             versions.recover();
+            preloadTables();
 
             // Recover from all newer log files than the ones named in the
             // descriptor (new log files may have been added by the previous
@@ -236,6 +318,49 @@ public class DbImpl implements DB {
         }
     }
 
+    /**
+     * Opens the tables of the first {@link Options#preloadLevels()} levels of the recovered
+     * version and loads their indexes, in parallel, so the first reads after opening do not pay
+     * for it.
+     */
+    private void preloadTables() {
+        List<FileMetaData> files = new ArrayList<>();
+        Version current = versions.getCurrent();
+        for (int level = 0; level < Math.min(options.preloadLevels(), NUM_LEVELS); level++) {
+            files.addAll(current.getFiles(level));
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        ThreadFactory preloadThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("leveldb-preload-%s")
+                .setDaemon(true)
+                .build();
+        ExecutorService preloadExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(options.preloadThreads(), files.size())), preloadThreadFactory);
+        try {
+            List<Future<?>> preloads = new ArrayList<>();
+            for (final FileMetaData file : files) {
+                preloads.add(preloadExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        tableCache.preload(file);
+                    }
+                }));
+            }
+            for (Future<?> preload : preloads) {
+                preload.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            preloadExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public void close() {
         if (shuttingDown.getAndSet(true)) {
@@ -257,6 +382,12 @@ public class DbImpl implements DB {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        if (compressionExecutor != null) {
+            compressionExecutor.shutdown();
+        }
+        if (readaheadExecutor != null) {
+            readaheadExecutor.shutdown();
+        }
         try {
             versions.destroy();
         } catch (IOException ignored) {
@@ -266,12 +397,27 @@ public class DbImpl implements DB {
         } catch (IOException ignored) {
         }
         tableCache.close();
+        blobStore.close();
         dbLock.release();
     }
 
     @Override
     public String getProperty(String name) {
         checkBackgroundException();
+        if ("leveldb.table-cache".equals(name)) {
+            return String.format("hits=%d misses=%d evictions=%d open=%d index-bytes=%d",
+                    tableCache.getHitCount(),
+                    tableCache.getMissCount(),
+                    tableCache.getEvictionCount(),
+                    tableCache.getOpenTableCount(),
+                    tableCache.getIndexMemoryUsage());
+        }
+        if ("leveldb.block-cache".equals(name) && blockCache != null) {
+            return String.format("hits=%d misses=%d bytes=%d",
+                    blockCache.getHitCount(),
+                    blockCache.getMissCount(),
+                    blockCache.getMemoryUsage());
+        }
         return null;
     }
 
@@ -283,6 +429,7 @@ public class DbImpl implements DB {
         for (FileMetaData fileMetaData : versions.getLiveFiles()) {
             live.add(fileMetaData.getNumber());
         }
+        Set<Long> liveBlobFiles = versions.getLiveBlobFiles();
 
         for (File file : Filename.listFiles(databaseDir)) {
             FileInfo fileInfo = Filename.parseFileName(file);
@@ -303,6 +450,9 @@ public class DbImpl implements DB {
                 case TABLE:
                     keep = live.contains(number);
                     break;
+                case BLOB:
+                    keep = live.contains(number) || liveBlobFiles.contains(number);
+                    break;
                 case TEMP:
                     // Any temp files that are currently being written to must
                     // be recorded in pending_outputs_, which is inserted into "live"
@@ -318,6 +468,8 @@ public class DbImpl implements DB {
             if (!keep) {
                 if (fileInfo.getFileType() == FileType.TABLE) {
                     tableCache.evict(number);
+                } else if (fileInfo.getFileType() == FileType.BLOB) {
+                    blobStore.evict(number);
                 }
                 // todo info logging system needed
                 //                Log(options_.info_log, "Delete type=%d #%lld\n",
@@ -358,7 +510,7 @@ public class DbImpl implements DB {
             while (this.manualCompaction != null) {
                 backgroundCondition.awaitUninterruptibly();
             }
-            ManualCompaction manualCompaction = new ManualCompaction(level, start, end);
+            ManualCompaction manualCompaction = new ManualCompaction(level, new InternalKey(start, MAX_SEQUENCE_NUMBER, VALUE), new InternalKey(end, 0, DELETION));
             this.manualCompaction = manualCompaction;
 
             maybeScheduleCompaction();
@@ -379,7 +531,7 @@ public class DbImpl implements DB {
             // Already scheduled
         } else if (shuttingDown.get()) {
             // DB is being shutdown; no more background compactions
-        } else if (immutableMemTable == null && manualCompaction == null && !versions.needsCompaction()) {
+        } else if (immutableMemTable == null && manualCompaction == null && !obsoleteFilesPending && !versions.needsCompaction() && versions.getCurrent().getBlobGarbageCollectionFile() == null) {
             // No work to be done
         } else {
             backgroundCompaction = compactionExecutor.submit(new Callable<Void>() {
@@ -436,17 +588,25 @@ public class DbImpl implements DB {
     private void backgroundCompaction() throws IOException {
         checkState(mutex.isHeldByCurrentThread());
 
+        if (obsoleteFilesPending) {
+            obsoleteFilesPending = false;
+            deleteObsoleteFiles();
+        }
+
         compactMemTableInternal();
 
         Compaction compaction;
         if (manualCompaction != null) {
-            compaction = versions.compactRange(manualCompaction.level, new InternalKey(manualCompaction.begin, MAX_SEQUENCE_NUMBER, VALUE), new InternalKey(manualCompaction.end, 0, DELETION));
+            compaction = versions.compactRange(manualCompaction.level, manualCompaction.begin, manualCompaction.end);
         } else {
             compaction = versions.pickCompaction();
         }
 
         if (compaction == null) {
-            // no compaction
+            // no compaction, use the time to reclaim blob file space
+            if (manualCompaction == null) {
+                collectBlobGarbage();
+            }
         } else if (manualCompaction == null && compaction.isTrivialMove()) {
             // Move file to next level
             checkState(compaction.getLevelInputs().size() == 1);
@@ -457,17 +617,30 @@ public class DbImpl implements DB {
             // log
         } else {
             CompactionState compactionState = new CompactionState(compaction);
-            doCompactionWork(compactionState);
+            runningCompaction = compaction;
+            try {
+                doCompactionWork(compactionState);
+            } finally {
+                runningCompaction = null;
+            }
             cleanupCompaction(compactionState);
         }
 
-        // manual compaction complete
         if (manualCompaction != null) {
-            manualCompaction = null;
+            if (compaction != null && compaction.isPartial()) {
+                // the rest of the range is compacted by the next background run, with its own edit
+                if (manualCompaction.level > 0) {
+                    List<FileMetaData> levelInputs = compaction.getLevelInputs();
+                    manualCompaction.begin = levelInputs.get(levelInputs.size() - 1).getLargest();
+                }
+            } else {
+                // manual compaction complete
+                manualCompaction = null;
+            }
         }
     }
 
-    private void cleanupCompaction(CompactionState compactionState) {
+    private void cleanupCompaction(CompactionState compactionState) throws IOException {
         checkState(mutex.isHeldByCurrentThread());
 
         if (compactionState.builder != null) {
@@ -479,6 +652,10 @@ public class DbImpl implements DB {
         for (FileMetaData output : compactionState.outputs) {
             pendingOutputs.remove(output.getNumber());
         }
+        if (compactionState.blobSeparator != null) {
+            compactionState.blobSeparator.abandon();
+            compactionState.blobSeparator.releasePendingOutput();
+        }
     }
 
     private long recoverLogFile(long fileNumber, VersionEdit edit) throws IOException {
@@ -543,54 +720,105 @@ public class DbImpl implements DB {
     public byte[] get(byte[] key, ReadOptions options) throws DBException {
         checkBackgroundException();
         LookupKey lookupKey;
+        long snapshotSequence;
+        LookupResult lookupResult;
+        long deletedBefore;
+        Version current;
         mutex.lock();
         try {
             SnapshotImpl snapshot = getSnapshot(options);
-            lookupKey = new LookupKey(Slices.wrappedBuffer(key), snapshot.getLastSequence());
+            snapshotSequence = snapshot.getLastSequence();
+            lookupKey = new LookupKey(Slices.wrappedBuffer(key), snapshotSequence);
+
+            // First look in the memtable, then in the immutable memtable (if any).  A range
+            // deletion only hides older entries, and every entry of a memtable is newer than the
+            // entries of the sources after it, so the tombstones are gathered in the same order.
+            deletedBefore = memTable.getRangeTombstones().getCoveringSequenceNumber(lookupKey.getUserKey(), snapshotSequence);
+            lookupResult = memTable.get(lookupKey);
+            if (lookupResult == null && immutableMemTable != null) {
+                deletedBefore = Math.max(deletedBefore, immutableMemTable.getRangeTombstones().getCoveringSequenceNumber(lookupKey.getUserKey(), snapshotSequence));
+                lookupResult = immutableMemTable.get(lookupKey);
+            }
+            if (lookupResult != null || deletedBefore > 0) {
+                // the key is found, or deleted for everything written before the memtables
+                current = null;
+            } else {
+                // the version keeps the blob files it points at from being deleted
+                current = versions.getCurrent();
+                current.retain();
+            }
+        } finally {
+            mutex.unlock();
+        }
 
-            // First look in the memtable, then in the immutable memtable (if any).
-            LookupResult lookupResult = memTable.get(lookupKey);
-            if (lookupResult != null) {
-                Slice value = lookupResult.getValue();
-                if (value == null) {
-                    return null;
+        if (current == null) {
+            return lookupResult != null ? getValue(lookupResult, deletedBefore, snapshotSequence) : null;
+        }
+        try {
+            // Not in memTables; try live files in level order
+            lookupResult = current.get(lookupKey);
+
+            // schedule compaction if necessary
+            mutex.lock();
+            try {
+                if (versions.needsCompaction()) {
+                    maybeScheduleCompaction();
                 }
-                return value.getBytes();
+            } finally {
+                mutex.unlock();
             }
-            if (immutableMemTable != null) {
-                lookupResult = immutableMemTable.get(lookupKey);
-                if (lookupResult != null) {
-                    Slice value = lookupResult.getValue();
-                    if (value == null) {
-                        return null;
-                    }
-                    return value.getBytes();
-                }
+
+            if (lookupResult != null) {
+                return getValue(lookupResult, current.getCoveringSequenceNumber(lookupKey.getUserKey(), snapshotSequence), snapshotSequence);
             }
+            return null;
         } finally {
-            mutex.unlock();
+            current.release();
         }
+    }
 
-        // Not in memTables; try live files in level order
-        LookupResult lookupResult = versions.get(lookupKey);
+    /**
+     * Returns the value of the lookup result, or null if it is a deletion or is older than a range
+     * deletion with the sequence number deletedBefore.
+     */
+    private byte[] getValue(LookupResult lookupResult, long deletedBefore, long snapshotSequence) {
+        Slice value = lookupResult.getValue();
+        if (value == null || lookupResult.getSequenceNumber() < deletedBefore) {
+            return null;
+        }
+        if (lookupResult.isMerge()) {
+            return getMergedValue(lookupResult.getKey().getUserKey(), snapshotSequence);
+        }
+        if (lookupResult.isBlobIndex()) {
+            value = blobStore.read(value);
+        }
+        return value.getBytes();
+    }
 
-        // schedule compaction if necessary
+    /**
+     * Assembles the value of a key whose newest entry is a merge operand.  The operands and the
+     * value below them may be spread over every level, so they are collected with an iterator
+     * positioned at the key instead of a point lookup per entry.
+     */
+    private byte[] getMergedValue(Slice userKey, long snapshotSequence) {
+        SnapshotSeekingIterator iterator;
         mutex.lock();
         try {
-            if (versions.needsCompaction()) {
-                maybeScheduleCompaction();
-            }
+            SnapshotImpl snapshot = new SnapshotImpl(versions.getCurrent(), snapshotSequence);
+            snapshot.close(); // the iterator retains the version itself
+            iterator = newSnapshotIterator(snapshot);
         } finally {
             mutex.unlock();
         }
-
-        if (lookupResult != null) {
-            Slice value = lookupResult.getValue();
-            if (value != null) {
-                return value.getBytes();
+        try {
+            iterator.seek(userKey);
+            if (iterator.hasNext() && internalKeyComparator.getUserComparator().compare(iterator.peek().getKey(), userKey) == 0) {
+                return iterator.peek().getValue().getBytes();
             }
+            return null;
+        } finally {
+            iterator.close();
         }
-        return null;
     }
 
     @Override
@@ -608,11 +836,32 @@ public class DbImpl implements DB {
         writeInternal(new WriteBatchImpl().delete(key), new WriteOptions());
     }
 
+    @Override
+    public void deleteRange(byte[] begin, byte[] end) throws DBException {
+        writeInternal(new WriteBatchImpl().deleteRange(begin, end), new WriteOptions());
+    }
+
+    @Override
+    public void merge(byte[] key, byte[] value) throws DBException {
+        merge(key, value, new WriteOptions());
+    }
+
     @Override
     public Snapshot delete(byte[] key, WriteOptions options) throws DBException {
         return writeInternal(new WriteBatchImpl().delete(key), options);
     }
 
+    @Override
+    public Snapshot deleteRange(byte[] begin, byte[] end, WriteOptions options) throws DBException {
+        return writeInternal(new WriteBatchImpl().deleteRange(begin, end), options);
+    }
+
+    @Override
+    public Snapshot merge(byte[] key, byte[] value, WriteOptions options) throws DBException {
+        checkState(this.options.mergeOperator() != null, "Merge requires a merge operator");
+        return writeInternal(new WriteBatchImpl().merge(key, value), options);
+    }
+
     @Override
     public void write(WriteBatch updates) throws DBException {
         writeInternal((WriteBatchImpl) updates, new WriteOptions());
@@ -671,7 +920,7 @@ public class DbImpl implements DB {
             }
 
             if (options.snapshot()) {
-                return new SnapshotImpl(versions.getCurrent(), sequenceEnd);
+                return new SnapshotImpl(versions.getCurrent(), sequenceEnd, openSnapshots);
             } else {
                 return null;
             }
@@ -696,17 +945,25 @@ public class DbImpl implements DB {
         checkBackgroundException();
         mutex.lock();
         try {
-            DbIterator rawIterator = internalIterator();
-
             // filter any entries not visible in our snapshot
-            SnapshotImpl snapshot = getSnapshot(options);
-            SnapshotSeekingIterator snapshotIterator = new SnapshotSeekingIterator(rawIterator, snapshot, internalKeyComparator.getUserComparator());
-            return new SeekingIteratorAdapter(snapshotIterator);
+            return new SeekingIteratorAdapter(newSnapshotIterator(getSnapshot(options)));
         } finally {
             mutex.unlock();
         }
     }
 
+    private SnapshotSeekingIterator newSnapshotIterator(SnapshotImpl snapshot) {
+        checkState(mutex.isHeldByCurrentThread());
+
+        List<RangeTombstones> rangeTombstones = new ArrayList<>();
+        rangeTombstones.add(memTable.getRangeTombstones());
+        if (immutableMemTable != null) {
+            rangeTombstones.add(immutableMemTable.getRangeTombstones());
+        }
+        return new SnapshotSeekingIterator(internalIterator(), snapshot, internalKeyComparator.getUserComparator(), blobStore, rangeTombstones, versions.getCurrent(),
+                options.mergeOperator());
+    }
+
     SeekingIterable<InternalKey, Slice> internalIterable() {
         return new SeekingIterable<InternalKey, Slice>()
         {
@@ -738,7 +995,7 @@ public class DbImpl implements DB {
         checkBackgroundException();
         mutex.lock();
         try {
-            return new SnapshotImpl(versions.getCurrent(), versions.getLastSequence());
+            return new SnapshotImpl(versions.getCurrent(), versions.getLastSequence(), openSnapshots);
         } finally {
             mutex.unlock();
         }
@@ -877,14 +1134,20 @@ public class DbImpl implements DB {
         // write the memtable to a new sstable
         long fileNumber = versions.getNextFileNumber();
         pendingOutputs.add(fileNumber);
+        BlobSeparator blobSeparator = new BlobSeparator(0);
         mutex.unlock();
         FileMetaData meta;
         try {
-            meta = buildTable(mem, fileNumber);
+            meta = buildTable(mem, mem.getRangeTombstoneList(), fileNumber, blobSeparator);
+            blobSeparator.finish(edit);
+        } catch (IOException | RuntimeException e) {
+            blobSeparator.abandon();
+            throw e;
         } finally {
             mutex.lock();
         }
         pendingOutputs.remove(fileNumber);
+        blobSeparator.releasePendingOutput();
 
         // Note that if file size is zero, the file has been deleted and
         // should not be added to the manifest.
@@ -899,16 +1162,20 @@ public class DbImpl implements DB {
         }
     }
 
-    private FileMetaData buildTable(SeekingIterable<InternalKey, Slice> data, long fileNumber) throws IOException {
+    private FileMetaData buildTable(SeekingIterable<InternalKey, Slice> data, List<RangeTombstone> rangeTombstones, long fileNumber, BlobSeparator blobSeparator) throws IOException {
         File file = new File(databaseDir, Filename.tableFileName(fileNumber));
         try {
             InternalKey smallest = null;
             InternalKey largest = null;
+            TableProperties properties;
             FileChannel channel = new FileOutputStream(file).getChannel();
             try {
-                TableBuilder tableBuilder = new TableBuilder(options, channel, new InternalUserComparator(internalKeyComparator));
+                TableBuilder tableBuilder = new TableBuilder(options, channel, new InternalUserComparator(internalKeyComparator), compressionExecutor, new InternalEntryClassifier());
+                blobSeparator.startTable();
 
                 for (Entry<InternalKey, Slice> entry : data) {
+                    entry = blobSeparator.separate(entry.getKey(), entry.getValue());
+
                     // update keys
                     InternalKey key = entry.getKey();
                     if (smallest == null) {
@@ -919,7 +1186,19 @@ public class DbImpl implements DB {
                     tableBuilder.add(key.encode(), entry.getValue());
                 }
 
+                // the key range of the table covers its range deletions
+                for (RangeTombstone tombstone : rangeTombstones) {
+                    tableBuilder.addRangeTombstone(tombstone.getStartKey().encode(), tombstone.getEnd());
+                    if (smallest == null || internalKeyComparator.compare(tombstone.getStartKey(), smallest) < 0) {
+                        smallest = tombstone.getStartKey();
+                    }
+                    if (largest == null || internalKeyComparator.compare(tombstone.getEndKey(), largest) > 0) {
+                        largest = tombstone.getEndKey();
+                    }
+                }
+
                 tableBuilder.finish();
+                properties = tableBuilder.getProperties();
             } finally {
                 try {
                     channel.force(true);
@@ -931,10 +1210,10 @@ public class DbImpl implements DB {
             if (smallest == null) {
                 return null;
             }
-            FileMetaData fileMetaData = new FileMetaData(fileNumber, file.length(), smallest, largest);
+            FileMetaData fileMetaData = new FileMetaData(fileNumber, file.length(), smallest, largest, blobSeparator.getOldestBlobFileNumber(), properties);
 
             // verify table can be opened
-            tableCache.newIterator(fileMetaData);
+            tableCache.newIterator(fileMetaData).close();
 
             pendingOutputs.remove(fileNumber);
 
@@ -954,11 +1233,14 @@ public class DbImpl implements DB {
 
         // todo track snapshots
         compactionState.smallestSnapshot = versions.getLastSequence();
+        compactionState.blobSeparator = new BlobSeparator(versions.getCurrent().getBlobGarbageCollectionCutoff(options.blobMinLiveRatio()));
 
         // Release mutex while we're actually doing the compaction work
         mutex.unlock();
+        MergingIterator iterator = null;
         try {
-            MergingIterator iterator = versions.makeInputIterator(compactionState.compaction);
+            iterator = versions.makeInputIterator(compactionState.compaction);
+            prepareCompactionRangeTombstones(compactionState);
 
             Slice currentUserKey = null;
             boolean hasCurrentUserKey = false;
@@ -974,8 +1256,16 @@ public class DbImpl implements DB {
                 }
 
                 InternalKey key = iterator.peek().getKey();
-                if (compactionState.compaction.shouldStopBefore(key) && compactionState.builder != null) {
-                    finishCompactionOutputFile(compactionState);
+
+                // range deletions are written to the output open when their start is reached,
+                // and an output is only closed before a key no written range deletion covers
+                addCompactionRangeTombstones(compactionState, key.getUserKey());
+                boolean stopBefore = compactionState.compaction.shouldStopBefore(key);
+                if (compactionState.builder != null && (stopBefore || compactionState.builder.getFileSize() >= compactionState.compaction.getMaxOutputFileSize())) {
+                    Slice rangeTombstoneLimit = compactionState.currentRangeTombstoneLimit;
+                    if (rangeTombstoneLimit == null || internalKeyComparator.getUserComparator().compare(rangeTombstoneLimit, key.getUserKey()) < 0) {
+                        finishCompactionOutputFile(compactionState);
+                    }
                 }
 
                 // Handle key/value, add to state, etc.
@@ -1006,26 +1296,31 @@ public class DbImpl implements DB {
                         //     few iterations of this loop (by rule (A) above).
                         // Therefore this deletion marker is obsolete and can be dropped.
                         drop = true;
+                    } else if (compactionState.inputRangeTombstones.isDeleted(key, compactionState.smallestSnapshot)) {
+                        // Hidden by a range deletion of the inputs, which is either written to
+                        // the output or dropped because no older data for its range remains
+                        drop = true;
                     }
 
                     lastSequenceForKey = key.getSequenceNumber();
                 }
 
-                if (!drop) {
-                    // Open output file if necessary
-                    if (compactionState.builder == null) {
-                        openCompactionOutputFile(compactionState);
+                if (drop) {
+                    compactionState.blobSeparator.drop(key, iterator.peek().getValue());
+                } else if (key.getValueType() == MERGE && key.getSequenceNumber() <= compactionState.smallestSnapshot && options.mergeOperator() != null) {
+                    // no snapshot can see the older entries of the key on their own, so its
+                    // operands are combined; rule (A) drops the value they were applied to
+                    for (Entry<InternalKey, Slice> entry : mergeCompactionOperands(compactionState, iterator)) {
+                        addCompactionEntry(compactionState, entry.getKey(), entry.getValue());
                     }
-                    if (compactionState.builder.getEntryCount() == 0) {
-                        compactionState.currentSmallest = key;
-                    }
-                    compactionState.currentLargest = key;
-                    compactionState.builder.add(key.encode(), iterator.peek().getValue());
-
-                    // Close output file if it is big enough
-                    if (compactionState.builder.getFileSize() >= compactionState.compaction.getMaxOutputFileSize()) {
-                        finishCompactionOutputFile(compactionState);
+                    continue;
+                } else if ((key.getValueType() == VALUE || key.getValueType() == BLOB_INDEX) && key.getSequenceNumber() <= compactionState.smallestSnapshot && options.compactionFilter() != null) {
+                    Entry<InternalKey, Slice> entry = filterCompactionEntry(compactionState, key, iterator.peek().getValue());
+                    if (entry != null) {
+                        addCompactionEntry(compactionState, entry.getKey(), entry.getValue());
                     }
+                } else {
+                    addCompactionEntry(compactionState, key, iterator.peek().getValue());
                 }
                 iterator.next();
             }
@@ -1033,10 +1328,15 @@ public class DbImpl implements DB {
             if (shuttingDown.get()) {
                 throw new DatabaseShutdownException("DB shutdown during compaction");
             }
+            addCompactionRangeTombstones(compactionState, null);
             if (compactionState.builder != null) {
                 finishCompactionOutputFile(compactionState);
             }
+            compactionState.blobSeparator.finish(compactionState.compaction.getEdit());
         } finally {
+            if (iterator != null) {
+                iterator.close();
+            }
             mutex.lock();
         }
 
@@ -1045,6 +1345,178 @@ public class DbImpl implements DB {
         installCompactionResults(compactionState);
     }
 
+    private void addCompactionEntry(CompactionState compactionState, InternalKey key, Slice value) throws IOException {
+        // Open output file if necessary
+        if (compactionState.builder == null) {
+            openCompactionOutputFile(compactionState);
+        }
+        Entry<InternalKey, Slice> entry = compactionState.blobSeparator.separate(key, value);
+        updateCompactionOutputRange(compactionState, entry.getKey(), entry.getKey());
+        compactionState.builder.add(entry.getKey().encode(), entry.getValue());
+    }
+
+    /**
+     * Passes the value to the compaction filter and returns the entry to write in its place, or
+     * null if nothing is written.  A removed value becomes a deletion unless the key exists in no
+     * deeper level, since the older values of the key must stay hidden.  Values in blob files are
+     * only read back if the filter needs them.
+     */
+    private Entry<InternalKey, Slice> filterCompactionEntry(CompactionState compactionState, InternalKey key, Slice value) {
+        Slice userKey = key.getUserKey();
+        CompactionFilter compactionFilter = options.compactionFilter();
+        byte[] existingValue;
+        if (key.getValueType() != BLOB_INDEX) {
+            existingValue = value.getBytes();
+        } else if (compactionFilter.needsBlobValues()) {
+            existingValue = blobStore.read(value).getBytes();
+        } else {
+            existingValue = new byte[0];
+        }
+        byte[] filteredValue = compactionFilter.filter(compactionState.compaction.getLevel(), userKey.getBytes(), existingValue);
+        if (filteredValue == existingValue) {
+            return Maps.immutableEntry(key, value);
+        }
+
+        // the blob file holding the old value, if any, loses a reference
+        compactionState.blobSeparator.drop(key, value);
+        if (filteredValue != null) {
+            return Maps.immutableEntry(new InternalKey(userKey, key.getSequenceNumber(), VALUE), new Slice(filteredValue));
+        }
+        if (compactionState.compaction.isBaseLevelForKey(userKey)) {
+            return null;
+        }
+        return Maps.immutableEntry(new InternalKey(userKey, key.getSequenceNumber(), DELETION), Slices.EMPTY_SLICE);
+    }
+
+    /**
+     * Consumes the merge operands of the key at the head of the iterator and returns the entries
+     * to write in their place, newest first.  If the value below the operands is among the
+     * inputs, or the key exists in no deeper level, the operands are applied to it and a single
+     * value is returned; otherwise adjacent operands are combined where the merge operator allows.
+     * The iterator is left on the first entry not consumed, which belongs to another key or is
+     * the value the operands were applied to.
+     */
+    private List<Entry<InternalKey, Slice>> mergeCompactionOperands(CompactionState compactionState, MergingIterator iterator) {
+        MergeOperator mergeOperator = options.mergeOperator();
+        Entry<InternalKey, Slice> newest = iterator.next();
+        Slice userKey = newest.getKey().getUserKey();
+        byte[] userKeyBytes = userKey.getBytes();
+
+        // operands, newest first
+        List<Entry<InternalKey, Slice>> operands = new ArrayList<>();
+        operands.add(newest);
+        boolean complete = false;
+        byte[] existingValue = null;
+        while (iterator.hasNext()) {
+            InternalKey key = iterator.peek().getKey();
+            if (internalKeyComparator.getUserComparator().compare(key.getUserKey(), userKey) != 0) {
+                break;
+            }
+            if (key.getValueType() == MERGE && !compactionState.inputRangeTombstones.isDeleted(key, compactionState.smallestSnapshot)) {
+                operands.add(iterator.next());
+                continue;
+            }
+            // a value, a deletion or a range deletion ends the operands
+            complete = true;
+            if (key.getValueType() == VALUE && !compactionState.inputRangeTombstones.isDeleted(key, compactionState.smallestSnapshot)) {
+                existingValue = iterator.peek().getValue().getBytes();
+            } else if (key.getValueType() == BLOB_INDEX && !compactionState.inputRangeTombstones.isDeleted(key, compactionState.smallestSnapshot)) {
+                existingValue = blobStore.read(iterator.peek().getValue()).getBytes();
+            }
+            break;
+        }
+
+        List<byte[]> values = new ArrayList<>(operands.size());
+        for (Entry<InternalKey, Slice> operand : Lists.reverse(operands)) {
+            values.add(operand.getValue().getBytes());
+        }
+        if (complete || compactionState.compaction.isBaseLevelForKey(userKey)) {
+            byte[] value = mergeOperator.fullMerge(userKeyBytes, existingValue, values);
+            InternalKey key = new InternalKey(userKey, newest.getKey().getSequenceNumber(), VALUE);
+            return ImmutableList.of(Maps.immutableEntry(key, new Slice(value)));
+        }
+
+        // combine runs of adjacent operands, oldest first, keeping the newest sequence number of each run
+        List<Entry<InternalKey, Slice>> merged = new ArrayList<>();
+        Entry<InternalKey, Slice> run = null;
+        for (Entry<InternalKey, Slice> operand : Lists.reverse(operands)) {
+            byte[] combined = null;
+            if (run != null) {
+                combined = mergeOperator.partialMerge(userKeyBytes, run.getValue().getBytes(), operand.getValue().getBytes());
+            }
+            if (combined != null) {
+                run = Maps.immutableEntry(operand.getKey(), new Slice(combined));
+            } else {
+                if (run != null) {
+                    merged.add(run);
+                }
+                run = operand;
+            }
+        }
+        merged.add(run);
+        return Lists.reverse(merged);
+    }
+
+    /**
+     * Collects the range deletions of the compaction inputs.  All of them hide older entries of
+     * the inputs; those that may still hide data in deeper levels are kept for the outputs.
+     */
+    private void prepareCompactionRangeTombstones(CompactionState compactionState) {
+        List<RangeTombstone> tombstones = new ArrayList<>();
+        for (List<FileMetaData> files : compactionState.compaction.getInputs()) {
+            for (FileMetaData file : files) {
+                tombstones.addAll(tableCache.getRangeTombstones(file));
+            }
+        }
+        compactionState.inputRangeTombstones = new RangeTombstones(tombstones, internalKeyComparator.getUserComparator());
+
+        for (RangeTombstone tombstone : tombstones) {
+            if (tombstone.getSequenceNumber() > compactionState.smallestSnapshot || !compactionState.compaction.isBaseLevelForRange(tombstone.getStart(), tombstone.getEnd())) {
+                compactionState.rangeTombstones.add(tombstone);
+            }
+        }
+        Collections.sort(compactionState.rangeTombstones, new Comparator<RangeTombstone>()
+        {
+            @Override
+            public int compare(RangeTombstone o1, RangeTombstone o2)
+            {
+                return internalKeyComparator.compare(o1.getStartKey(), o2.getStartKey());
+            }
+        });
+    }
+
+    /**
+     * Writes the pending range deletions that start at or before the user key, or all of them if
+     * the key is null, to the current output, opening one if necessary.
+     */
+    private void addCompactionRangeTombstones(CompactionState compactionState, Slice userKey) throws FileNotFoundException {
+        UserComparator userComparator = internalKeyComparator.getUserComparator();
+        while (compactionState.nextRangeTombstone < compactionState.rangeTombstones.size()) {
+            RangeTombstone tombstone = compactionState.rangeTombstones.get(compactionState.nextRangeTombstone);
+            if (userKey != null && userComparator.compare(tombstone.getStart(), userKey) > 0) {
+                return;
+            }
+            if (compactionState.builder == null) {
+                openCompactionOutputFile(compactionState);
+            }
+            compactionState.builder.addRangeTombstone(tombstone.getStartKey().encode(), tombstone.getEnd());
+            updateCompactionOutputRange(compactionState, tombstone.getStartKey(), tombstone.getEndKey());
+            if (compactionState.currentRangeTombstoneLimit == null || userComparator.compare(tombstone.getEnd(), compactionState.currentRangeTombstoneLimit) > 0) {
+                compactionState.currentRangeTombstoneLimit = tombstone.getEnd();
+            }
+            compactionState.nextRangeTombstone++;
+        }
+    }
+
+    private void updateCompactionOutputRange(CompactionState compactionState, InternalKey smallest, InternalKey largest) {
+        if (compactionState.currentSmallest == null || internalKeyComparator.compare(smallest, compactionState.currentSmallest) < 0) {
+            compactionState.currentSmallest = smallest;
+        }
+        if (compactionState.currentLargest == null || internalKeyComparator.compare(largest, compactionState.currentLargest) > 0) {
+            compactionState.currentLargest = largest;
+        }
+    }
+
     private void openCompactionOutputFile(CompactionState compactionState) throws FileNotFoundException {
         requireNonNull(compactionState, "compactionState is null");
         checkArgument(compactionState.builder == null, "compactionState builder is not null");
@@ -1057,10 +1529,12 @@ public class DbImpl implements DB {
             compactionState.currentFileSize = 0;
             compactionState.currentSmallest = null;
             compactionState.currentLargest = null;
+            compactionState.currentRangeTombstoneLimit = null;
 
             File file = new File(databaseDir, Filename.tableFileName(fileNumber));
             compactionState.outfile = new FileOutputStream(file).getChannel();
-            compactionState.builder = new TableBuilder(options, compactionState.outfile, new InternalUserComparator(internalKeyComparator));
+            compactionState.builder = new TableBuilder(options, compactionState.outfile, new InternalUserComparator(internalKeyComparator), compressionExecutor, new InternalEntryClassifier());
+            compactionState.blobSeparator.startTable();
         } finally {
             mutex.unlock();
         }
@@ -1081,7 +1555,8 @@ public class DbImpl implements DB {
         compactionState.currentFileSize = currentBytes;
         compactionState.totalBytes += currentBytes;
 
-        FileMetaData currentFileMetaData = new FileMetaData(compactionState.currentFileNumber, compactionState.currentFileSize, compactionState.currentSmallest, compactionState.currentLargest);
+        FileMetaData currentFileMetaData = new FileMetaData(compactionState.currentFileNumber, compactionState.currentFileSize, compactionState.currentSmallest, compactionState.currentLargest,
+                compactionState.blobSeparator.getOldestBlobFileNumber(), compactionState.builder.getProperties());
         compactionState.outputs.add(currentFileMetaData);
 
         compactionState.builder = null;
@@ -1092,7 +1567,7 @@ public class DbImpl implements DB {
 
         if (currentEntries > 0) {
             // Verify that the table is usable
-            tableCache.newIterator(outputNumber);
+            tableCache.newIterator(outputNumber).close();
         }
     }
 
@@ -1119,6 +1594,174 @@ public class DbImpl implements DB {
                 file.delete();
             }
             compact.outputs.clear();
+            compact.blobSeparator.delete();
+        }
+    }
+
+    /**
+     * Rewrites one table that references sparse blob files in place, relocating its blob values to
+     * a new blob file so that the old files can eventually be deleted.
+     */
+    private void collectBlobGarbage() throws IOException {
+        checkState(mutex.isHeldByCurrentThread());
+
+        Version current = versions.getCurrent();
+        final FileMetaData input = current.getBlobGarbageCollectionFile();
+        if (input == null) {
+            return;
+        }
+        int level = current.getBlobGarbageCollectionLevel();
+
+        VersionEdit edit = new VersionEdit();
+        long fileNumber = versions.getNextFileNumber();
+        pendingOutputs.add(fileNumber);
+        BlobSeparator blobSeparator = new BlobSeparator(current.getBlobGarbageCollectionCutoff());
+        mutex.unlock();
+        FileMetaData output;
+        final List<InternalTableIterator> inputIterators = new ArrayList<>();
+        try {
+            output = buildTable(new SeekingIterable<InternalKey, Slice>()
+            {
+                @Override
+                public SeekingIterator<InternalKey, Slice> iterator()
+                {
+                    InternalTableIterator iterator = tableCache.newIterator(input);
+                    inputIterators.add(iterator);
+                    return iterator;
+                }
+            }, tableCache.getRangeTombstones(input), fileNumber, blobSeparator);
+            blobSeparator.finish(edit);
+        } catch (IOException | RuntimeException e) {
+            blobSeparator.abandon();
+            throw e;
+        } finally {
+            for (InternalTableIterator iterator : inputIterators) {
+                iterator.close();
+            }
+            mutex.lock();
+        }
+
+        // the rewritten table holds the same keys, so it stays on the same level
+        edit.deleteFile(level, input.getNumber());
+        if (output != null) {
+            edit.addFile(level, output);
+        }
+        try {
+            versions.logAndApply(edit);
+        } finally {
+            pendingOutputs.remove(fileNumber);
+            blobSeparator.releasePendingOutput();
+        }
+        deleteObsoleteFiles();
+    }
+
+    /**
+     * Moves values of at least {@link Options#blobValueThreshold()} bytes out of the tables being
+     * written and into a blob file, and relocates the values of blob files numbered at or below the
+     * relocation cutoff.  References that are dropped or relocated are recorded as blob garbage.
+     */
+    private class BlobSeparator {
+        private final long relocationCutoff;
+        private final VersionEdit garbage = new VersionEdit();
+
+        private BlobFileWriter writer;
+        private long blobFileNumber;
+        private boolean finished;
+
+        // oldest blob file referenced by the table currently being written
+        private long oldestBlobFileNumber;
+
+        private BlobSeparator(long relocationCutoff) {
+            this.relocationCutoff = relocationCutoff;
+        }
+
+        public void startTable() {
+            oldestBlobFileNumber = 0;
+        }
+
+        public long getOldestBlobFileNumber() {
+            return oldestBlobFileNumber;
+        }
+
+        public Entry<InternalKey, Slice> separate(InternalKey key, Slice value) throws IOException {
+            if (key.getValueType() == VALUE && options.blobValueThreshold() > 0 && value.length() >= options.blobValueThreshold()) {
+                return writeBlob(key, value);
+            }
+            if (key.getValueType() == BLOB_INDEX) {
+                BlobIndex blobIndex = BlobIndex.decode(value);
+                if (blobIndex.getFileNumber() <= relocationCutoff) {
+                    garbage.addBlobGarbage(blobIndex.getFileNumber(), 1, blobIndex.getSize());
+                    return writeBlob(key, blobStore.read(blobIndex));
+                }
+                addReference(blobIndex.getFileNumber());
+            }
+            return Maps.immutableEntry(key, value);
+        }
+
+        public void drop(InternalKey key, Slice value) {
+            if (key.getValueType() == BLOB_INDEX) {
+                BlobIndex blobIndex = BlobIndex.decode(value);
+                garbage.addBlobGarbage(blobIndex.getFileNumber(), 1, blobIndex.getSize());
+            }
+        }
+
+        private Entry<InternalKey, Slice> writeBlob(InternalKey key, Slice value) throws IOException {
+            if (writer == null) {
+                mutex.lock();
+                try {
+                    blobFileNumber = versions.getNextFileNumber();
+                    pendingOutputs.add(blobFileNumber);
+                } finally {
+                    mutex.unlock();
+                }
+                writer = new BlobFileWriter(new File(databaseDir, Filename.blobFileName(blobFileNumber)), blobFileNumber);
+            }
+            BlobIndex blobIndex = writer.add(value);
+            addReference(blobFileNumber);
+            return Maps.immutableEntry(new InternalKey(key.getUserKey(), key.getSequenceNumber(), BLOB_INDEX), blobIndex.encode());
+        }
+
+        private void addReference(long number) {
+            if (oldestBlobFileNumber == 0 || number < oldestBlobFileNumber) {
+                oldestBlobFileNumber = number;
+            }
+        }
+
+        /**
+         * Syncs the blob file and records it, and the garbage, in the specified edit.
+         */
+        public void finish(VersionEdit edit) throws IOException {
+            checkState(!finished, "blob separator is finished");
+            finished = true;
+            if (writer != null) {
+                edit.addBlobFile(writer.finish());
+            }
+            for (BlobFileMetaData blobGarbage : garbage.getBlobGarbage().values()) {
+                edit.addBlobGarbage(blobGarbage.getNumber(), blobGarbage.getGarbageCount(), blobGarbage.getGarbageBytes());
+            }
+        }
+
+        /**
+         * Discards the blob file unless it was finished.
+         */
+        public void abandon() throws IOException {
+            if (writer != null && !finished) {
+                finished = true;
+                writer.abandon();
+                delete();
+            }
+        }
+
+        public void delete() {
+            if (writer != null) {
+                new File(databaseDir, Filename.blobFileName(blobFileNumber)).delete();
+            }
+        }
+
+        public void releasePendingOutput() {
+            if (writer != null) {
+                pendingOutputs.remove(blobFileNumber);
+            }
         }
     }
 
@@ -1169,8 +1812,18 @@ public class DbImpl implements DB {
         private InternalKey currentSmallest;
         private InternalKey currentLargest;
 
+        // end of the range deletions written to the current output
+        private Slice currentRangeTombstoneLimit;
+
+        // range deletions of the inputs, and those of them to write to the outputs in key order
+        private RangeTombstones inputRangeTombstones;
+        private final List<RangeTombstone> rangeTombstones = new ArrayList<>();
+        private int nextRangeTombstone;
+
         private long totalBytes;
 
+        private BlobSeparator blobSeparator;
+
         private CompactionState(Compaction compaction) {
             this.compaction = compaction;
         }
@@ -1182,10 +1835,12 @@ public class DbImpl implements DB {
 
     private static class ManualCompaction {
         private final int level;
-        private final Slice begin;
-        private final Slice end;
+        // advanced past each chunk of an oversized compaction; level 0 files may overlap the whole
+        // range, so there it stays put
+        private InternalKey begin;
+        private final InternalKey end;
 
-        private ManualCompaction(int level, Slice begin, Slice end) {
+        private ManualCompaction(int level, InternalKey begin, InternalKey end) {
             this.level = level;
             this.begin = begin;
             this.end = end;
@@ -1205,6 +1860,14 @@ public class DbImpl implements DB {
             } else if (valueType == DELETION) {
                 Slice key = readLengthPrefixedBytes(record);
                 writeBatch.delete(key);
+            } else if (valueType == RANGE_DELETION) {
+                Slice begin = readLengthPrefixedBytes(record);
+                Slice end = readLengthPrefixedBytes(record);
+                writeBatch.deleteRange(begin, end);
+            } else if (valueType == MERGE) {
+                Slice key = readLengthPrefixedBytes(record);
+                Slice value = readLengthPrefixedBytes(record);
+                writeBatch.merge(key, value);
             } else {
                 throw new IllegalStateException("Unexpected value type " + valueType);
             }
@@ -1235,6 +1898,20 @@ public class DbImpl implements DB {
                 sliceOutput.writeByte(DELETION.getPersistentId());
                 writeLengthPrefixedBytes(sliceOutput, key);
             }
+
+            @Override
+            public void deleteRange(Slice begin, Slice end) {
+                sliceOutput.writeByte(RANGE_DELETION.getPersistentId());
+                writeLengthPrefixedBytes(sliceOutput, begin);
+                writeLengthPrefixedBytes(sliceOutput, end);
+            }
+
+            @Override
+            public void merge(Slice key, Slice value) {
+                sliceOutput.writeByte(MERGE.getPersistentId());
+                writeLengthPrefixedBytes(sliceOutput, key);
+                writeLengthPrefixedBytes(sliceOutput, value);
+            }
         });
         return record.slice(0, sliceOutput.size());
     }
@@ -1257,6 +1934,16 @@ public class DbImpl implements DB {
         public void delete(Slice key) {
             memTable.add(sequence++, DELETION, key, Slices.EMPTY_SLICE);
         }
+
+        @Override
+        public void deleteRange(Slice begin, Slice end) {
+            memTable.add(sequence++, RANGE_DELETION, begin, end);
+        }
+
+        @Override
+        public void merge(Slice key, Slice value) {
+            memTable.add(sequence++, MERGE, key, value);
+        }
     }
 
     public static class DatabaseShutdownException extends DBException {
@@ -1313,4 +2000,360 @@ public class DbImpl implements DB {
     public void compactRange(byte[] begin, byte[] end) throws DBException {
         throw new UnsupportedOperationException("Not yet implemented");
     }
+
+    @Override
+    public void ingestExternalFiles(List<File> files) throws DBException {
+        requireNonNull(files, "files is null");
+        checkBackgroundException();
+        if (files.isEmpty()) {
+            return;
+        }
+
+        List<Long> fileNumbers = new ArrayList<>();
+        mutex.lock();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                long fileNumber = versions.getNextFileNumber();
+                pendingOutputs.add(fileNumber);
+                fileNumbers.add(fileNumber);
+            }
+        } finally {
+            mutex.unlock();
+        }
+
+        List<FileMetaData> copied = new ArrayList<>();
+        List<FileMetaData> ingested = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                copied.add(copyExternalFile(files.get(i), fileNumbers.get(i)));
+            }
+            Collections.sort(copied, new Comparator<FileMetaData>()
+            {
+                @Override
+                public int compare(FileMetaData o1, FileMetaData o2)
+                {
+                    return internalKeyComparator.compare(o1.getSmallest(), o2.getSmallest());
+                }
+            });
+            for (int i = 1; i < copied.size(); i++) {
+                checkArgument(internalKeyComparator.getUserComparator().compare(copied.get(i - 1).getLargest().getUserKey(), copied.get(i).getSmallest().getUserKey()) < 0,
+                        "Ingested files overlap");
+            }
+
+            mutex.lock();
+            try {
+                // lookups consult the memtables before the tables, so the memtables that hold
+                // entries in the ingested key ranges are flushed first
+                while (true) {
+                    boolean memTableOverlaps = overlapsFiles(memTable, copied);
+                    if (!memTableOverlaps && (immutableMemTable == null || !overlapsFiles(immutableMemTable, copied))) {
+                        break;
+                    }
+                    if (memTableOverlaps) {
+                        makeRoomForWrite(true);
+                    }
+                    while (immutableMemTable != null) {
+                        backgroundCondition.awaitUninterruptibly();
+                    }
+                    checkBackgroundException();
+                }
+
+                // Level 0 is read in file number order, so the files are renamed to numbers
+                // reserved together with the sequence number of the ingestion.
+                long sequence = versions.getLastSequence() + 1;
+                versions.setLastSequence(sequence);
+                for (FileMetaData file : copied) {
+                    long fileNumber = versions.getNextFileNumber();
+                    pendingOutputs.add(fileNumber);
+                    fileNumbers.add(fileNumber);
+                    Files.move(new File(databaseDir, Filename.tableFileName(file.getNumber())).toPath(), new File(databaseDir, Filename.tableFileName(fileNumber)).toPath(),
+                            StandardCopyOption.ATOMIC_MOVE);
+                    ingested.add(new FileMetaData(fileNumber, file.getFileSize(),
+                            new InternalKey(file.getSmallest().getUserKey(), sequence, file.getSmallest().getValueType()),
+                            new InternalKey(file.getLargest().getUserKey(), sequence, file.getLargest().getValueType()),
+                            0, file.getTableProperties(), sequence));
+                }
+
+                VersionEdit edit = new VersionEdit();
+                for (FileMetaData fileMetaData : ingested) {
+                    edit.addFile(pickLevelForIngestedFile(fileMetaData), fileMetaData);
+                }
+                versions.logAndApply(edit);
+                copied.clear();
+                ingested.clear();
+            } finally {
+                mutex.unlock();
+            }
+        } catch (IOException e) {
+            throw new DBException(e);
+        } finally {
+            mutex.lock();
+            try {
+                for (FileMetaData fileMetaData : copied) {
+                    new File(databaseDir, Filename.tableFileName(fileMetaData.getNumber())).delete();
+                }
+                for (FileMetaData fileMetaData : ingested) {
+                    new File(databaseDir, Filename.tableFileName(fileMetaData.getNumber())).delete();
+                }
+                pendingOutputs.removeAll(fileNumbers);
+                maybeScheduleCompaction();
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the memtable holds data in the key range of any of the files.
+     */
+    private static boolean overlapsFiles(MemTable memTable, List<FileMetaData> files) {
+        for (FileMetaData file : files) {
+            if (memTable.overlapsRange(file.getSmallest().getUserKey(), file.getLargest().getUserKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts a bulk load that writes keys supplied in strictly increasing order straight into
+     * table files, bypassing the log, the memtable and compaction.  The files are added to the
+     * last level when the load is committed, which requires that no data in the database falls in
+     * the key range of the load and that no snapshot is open.
+     */
+    public BulkLoad bulkLoad() {
+        checkBackgroundException();
+        return new BulkLoad();
+    }
+
+    public final class BulkLoad implements Closeable {
+        private final List<FileMetaData> files = new ArrayList<>();
+        private final List<Long> fileNumbers = new ArrayList<>();
+
+        private FileChannel outfile;
+        private TableBuilder builder;
+        private InternalKey currentSmallest;
+        private InternalKey currentLargest;
+        private boolean closed;
+
+        private BulkLoad() {
+        }
+
+        public BulkLoad put(byte[] key, byte[] value) throws IOException {
+            requireNonNull(key, "key is null");
+            requireNonNull(value, "value is null");
+            checkState(!closed, "bulk load is closed");
+
+            // The entries get sequence number 0: at commit nothing else in the database overlaps
+            // them, the same as for the entries compaction writes into the base level.  Every
+            // snapshot would see them, so commit refuses while a snapshot is open.
+            InternalKey internalKey = new InternalKey(Slices.wrappedBuffer(key.clone()), 0, VALUE);
+            checkArgument(currentLargest == null || internalKeyComparator.getUserComparator().compare(internalKey.getUserKey(), currentLargest.getUserKey()) > 0,
+                    "Keys must be added in strictly increasing order");
+
+            if (builder != null && builder.getFileSize() >= VersionSet.TARGET_FILE_SIZE) {
+                finishFile();
+            }
+            if (builder == null) {
+                openFile();
+            }
+            builder.add(internalKey.encode(), Slices.wrappedBuffer(value));
+            if (currentSmallest == null) {
+                currentSmallest = internalKey;
+            }
+            currentLargest = internalKey;
+            return this;
+        }
+
+        private void openFile() throws FileNotFoundException {
+            long fileNumber;
+            mutex.lock();
+            try {
+                fileNumber = versions.getNextFileNumber();
+                pendingOutputs.add(fileNumber);
+                fileNumbers.add(fileNumber);
+            } finally {
+                mutex.unlock();
+            }
+            outfile = new FileOutputStream(new File(databaseDir, Filename.tableFileName(fileNumber))).getChannel();
+            builder = new TableBuilder(options, outfile, new InternalUserComparator(internalKeyComparator), compressionExecutor, new InternalEntryClassifier());
+            currentSmallest = null;
+        }
+
+        private void finishFile() throws IOException {
+            builder.finish();
+            FileMetaData fileMetaData = new FileMetaData(fileNumbers.get(fileNumbers.size() - 1), builder.getFileSize(), currentSmallest, currentLargest, 0, builder.getProperties());
+            builder = null;
+            try {
+                outfile.force(true);
+            } finally {
+                outfile.close();
+                outfile = null;
+            }
+            files.add(fileMetaData);
+        }
+
+        /**
+         * Adds the files written so far to the last level of the database.
+         */
+        public void commit() throws IOException {
+            checkState(!closed, "bulk load is closed");
+            if (builder != null) {
+                finishFile();
+            }
+            if (files.isEmpty()) {
+                close();
+                return;
+            }
+
+            Slice smallestUserKey = files.get(0).getSmallest().getUserKey();
+            Slice largestUserKey = files.get(files.size() - 1).getLargest().getUserKey();
+            mutex.lock();
+            try {
+                // a running compaction may still add an overlapping file to the last level
+                while (overlapsRunningCompactionOutput(NUM_LEVELS - 1, smallestUserKey, largestUserKey)) {
+                    backgroundCondition.awaitUninterruptibly();
+                }
+
+                if (openSnapshots.get() > 0) {
+                    throw new DBException("A bulk load cannot be committed while snapshots are open");
+                }
+
+                boolean overlaps = memTable.overlapsRange(smallestUserKey, largestUserKey) || (immutableMemTable != null && immutableMemTable.overlapsRange(smallestUserKey, largestUserKey));
+                Version current = versions.getCurrent();
+                for (int level = 0; level < NUM_LEVELS && !overlaps; level++) {
+                    overlaps = current.overlapInLevel(level, smallestUserKey, largestUserKey);
+                }
+                if (overlaps) {
+                    throw new DBException("The bulk loaded keys overlap data in the database");
+                }
+
+                VersionEdit edit = new VersionEdit();
+                for (FileMetaData fileMetaData : files) {
+                    edit.addFile(NUM_LEVELS - 1, fileMetaData);
+                }
+                versions.logAndApply(edit);
+                files.clear();
+                pendingOutputs.removeAll(fileNumbers);
+                fileNumbers.clear();
+            } finally {
+                mutex.unlock();
+                close();
+            }
+        }
+
+        /**
+         * Discards the files of the load unless it was committed.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (builder != null) {
+                builder.abandon();
+                builder = null;
+                Closeables.closeQuietly(outfile);
+                outfile = null;
+            }
+            mutex.lock();
+            try {
+                for (long fileNumber : fileNumbers) {
+                    new File(databaseDir, Filename.tableFileName(fileNumber)).delete();
+                }
+                pendingOutputs.removeAll(fileNumbers);
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies an external table byte for byte into the database directory and checks its keys.  The
+     * keys keep sequence number 0; the returned metadata bounds the file with them.
+     */
+    private FileMetaData copyExternalFile(File externalFile, long fileNumber) throws IOException {
+        File file = new File(databaseDir, Filename.tableFileName(fileNumber));
+        try {
+            try (FileChannel externalChannel = new FileInputStream(externalFile).getChannel();
+                    FileChannel channel = new FileOutputStream(file).getChannel()) {
+                long size = externalChannel.size();
+                for (long position = 0; position < size; ) {
+                    position += externalChannel.transferTo(position, size - position, channel);
+                }
+                channel.force(true);
+            }
+
+            try (FileInputStream input = new FileInputStream(file)) {
+                Table table = new FileChannelTable(file.getAbsolutePath(), input.getChannel(), new InternalUserComparator(internalKeyComparator), options.verifyChecksums());
+                checkArgument(table.getProperties() != null && table.getRangeTombstones().isEmpty(), "%s was not written by an SstFileWriter", externalFile);
+                InternalKey smallest = null;
+                InternalKey largest = null;
+                for (InternalTableIterator iterator = new InternalTableIterator(table.iterator()); iterator.hasNext(); ) {
+                    InternalKey key = iterator.next().getKey();
+                    checkArgument(key.getSequenceNumber() == 0 && (key.getValueType() == VALUE || key.getValueType() == DELETION),
+                            "%s was not written by an SstFileWriter", externalFile);
+                    checkArgument(largest == null || internalKeyComparator.getUserComparator().compare(key.getUserKey(), largest.getUserKey()) > 0,
+                            "%s has duplicate keys", externalFile);
+                    if (smallest == null) {
+                        smallest = key;
+                    }
+                    largest = key;
+                }
+                checkArgument(smallest != null, "%s is empty", externalFile);
+                return new FileMetaData(fileNumber, file.length(), smallest, largest, 0, table.getProperties());
+            }
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the deepest level the ingested file can be placed in: the entries of the file are
+     * newer than all others, so no level above it may overlap it, while the first level below it
+     * that does is fine.
+     */
+    private int pickLevelForIngestedFile(FileMetaData fileMetaData) {
+        checkState(mutex.isHeldByCurrentThread());
+
+        Version current = versions.getCurrent();
+        Slice smallestUserKey = fileMetaData.getSmallest().getUserKey();
+        Slice largestUserKey = fileMetaData.getLargest().getUserKey();
+        int level = 0;
+        if (!current.overlapInLevel(0, smallestUserKey, largestUserKey)) {
+            while (level + 1 < NUM_LEVELS && !current.overlapInLevel(level + 1, smallestUserKey, largestUserKey)
+                    && !overlapsRunningCompactionOutput(level + 1, smallestUserKey, largestUserKey)) {
+                level++;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns true if the running compaction, which is not installed yet, may write a file into the
+     * level that overlaps the key range.
+     */
+    private boolean overlapsRunningCompactionOutput(int level, Slice smallestUserKey, Slice largestUserKey) {
+        Compaction compaction = runningCompaction;
+        if (compaction == null || compaction.getLevel() + 1 != level) {
+            return false;
+        }
+        // the outputs lie within the key range of all inputs together
+        UserComparator userComparator = internalKeyComparator.getUserComparator();
+        Slice smallest = null;
+        Slice largest = null;
+        for (List<FileMetaData> files : compaction.getInputs()) {
+            for (FileMetaData file : files) {
+                if (smallest == null || userComparator.compare(file.getSmallest().getUserKey(), smallest) < 0) {
+                    smallest = file.getSmallest().getUserKey();
+                }
+                if (largest == null || userComparator.compare(file.getLargest().getUserKey(), largest) > 0) {
+                    largest = file.getLargest().getUserKey();
+                }
+            }
+        }
+        return smallest != null && userComparator.compare(smallest, largestUserKey) <= 0 && userComparator.compare(largest, smallestUserKey) >= 0;
+    }
 }
@@ -17,6 +17,8 @@
  */
 package org.iq80.leveldb.impl;
 
+import org.iq80.leveldb.table.TableProperties;
+
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileMetaData {
@@ -37,17 +39,87 @@ public class FileMetaData {
      */
     private final InternalKey largest;
 
+    /**
+     * Smallest blob file number referenced by the table, or 0 if it holds no blob references
+     */
+    private final long oldestBlobFileNumber;
+
+    /**
+     * Entries and deletion markers in the table, both 0 if unknown because the table was added by
+     * a version edit that predates them
+     */
+    private final long entryCount;
+    private final long deletionCount;
+
+    /**
+     * Time the table was written in milliseconds since the epoch, or 0 if unknown
+     */
+    private final long creationTime;
+
+    /**
+     * Range deletions in the table's range deletion block
+     */
+    private final long rangeDeletionCount;
+
+    /**
+     * Sequence number of every entry of an ingested table, whose keys are stored with sequence
+     * number 0, or 0 if the keys carry their own
+     */
+    private final long globalSequenceNumber;
+
     /**
      * Seeks allowed until compaction
      */
     // todo this mutable state should be moved elsewhere
     private final AtomicInteger allowedSeeks = new AtomicInteger(1 << 30);
 
+    /**
+     * Statistics read from the table, loaded on first use
+     */
+    private volatile TableProperties tableProperties;
+
+    /**
+     * Index of the table's range deletions, loaded on first use
+     */
+    private volatile RangeTombstones rangeTombstones;
+
     public FileMetaData(long number, long fileSize, InternalKey smallest, InternalKey largest) {
+        this(number, fileSize, smallest, largest, 0);
+    }
+
+    public FileMetaData(long number, long fileSize, InternalKey smallest, InternalKey largest, long oldestBlobFileNumber) {
+        this(number, fileSize, smallest, largest, oldestBlobFileNumber, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates the metadata of a table that was just written, taking its statistics from the
+     * properties the table builder collected.
+     */
+    public FileMetaData(long number, long fileSize, InternalKey smallest, InternalKey largest, long oldestBlobFileNumber, TableProperties tableProperties) {
+        this(number, fileSize, smallest, largest, oldestBlobFileNumber, tableProperties, 0);
+    }
+
+    /**
+     * Creates the metadata of a table whose entries all take the specified sequence number.
+     */
+    public FileMetaData(long number, long fileSize, InternalKey smallest, InternalKey largest, long oldestBlobFileNumber, TableProperties tableProperties, long globalSequenceNumber) {
+        this(number, fileSize, smallest, largest, oldestBlobFileNumber, tableProperties.getEntryCount(), tableProperties.getDeletionCount(), tableProperties.getCreationTime(),
+                tableProperties.getRangeDeletionCount(), globalSequenceNumber);
+        this.tableProperties = tableProperties;
+    }
+
+    public FileMetaData(long number, long fileSize, InternalKey smallest, InternalKey largest, long oldestBlobFileNumber, long entryCount, long deletionCount, long creationTime,
+            long rangeDeletionCount, long globalSequenceNumber) {
         this.number = number;
         this.fileSize = fileSize;
         this.smallest = smallest;
         this.largest = largest;
+        this.oldestBlobFileNumber = oldestBlobFileNumber;
+        this.entryCount = entryCount;
+        this.deletionCount = deletionCount;
+        this.creationTime = creationTime;
+        this.rangeDeletionCount = rangeDeletionCount;
+        this.globalSequenceNumber = globalSequenceNumber;
     }
 
     public long getFileSize() {
@@ -66,6 +138,46 @@ public class FileMetaData {
         return largest;
     }
 
+    public long getOldestBlobFileNumber() {
+        return oldestBlobFileNumber;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getDeletionCount() {
+        return deletionCount;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getRangeDeletionCount() {
+        return rangeDeletionCount;
+    }
+
+    public long getGlobalSequenceNumber() {
+        return globalSequenceNumber;
+    }
+
+    public TableProperties getTableProperties() {
+        return tableProperties;
+    }
+
+    public void setTableProperties(TableProperties tableProperties) {
+        this.tableProperties = tableProperties;
+    }
+
+    public RangeTombstones getRangeTombstones() {
+        return rangeTombstones;
+    }
+
+    public void setRangeTombstones(RangeTombstones rangeTombstones) {
+        this.rangeTombstones = rangeTombstones;
+    }
+
     public int getAllowedSeeks() {
         return allowedSeeks.get();
     }
@@ -86,6 +198,12 @@ public class FileMetaData {
         sb.append(", fileSize=").append(fileSize);
         sb.append(", smallest=").append(smallest);
         sb.append(", largest=").append(largest);
+        sb.append(", oldestBlobFileNumber=").append(oldestBlobFileNumber);
+        sb.append(", entryCount=").append(entryCount);
+        sb.append(", deletionCount=").append(deletionCount);
+        sb.append(", creationTime=").append(creationTime);
+        sb.append(", rangeDeletionCount=").append(rangeDeletionCount);
+        sb.append(", globalSequenceNumber=").append(globalSequenceNumber);
         sb.append(", allowedSeeks=").append(allowedSeeks);
         sb.append('}');
         return sb.toString();
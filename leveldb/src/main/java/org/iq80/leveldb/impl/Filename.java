@@ -33,7 +33,7 @@ public final class Filename {
     }
 
     public enum FileType {
-        LOG, DB_LOCK, TABLE, DESCRIPTOR, CURRENT, TEMP, INFO_LOG  // Either the current one, or an old one
+        LOG, DB_LOCK, TABLE, BLOB, DESCRIPTOR, CURRENT, TEMP, INFO_LOG  // Either the current one, or an old one
     }
 
     /**
@@ -50,6 +50,13 @@ public final class Filename {
         return makeFileName(number, "sst");
     }
 
+    /**
+     * Return the name of the blob file with the specified number.
+     */
+    public static String blobFileName(long number) {
+        return makeFileName(number, "blob");
+    }
+
     /**
      * Return the name of the descriptor file with the specified incarnation number.
      */
@@ -105,7 +112,7 @@ public final class Filename {
         //    dbname/LOG
         //    dbname/LOG.old
         //    dbname/MANIFEST-[0-9]+
-        //    dbname/[0-9]+.(log|sst|dbtmp)
+        //    dbname/[0-9]+.(log|sst|blob|dbtmp)
         String fileName = file.getName();
         if ("CURRENT".equals(fileName)) {
             return new FileInfo(FileType.CURRENT);
@@ -121,6 +128,9 @@ public final class Filename {
         } else if (fileName.endsWith(".log")) {
             long fileNumber = Long.parseLong(removeSuffix(fileName, ".log"));
             return new FileInfo(FileType.LOG, fileNumber);
+        } else if (fileName.endsWith(".blob")) {
+            long fileNumber = Long.parseLong(removeSuffix(fileName, ".blob"));
+            return new FileInfo(FileType.BLOB, fileNumber);
         } else if (fileName.endsWith(".sst")) {
             long fileNumber = Long.parseLong(removeSuffix(fileName, ".sst"));
             return new FileInfo(FileType.TABLE, fileNumber);
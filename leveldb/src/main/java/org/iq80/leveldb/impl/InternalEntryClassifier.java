@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import org.iq80.leveldb.table.EntryClassifier;
+import org.iq80.leveldb.util.Slice;
+
+import static org.iq80.leveldb.util.SizeOf.SIZE_OF_LONG;
+
+/**
+ * Classifies table entries by the value type encoded in their internal key.
+ */
+public class InternalEntryClassifier
+        implements EntryClassifier {
+    @Override
+    public boolean isDeletion(Slice key, Slice value) {
+        return valueType(key) == ValueType.DELETION;
+    }
+
+    @Override
+    public long getBlobValueSize(Slice key, Slice value) {
+        if (valueType(key) != ValueType.BLOB_INDEX) {
+            return 0;
+        }
+        return BlobIndex.decode(value).getSize();
+    }
+
+    private static ValueType valueType(Slice key) {
+        return SequenceNumber.unpackValueType(key.getLong(key.length() - SIZE_OF_LONG));
+    }
+}
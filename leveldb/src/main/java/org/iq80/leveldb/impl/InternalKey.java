@@ -31,6 +31,10 @@ public class InternalKey {
     private final long sequenceNumber;
     private final ValueType valueType;
 
+    // the encoded form when the key was decoded from one, so writing the key back out, as
+    // compaction does for every entry it keeps, neither allocates nor copies
+    private final Slice encoded;
+
     public InternalKey(Slice userKey, long sequenceNumber, ValueType valueType) {
         requireNonNull(userKey, "userKey is null");
         checkArgument(sequenceNumber >= 0, "sequenceNumber is negative");
@@ -39,6 +43,7 @@ public class InternalKey {
         this.userKey = userKey;
         this.sequenceNumber = sequenceNumber;
         this.valueType = valueType;
+        this.encoded = null;
     }
 
     public InternalKey(Slice data) {
@@ -48,6 +53,7 @@ public class InternalKey {
         long packedSequenceAndType = data.getLong(data.length() - SIZE_OF_LONG);
         this.sequenceNumber = SequenceNumber.unpackSequenceNumber(packedSequenceAndType);
         this.valueType = SequenceNumber.unpackValueType(packedSequenceAndType);
+        this.encoded = data;
     }
 
     public InternalKey(byte[] data) {
@@ -66,7 +72,14 @@ public class InternalKey {
         return valueType;
     }
 
+    /**
+     * Returns the encoded key: the user key followed by the packed sequence number and value type.
+     * The returned slice must not be modified.
+     */
     public Slice encode() {
+        if (encoded != null) {
+            return encoded;
+        }
         Slice slice = Slices.allocate(userKey.length() + SIZE_OF_LONG);
         SliceOutput sliceOutput = slice.output();
         sliceOutput.writeBytes(userKey);
@@ -22,18 +22,37 @@ import org.iq80.leveldb.util.Slice;
 
 import static com.google.common.base.Preconditions.checkState;
 import static org.iq80.leveldb.impl.SequenceNumber.MAX_SEQUENCE_NUMBER;
+import static org.iq80.leveldb.util.SizeOf.SIZE_OF_LONG;
 
 public class InternalUserComparator
         implements UserComparator {
     private final InternalKeyComparator internalKeyComparator;
+    private final UserComparator userComparator;
 
     public InternalUserComparator(InternalKeyComparator internalKeyComparator) {
         this.internalKeyComparator = internalKeyComparator;
+        this.userComparator = internalKeyComparator.getUserComparator();
     }
 
     @Override
     public int compare(Slice left, Slice right) {
-        return internalKeyComparator.compare(new InternalKey(left), new InternalKey(right));
+        return compare(left, 0, left.length(), right, 0, right.length());
+    }
+
+    @Override
+    public int compare(Slice left, int leftIndex, int leftLength, Slice right, int rightIndex, int rightLength) {
+        // compare the encoded keys where they are stored rather than decoding them
+        int leftUserKeyLength = leftLength - SIZE_OF_LONG;
+        int rightUserKeyLength = rightLength - SIZE_OF_LONG;
+        int result = userComparator.compare(left, leftIndex, leftUserKeyLength, right, rightIndex, rightUserKeyLength);
+        if (result != 0) {
+            return result;
+        }
+
+        // reverse sorted sequence numbers
+        long leftSequence = SequenceNumber.unpackSequenceNumber(left.getLong(leftIndex + leftUserKeyLength));
+        long rightSequence = SequenceNumber.unpackSequenceNumber(right.getLong(rightIndex + rightUserKeyLength));
+        return Long.compare(rightSequence, leftSequence);
     }
 
     @Override
@@ -82,4 +101,17 @@ public class InternalUserComparator
 
         return key;
     }
+
+    /**
+     * Returns the user key, so that every version of a user key lands in the same bucket.
+     */
+    @Override
+    public Slice hashKey(Slice key) {
+        return key.slice(0, key.length() - SIZE_OF_LONG);
+    }
+
+    @Override
+    public boolean canHashKeys() {
+        return userComparator.canHashKeys();
+    }
 }
@@ -19,7 +19,6 @@ package org.iq80.leveldb.impl;
 
 import com.google.common.collect.Lists;
 import org.iq80.leveldb.table.UserComparator;
-import org.iq80.leveldb.util.InternalTableIterator;
 import org.iq80.leveldb.util.LevelIterator;
 import org.iq80.leveldb.util.Slice;
 
@@ -121,24 +120,22 @@ public class Level
             lastFileRead = fileMetaData;
             lastFileReadLevel = levelNumber;
 
-            // open the iterator
-            InternalTableIterator iterator = tableCache.newIterator(fileMetaData);
-
-            // seek to the key
-            iterator.seek(key.getInternalKey());
-
-            if (iterator.hasNext()) {
-                // parse the key in the block
-                Entry<InternalKey, Slice> entry = iterator.next();
+            // look the key up in the data block that could hold it
+            Entry<InternalKey, Slice> entry = tableCache.get(fileMetaData, key.getInternalKey());
+            if (entry != null) {
                 InternalKey internalKey = entry.getKey();
                 checkState(internalKey != null, "Corrupt key for %s", key.getUserKey().toString(UTF_8));
 
                 // if this is a value key (not a delete) and the keys match, return the value
                 if (key.getUserKey().equals(internalKey.getUserKey())) {
                     if (internalKey.getValueType() == ValueType.DELETION) {
-                        return LookupResult.deleted(key);
+                        return LookupResult.deleted(key, internalKey.getSequenceNumber());
                     } else if (internalKey.getValueType() == VALUE) {
-                        return LookupResult.ok(key, entry.getValue());
+                        return LookupResult.ok(key, entry.getValue(), internalKey.getSequenceNumber());
+                    } else if (internalKey.getValueType() == ValueType.BLOB_INDEX) {
+                        return LookupResult.blobIndex(key, entry.getValue(), internalKey.getSequenceNumber());
+                    } else if (internalKey.getValueType() == ValueType.MERGE) {
+                        return LookupResult.merge(key, entry.getValue(), internalKey.getSequenceNumber());
                     }
                 }
             }
@@ -171,7 +168,7 @@ public class Level
 
         // todo replace with Collections.binarySearch
         int left = 0;
-        int right = files.size() - 1;
+        int right = files.size();
 
         // binary search restart positions to find the restart position immediately before the targetKey
         while (left < right) {
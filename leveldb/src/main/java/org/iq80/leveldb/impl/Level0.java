@@ -18,7 +18,6 @@
 package org.iq80.leveldb.impl;
 
 import org.iq80.leveldb.table.UserComparator;
-import org.iq80.leveldb.util.InternalTableIterator;
 import org.iq80.leveldb.util.Level0Iterator;
 import org.iq80.leveldb.util.Slice;
 
@@ -31,7 +30,6 @@ import java.util.Map.Entry;
 import static com.google.common.base.Preconditions.checkState;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
-import static org.iq80.leveldb.impl.SequenceNumber.MAX_SEQUENCE_NUMBER;
 import static org.iq80.leveldb.impl.ValueType.VALUE;
 
 // todo this class should be immutable
@@ -91,15 +89,9 @@ public class Level0
 
         readStats.clear();
         for (FileMetaData fileMetaData : fileMetaDataList) {
-            // open the iterator
-            InternalTableIterator iterator = tableCache.newIterator(fileMetaData);
-
-            // seek to the key
-            iterator.seek(key.getInternalKey());
-
-            if (iterator.hasNext()) {
-                // parse the key in the block
-                Entry<InternalKey, Slice> entry = iterator.next();
+            // look the key up in the data block that could hold it
+            Entry<InternalKey, Slice> entry = tableCache.get(fileMetaData, key.getInternalKey());
+            if (entry != null) {
                 InternalKey internalKey = entry.getKey();
                 checkState(internalKey != null, "Corrupt key for %s",
                         key.getUserKey().toString(UTF_8));
@@ -107,9 +99,13 @@ public class Level0
                 // if this is a value key (not a delete) and the keys match, return the value
                 if (key.getUserKey().equals(internalKey.getUserKey())) {
                     if (internalKey.getValueType() == ValueType.DELETION) {
-                        return LookupResult.deleted(key);
+                        return LookupResult.deleted(key, internalKey.getSequenceNumber());
                     } else if (internalKey.getValueType() == VALUE) {
-                        return LookupResult.ok(key, entry.getValue());
+                        return LookupResult.ok(key, entry.getValue(), internalKey.getSequenceNumber());
+                    } else if (internalKey.getValueType() == ValueType.BLOB_INDEX) {
+                        return LookupResult.blobIndex(key, entry.getValue(), internalKey.getSequenceNumber());
+                    } else if (internalKey.getValueType() == ValueType.MERGE) {
+                        return LookupResult.merge(key, entry.getValue(), internalKey.getSequenceNumber());
                     }
                 }
             }
@@ -125,38 +121,15 @@ public class Level0
     }
 
     public boolean someFileOverlapsRange(Slice smallestUserKey, Slice largestUserKey) {
-        InternalKey smallestInternalKey = new InternalKey(smallestUserKey, MAX_SEQUENCE_NUMBER, VALUE);
-        int index = findFile(smallestInternalKey);
-
+        // level 0 files may overlap each other, so every file has to be checked
         UserComparator userComparator = internalKeyComparator.getUserComparator();
-        return ((index < files.size()) &&
-                userComparator.compare(largestUserKey, files.get(index).getSmallest().getUserKey()) >= 0);
-    }
-
-    private int findFile(InternalKey targetKey) {
-        if (files.isEmpty()) {
-            return files.size();
-        }
-
-        // todo replace with Collections.binarySearch
-        int left = 0;
-        int right = files.size() - 1;
-
-        // binary search restart positions to find the restart position immediately before the targetKey
-        while (left < right) {
-            int mid = (left + right) / 2;
-
-            if (internalKeyComparator.compare(files.get(mid).getLargest(), targetKey) < 0) {
-                // Key at "mid.largest" is < "target".  Therefore all
-                // files at or before "mid" are uninteresting.
-                left = mid + 1;
-            } else {
-                // Key at "mid.largest" is >= "target".  Therefore all files
-                // after "mid" are uninteresting.
-                right = mid;
+        for (FileMetaData file : files) {
+            if (userComparator.compare(largestUserKey, file.getSmallest().getUserKey()) >= 0
+                    && userComparator.compare(smallestUserKey, file.getLargest().getUserKey()) <= 0) {
+                return true;
             }
         }
-        return right;
+        return false;
     }
 
     public void addFile(FileMetaData fileMetaData) {
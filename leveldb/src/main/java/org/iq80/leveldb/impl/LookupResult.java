@@ -22,19 +22,37 @@ import org.iq80.leveldb.util.Slice;
 import static java.util.Objects.requireNonNull;
 
 public class LookupResult {
-    public static LookupResult ok(LookupKey key, Slice value) {
-        return new LookupResult(key, value, false);
+    public static LookupResult ok(LookupKey key, Slice value, long sequenceNumber) {
+        return new LookupResult(key, value, sequenceNumber, false, false, false);
     }
 
-    public static LookupResult deleted(LookupKey key) {
-        return new LookupResult(key, null, true);
+    /**
+     * The value is an encoded {@link BlobIndex} that must be resolved against the blob files.
+     */
+    public static LookupResult blobIndex(LookupKey key, Slice blobIndex, long sequenceNumber) {
+        return new LookupResult(key, blobIndex, sequenceNumber, false, true, false);
+    }
+
+    /**
+     * The newest entry for the key is a merge operand, so the value has to be assembled from the
+     * older entries as well.
+     */
+    public static LookupResult merge(LookupKey key, Slice operand, long sequenceNumber) {
+        return new LookupResult(key, operand, sequenceNumber, false, false, true);
+    }
+
+    public static LookupResult deleted(LookupKey key, long sequenceNumber) {
+        return new LookupResult(key, null, sequenceNumber, true, false, false);
     }
 
     private final LookupKey key;
     private final Slice value;
+    private final long sequenceNumber;
     private final boolean deleted;
+    private final boolean blobIndex;
+    private final boolean merge;
 
-    private LookupResult(LookupKey key, Slice value, boolean deleted) {
+    private LookupResult(LookupKey key, Slice value, long sequenceNumber, boolean deleted, boolean blobIndex, boolean merge) {
         requireNonNull(key, "key is null");
         this.key = key;
         if (value != null) {
@@ -42,7 +60,10 @@ public class LookupResult {
         } else {
             this.value = null;
         }
+        this.sequenceNumber = sequenceNumber;
         this.deleted = deleted;
+        this.blobIndex = blobIndex;
+        this.merge = merge;
     }
 
     public LookupKey getKey() {
@@ -56,7 +77,22 @@ public class LookupResult {
         return value;
     }
 
+    /**
+     * Sequence number of the entry found for the key.
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
     public boolean isDeleted() {
         return deleted;
     }
+
+    public boolean isBlobIndex() {
+        return blobIndex;
+    }
+
+    public boolean isMerge() {
+        return merge;
+    }
 }
@@ -41,12 +41,15 @@ import static org.iq80.leveldb.impl.Logs.getChunkChecksum;
 
 public class MMapLogWriter implements LogWriter {
     private static final int PAGE_SIZE = 1024 * 1024;
+    // each remap doubles the window up to this size, so a log is remapped a few times rather than once per megabyte
+    private static final int MAX_PAGE_SIZE = 64 * 1024 * 1024;
 
     private final File file;
     private final long fileNumber;
     private final FileChannel fileChannel;
     private final AtomicBoolean closed = new AtomicBoolean();
     private MappedByteBuffer mappedByteBuffer;
+    private int pageSize = PAGE_SIZE;
     private long fileOffset;
     /**
      * Current offset in the current block
@@ -59,7 +62,7 @@ public class MMapLogWriter implements LogWriter {
         this.file = file;
         this.fileNumber = fileNumber;
         this.fileChannel = new RandomAccessFile(file, "rw").getChannel();
-        mappedByteBuffer = fileChannel.map(MapMode.READ_WRITE, 0, PAGE_SIZE);
+        mappedByteBuffer = fileChannel.map(MapMode.READ_WRITE, 0, pageSize);
     }
 
     @Override
@@ -197,7 +200,8 @@ public class MMapLogWriter implements LogWriter {
             fileOffset += mappedByteBuffer.position();
             unmap();
 
-            mappedByteBuffer = fileChannel.map(MapMode.READ_WRITE, fileOffset, PAGE_SIZE);
+            pageSize = Math.min(pageSize * 2, MAX_PAGE_SIZE);
+            mappedByteBuffer = fileChannel.map(MapMode.READ_WRITE, fileOffset, Math.max(pageSize, bytes));
         }
     }
 
@@ -19,26 +19,39 @@ package org.iq80.leveldb.impl;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
+import org.iq80.leveldb.table.UserComparator;
 import org.iq80.leveldb.util.InternalIterator;
 import org.iq80.leveldb.util.Slice;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Objects.requireNonNull;
+import static org.iq80.leveldb.impl.SequenceNumber.MAX_SEQUENCE_NUMBER;
 import static org.iq80.leveldb.util.SizeOf.SIZE_OF_LONG;
 
 public class MemTable implements SeekingIterable<InternalKey, Slice> {
     private final ConcurrentSkipListMap<InternalKey, Slice> table;
     private final AtomicLong approximateMemoryUsage = new AtomicLong();
+    private final InternalKeyComparator internalKeyComparator;
+
+    // range deletions, from the start key to the end user key, kept out of the point entries
+    private final ConcurrentSkipListMap<InternalKey, Slice> rangeTombstones;
+
+    // index of rangeTombstones, rebuilt on the first read after a range deletion is added
+    private volatile RangeTombstones rangeTombstoneIndex;
 
     public MemTable(InternalKeyComparator internalKeyComparator) {
+        this.internalKeyComparator = internalKeyComparator;
         table = new ConcurrentSkipListMap<>(internalKeyComparator);
+        rangeTombstones = new ConcurrentSkipListMap<>(internalKeyComparator);
     }
 
     public boolean isEmpty() {
-        return table.isEmpty();
+        return table.isEmpty() && rangeTombstones.isEmpty();
     }
 
     public long approximateMemoryUsage() {
@@ -51,7 +64,17 @@ public class MemTable implements SeekingIterable<InternalKey, Slice> {
         requireNonNull(valueType, "valueType is null");
 
         InternalKey internalKey = new InternalKey(key, sequenceNumber, valueType);
-        table.put(internalKey, value);
+        if (valueType == ValueType.RANGE_DELETION) {
+            // the value is the end of the range; an empty range deletes nothing
+            if (internalKeyComparator.getUserComparator().compare(key, value) < 0) {
+                synchronized (rangeTombstones) {
+                    rangeTombstones.put(internalKey, value);
+                    rangeTombstoneIndex = null;
+                }
+            }
+        } else {
+            table.put(internalKey, value);
+        }
 
         approximateMemoryUsage.addAndGet(key.length() + SIZE_OF_LONG + value.length());
     }
@@ -68,14 +91,58 @@ public class MemTable implements SeekingIterable<InternalKey, Slice> {
         InternalKey entryKey = entry.getKey();
         if (entryKey.getUserKey().equals(key.getUserKey())) {
             if (entryKey.getValueType() == ValueType.DELETION) {
-                return LookupResult.deleted(key);
+                return LookupResult.deleted(key, entryKey.getSequenceNumber());
+            } else if (entryKey.getValueType() == ValueType.MERGE) {
+                return LookupResult.merge(key, entry.getValue(), entryKey.getSequenceNumber());
             } else {
-                return LookupResult.ok(key, entry.getValue());
+                return LookupResult.ok(key, entry.getValue(), entryKey.getSequenceNumber());
             }
         }
         return null;
     }
 
+    /**
+     * Returns true if an entry or a range deletion of the memtable falls in the user key range.
+     */
+    public boolean overlapsRange(Slice smallestUserKey, Slice largestUserKey) {
+        UserComparator userComparator = internalKeyComparator.getUserComparator();
+        Entry<InternalKey, Slice> entry = table.ceilingEntry(new InternalKey(smallestUserKey, MAX_SEQUENCE_NUMBER, ValueType.VALUE));
+        if (entry != null && userComparator.compare(entry.getKey().getUserKey(), largestUserKey) <= 0) {
+            return true;
+        }
+        for (Entry<InternalKey, Slice> tombstone : rangeTombstones.entrySet()) {
+            if (userComparator.compare(tombstone.getKey().getUserKey(), largestUserKey) <= 0 && userComparator.compare(tombstone.getValue(), smallestUserKey) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the range deletions in the memtable ordered by start key.
+     */
+    public List<RangeTombstone> getRangeTombstoneList() {
+        List<RangeTombstone> tombstones = new ArrayList<>();
+        for (Entry<InternalKey, Slice> entry : rangeTombstones.entrySet()) {
+            tombstones.add(new RangeTombstone(entry.getKey(), entry.getValue()));
+        }
+        return tombstones;
+    }
+
+    public RangeTombstones getRangeTombstones() {
+        RangeTombstones index = rangeTombstoneIndex;
+        if (index == null) {
+            synchronized (rangeTombstones) {
+                index = rangeTombstoneIndex;
+                if (index == null) {
+                    index = new RangeTombstones(getRangeTombstoneList(), internalKeyComparator.getUserComparator());
+                    rangeTombstoneIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     @Override
     public MemTableIterator iterator() {
         return new MemTableIterator();
@@ -119,5 +186,10 @@ public class MemTable implements SeekingIterable<InternalKey, Slice> {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            // the memtable holds no tables
+        }
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import org.iq80.leveldb.util.Slice;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static org.iq80.leveldb.impl.SequenceNumber.MAX_SEQUENCE_NUMBER;
+
+/**
+ * Deletion of every user key in [start, end) written at a sequence number.  It hides the entries
+ * for those keys with smaller sequence numbers.  Memtables and tables keep range tombstones apart
+ * from point entries, under a {@link ValueType#RANGE_DELETION} internal key for the start with the
+ * end as the value.
+ */
+public class RangeTombstone {
+    private final Slice start;
+    private final Slice end;
+    private final long sequenceNumber;
+
+    public RangeTombstone(Slice start, Slice end, long sequenceNumber) {
+        this.start = requireNonNull(start, "start is null");
+        this.end = requireNonNull(end, "end is null");
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public RangeTombstone(InternalKey startKey, Slice end) {
+        this(startKey.getUserKey(), end, startKey.getSequenceNumber());
+    }
+
+    public Slice getStart() {
+        return start;
+    }
+
+    /**
+     * First user key after the deleted range.
+     */
+    public Slice getEnd() {
+        return end;
+    }
+
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public InternalKey getStartKey() {
+        return new InternalKey(start, sequenceNumber, ValueType.RANGE_DELETION);
+    }
+
+    /**
+     * Smallest internal key for the end user key.  It sorts after every key the tombstone deletes
+     * and before every entry for the end key itself, which makes it the largest key of a table
+     * holding the tombstone.
+     */
+    public InternalKey getEndKey() {
+        return new InternalKey(end, MAX_SEQUENCE_NUMBER, ValueType.RANGE_DELETION);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("RangeTombstone");
+        sb.append("{start=").append(start.toString(UTF_8));
+        sb.append(", end=").append(end.toString(UTF_8));
+        sb.append(", sequenceNumber=").append(sequenceNumber);
+        sb.append('}');
+        return sb.toString();
+    }
+}
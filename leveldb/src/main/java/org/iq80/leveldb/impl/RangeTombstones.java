@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import org.iq80.leveldb.util.Slice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Range tombstones cut into non-overlapping fragments so that the tombstones covering a key are
+ * found with a binary search.  Every fragment keeps the sequence numbers of the tombstones covering
+ * it, newest first, so one index serves readers at any snapshot.
+ */
+public final class RangeTombstones {
+    private final Comparator<Slice> userComparator;
+
+    // fragment i covers [boundaries[i], boundaries[i + 1])
+    private final Slice[] boundaries;
+    private final long[][] sequenceNumbers;
+
+    public RangeTombstones(Collection<RangeTombstone> tombstones, Comparator<Slice> userComparator) {
+        requireNonNull(tombstones, "tombstones is null");
+        this.userComparator = requireNonNull(userComparator, "userComparator is null");
+
+        List<RangeTombstone> sorted = new ArrayList<>();
+        TreeSet<Slice> points = new TreeSet<>(userComparator);
+        for (RangeTombstone tombstone : tombstones) {
+            if (userComparator.compare(tombstone.getStart(), tombstone.getEnd()) < 0) {
+                sorted.add(tombstone);
+                points.add(tombstone.getStart());
+                points.add(tombstone.getEnd());
+            }
+        }
+        Collections.sort(sorted, new Comparator<RangeTombstone>()
+        {
+            @Override
+            public int compare(RangeTombstone o1, RangeTombstone o2)
+            {
+                return userComparator.compare(o1.getStart(), o2.getStart());
+            }
+        });
+
+        boundaries = points.toArray(new Slice[points.size()]);
+        sequenceNumbers = new long[Math.max(boundaries.length - 1, 0)][];
+
+        // sweep the boundaries, keeping the tombstones that cover the current fragment
+        List<RangeTombstone> active = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < sequenceNumbers.length; i++) {
+            while (next < sorted.size() && userComparator.compare(sorted.get(next).getStart(), boundaries[i]) <= 0) {
+                active.add(sorted.get(next++));
+            }
+            for (Iterator<RangeTombstone> iterator = active.iterator(); iterator.hasNext(); ) {
+                if (userComparator.compare(iterator.next().getEnd(), boundaries[i]) <= 0) {
+                    iterator.remove();
+                }
+            }
+
+            long[] fragment = new long[active.size()];
+            for (int j = 0; j < fragment.length; j++) {
+                fragment[j] = active.get(j).getSequenceNumber();
+            }
+            Arrays.sort(fragment);
+            for (int left = 0, right = fragment.length - 1; left < right; left++, right--) {
+                long temp = fragment[left];
+                fragment[left] = fragment[right];
+                fragment[right] = temp;
+            }
+            sequenceNumbers[i] = fragment;
+        }
+    }
+
+    public boolean isEmpty() {
+        return sequenceNumbers.length == 0;
+    }
+
+    /**
+     * Returns the sequence number of the newest tombstone visible at the snapshot that covers the
+     * user key, or 0 if there is none.  Entries for the key with a smaller sequence number are
+     * deleted.
+     */
+    public long getCoveringSequenceNumber(Slice userKey, long snapshot) {
+        if (isEmpty()) {
+            return 0;
+        }
+
+        // find the last boundary at or before the key
+        int left = 0;
+        int right = boundaries.length - 1;
+        int fragment = -1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            if (userComparator.compare(boundaries[mid], userKey) <= 0) {
+                fragment = mid;
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        if (fragment < 0 || fragment >= sequenceNumbers.length) {
+            return 0;
+        }
+
+        for (long sequenceNumber : sequenceNumbers[fragment]) {
+            if (sequenceNumber <= snapshot) {
+                return sequenceNumber;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Is the entry for the internal key deleted by a tombstone visible at the snapshot?
+     */
+    public boolean isDeleted(InternalKey key, long snapshot) {
+        return getCoveringSequenceNumber(key.getUserKey(), snapshot) > key.getSequenceNumber();
+    }
+}
@@ -20,6 +20,7 @@ package org.iq80.leveldb.impl;
 import org.iq80.leveldb.Snapshot;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 在leveldb快照中每次都是用一个序列号保存当前插入的这一条记录，因此当插入多条相同的记录时，
@@ -46,11 +47,24 @@ public class SnapshotImpl implements Snapshot {
     private final AtomicBoolean closed = new AtomicBoolean();
     private final Version version;
     private final long lastSequence;
+    private final AtomicInteger openSnapshots;
 
     SnapshotImpl(Version version, long lastSequence) {
+        this(version, lastSequence, null);
+    }
+
+    /**
+     * @param openSnapshots counter of the open snapshots handed to users, incremented until the
+     * snapshot is closed, or null
+     */
+    SnapshotImpl(Version version, long lastSequence, AtomicInteger openSnapshots) {
         this.version = version;
         this.lastSequence = lastSequence;
+        this.openSnapshots = openSnapshots;
         this.version.retain();
+        if (openSnapshots != null) {
+            openSnapshots.incrementAndGet();
+        }
     }
 
     @Override
@@ -59,6 +73,9 @@ public class SnapshotImpl implements Snapshot {
         // but we don't want the version reference count going bad.
         if (closed.compareAndSet(false, true)) {
             this.version.release();
+            if (openSnapshots != null) {
+                openSnapshots.decrementAndGet();
+            }
         }
     }
 
@@ -17,28 +17,54 @@
  */
 package org.iq80.leveldb.impl;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.iq80.leveldb.MergeOperator;
 import org.iq80.leveldb.util.AbstractSeekingIterator;
 import org.iq80.leveldb.util.DbIterator;
 import org.iq80.leveldb.util.Slice;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map.Entry;
 
+import static com.google.common.base.Preconditions.checkState;
+
 public final class SnapshotSeekingIterator extends AbstractSeekingIterator<Slice, Slice> {
     private final DbIterator iterator;
     private final SnapshotImpl snapshot;
     private final Comparator<Slice> userComparator;
-
-    public SnapshotSeekingIterator(DbIterator iterator, SnapshotImpl snapshot, Comparator<Slice> userComparator) {
+    private final BlobStore blobStore;
+    private final List<RangeTombstones> rangeTombstones = new ArrayList<>();
+    private final Version tables;
+    private final MergeOperator mergeOperator;
+
+    /**
+     * @param rangeTombstones range deletions of the memtables
+     * @param tables version whose files the iterator reads, consulted for their range deletions
+     */
+    public SnapshotSeekingIterator(DbIterator iterator, SnapshotImpl snapshot, Comparator<Slice> userComparator, BlobStore blobStore, List<RangeTombstones> rangeTombstones, Version tables,
+            MergeOperator mergeOperator) {
         this.iterator = iterator;
         this.snapshot = snapshot;
         this.userComparator = userComparator;
+        this.blobStore = blobStore;
+        for (RangeTombstones tombstones : rangeTombstones) {
+            if (!tombstones.isEmpty()) {
+                this.rangeTombstones.add(tombstones);
+            }
+        }
+        this.tables = tables;
+        this.mergeOperator = mergeOperator;
         this.snapshot.getVersion().retain();
+        this.tables.retain();
     }
 
     public void close() {
+        iterator.close();
         this.snapshot.getVersion().release();
+        this.tables.release();
     }
 
     @Override
@@ -61,10 +87,48 @@ public final class SnapshotSeekingIterator extends AbstractSeekingIterator<Slice
 
         Entry<InternalKey, Slice> next = iterator.next();
 
+        Slice value = next.getValue();
+        if (next.getKey().getValueType() == ValueType.BLOB_INDEX) {
+            value = blobStore.read(value);
+        } else if (next.getKey().getValueType() == ValueType.MERGE) {
+            value = mergeOperands(next);
+        }
+
         // find the next user entry after the key we are about to return
         findNextUserEntry(next.getKey().getUserKey());
 
-        return Maps.immutableEntry(next.getKey().getUserKey(), next.getValue());
+        return Maps.immutableEntry(next.getKey().getUserKey(), value);
+    }
+
+    /**
+     * Collects the older merge operands of the key and the value they apply to, which all follow
+     * the newest operand in the iterator.  The iterator is left on the first entry not consumed.
+     */
+    private Slice mergeOperands(Entry<InternalKey, Slice> newest) {
+        checkState(mergeOperator != null, "Database contains merge operands but no merge operator is configured");
+        Slice userKey = newest.getKey().getUserKey();
+        List<byte[]> operands = new ArrayList<>();
+        operands.add(newest.getValue().getBytes());
+
+        byte[] existingValue = null;
+        while (iterator.hasNext()) {
+            InternalKey internalKey = iterator.peek().getKey();
+            if (userComparator.compare(internalKey.getUserKey(), userKey) != 0 || isRangeDeleted(internalKey)) {
+                break;
+            }
+            Slice value = iterator.next().getValue();
+            if (internalKey.getValueType() == ValueType.MERGE) {
+                operands.add(value.getBytes());
+                continue;
+            }
+            if (internalKey.getValueType() == ValueType.VALUE) {
+                existingValue = value.getBytes();
+            } else if (internalKey.getValueType() == ValueType.BLOB_INDEX) {
+                existingValue = blobStore.read(value).getBytes();
+            }
+            break;
+        }
+        return new Slice(mergeOperator.fullMerge(userKey.getBytes(), existingValue, Lists.reverse(operands)));
     }
 
     private void findNextUserEntry(Slice deletedKey) {
@@ -84,9 +148,9 @@ public final class SnapshotSeekingIterator extends AbstractSeekingIterator<Slice
             }
 
             // if the next entry is a deletion, skip all subsequent entries for that key
-            if (internalKey.getValueType() == ValueType.DELETION) {
+            if (internalKey.getValueType() == ValueType.DELETION || isRangeDeleted(internalKey)) {
                 deletedKey = internalKey.getUserKey();
-            } else if (internalKey.getValueType() == ValueType.VALUE) {
+            } else if (internalKey.getValueType() == ValueType.VALUE || internalKey.getValueType() == ValueType.BLOB_INDEX || internalKey.getValueType() == ValueType.MERGE) {
                 // is this value masked by a prior deletion record?
                 if (deletedKey == null || userComparator.compare(internalKey.getUserKey(), deletedKey) > 0) {
                     return;
@@ -96,6 +160,15 @@ public final class SnapshotSeekingIterator extends AbstractSeekingIterator<Slice
         } while (iterator.hasNext());
     }
 
+    private boolean isRangeDeleted(InternalKey internalKey) {
+        for (RangeTombstones tombstones : rangeTombstones) {
+            if (tombstones.isDeleted(internalKey, snapshot.getLastSequence())) {
+                return true;
+            }
+        }
+        return tables.getCoveringSequenceNumber(internalKey.getUserKey(), snapshot.getLastSequence()) > internalKey.getSequenceNumber();
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
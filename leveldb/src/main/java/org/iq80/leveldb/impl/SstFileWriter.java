@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import org.iq80.leveldb.DBComparator;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.table.BytewiseComparator;
+import org.iq80.leveldb.table.CustomUserComparator;
+import org.iq80.leveldb.table.TableBuilder;
+import org.iq80.leveldb.table.UserComparator;
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.Slices;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes sorted entries into a table file outside of any database, to be added to one with
+ * {@link org.iq80.leveldb.DB#ingestExternalFiles(java.util.List)}.  Keys must be added in
+ * strictly increasing order of the comparator of the options, which must match the comparator
+ * of the database the file is ingested into.
+ * <p>
+ * The entries are written with sequence number 0; ingestion gives them a sequence number newer
+ * than every entry already in the database.
+ */
+public class SstFileWriter implements Closeable {
+    private final File file;
+    private final FileChannel fileChannel;
+    private final UserComparator userComparator;
+    private final TableBuilder tableBuilder;
+
+    private Slice lastKey;
+    private long entryCount;
+    private boolean closed;
+
+    public SstFileWriter(Options options, File file) throws IOException {
+        requireNonNull(options, "options is null");
+        requireNonNull(file, "file is null");
+        this.file = file;
+
+        DBComparator comparator = options.comparator();
+        if (comparator != null) {
+            userComparator = new CustomUserComparator(comparator);
+        } else {
+            userComparator = new BytewiseComparator();
+        }
+        fileChannel = new FileOutputStream(file).getChannel();
+        tableBuilder = new TableBuilder(options, fileChannel, new InternalUserComparator(new InternalKeyComparator(userComparator)), null, new InternalEntryClassifier());
+    }
+
+    public SstFileWriter put(byte[] key, byte[] value) throws IOException {
+        requireNonNull(value, "value is null");
+        add(key, ValueType.VALUE, Slices.wrappedBuffer(value));
+        return this;
+    }
+
+    public SstFileWriter delete(byte[] key) throws IOException {
+        add(key, ValueType.DELETION, Slices.EMPTY_SLICE);
+        return this;
+    }
+
+    private void add(byte[] key, ValueType valueType, Slice value) throws IOException {
+        requireNonNull(key, "key is null");
+        checkState(!closed, "writer is closed");
+        Slice userKey = Slices.wrappedBuffer(key.clone());
+        checkArgument(lastKey == null || userComparator.compare(userKey, lastKey) > 0, "Keys must be added in strictly increasing order");
+        tableBuilder.add(new InternalKey(userKey, 0, valueType).encode(), value);
+        lastKey = userKey;
+        entryCount++;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Writes the rest of the table and closes the file.
+     */
+    public void finish() throws IOException {
+        checkState(!closed, "writer is closed");
+        checkState(entryCount > 0, "table is empty");
+        closed = true;
+        try {
+            tableBuilder.finish();
+            fileChannel.force(true);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Discards the file unless it was finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            tableBuilder.abandon();
+        } finally {
+            fileChannel.close();
+            file.delete();
+        }
+    }
+}
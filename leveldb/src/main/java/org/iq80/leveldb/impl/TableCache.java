@@ -17,14 +17,16 @@
  */
 package org.iq80.leveldb.impl;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import org.iq80.leveldb.table.BlockEntry;
+import org.iq80.leveldb.table.CompressedBlockCache;
 import org.iq80.leveldb.table.FileChannelTable;
+import org.iq80.leveldb.table.IndexPartitionCache;
 import org.iq80.leveldb.table.MMapTable;
 import org.iq80.leveldb.table.Table;
+import org.iq80.leveldb.table.TableProperties;
 import org.iq80.leveldb.table.UserComparator;
 import org.iq80.leveldb.util.Closeables;
 import org.iq80.leveldb.util.Finalizer;
@@ -35,97 +37,433 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Open tables, bounded both by count (file descriptors or mappings) and by the bytes of index they
+ * keep resident.  The cache is split into shards by file number, each with its own lock and its
+ * own share of both limits, and evicts the least recently used tables of a shard first.  Tables
+ * are opened outside the shard lock; only lookups of the same file wait for an open in progress.
+ */
 public class TableCache {
+    private static final int MAX_SHARDS = 16;
+    // fewer, larger shards keep the least recently used order close to global for small caches
+    private static final int MIN_TABLES_PER_SHARD = 32;
 
-    /**
-     * 加载缓存
-     */
-    private final LoadingCache<Long, TableAndFile> cache;
+    private final Shard[] shards;
     private final Finalizer<Table> finalizer = new Finalizer<>(1);
 
+    private final File databaseDir;
+    private final UserComparator userComparator;
+    private final boolean verifyChecksums;
+    private final IndexPartitionCache indexPartitionCache;
+    private final CompressedBlockCache blockCache;
+    private final int readaheadSize;
+    private final Executor readaheadExecutor;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
     public TableCache(final File databaseDir, int tableCacheSize,
                       final UserComparator userComparator,
-                      final boolean verifyChecksums) {
-        requireNonNull(databaseDir, "databaseName is null");
+                      final boolean verifyChecksums,
+                      final IndexPartitionCache indexPartitionCache) {
+        this(databaseDir, tableCacheSize, userComparator, verifyChecksums, indexPartitionCache, 0, null);
+    }
 
-        cache = CacheBuilder.newBuilder().maximumSize(tableCacheSize).removalListener(new RemovalListener<Long, TableAndFile>() {
-            @Override
-            public void onRemoval(RemovalNotification<Long, TableAndFile> notification) {
-                Table table = notification.getValue().getTable();
-                finalizer.addCleanup(table, table.closer());
-            }
-        }).build(new CacheLoader<Long, TableAndFile>() {
-            @Override
-            public TableAndFile load(Long fileNumber) throws IOException {
-                return new TableAndFile(databaseDir, fileNumber, userComparator, verifyChecksums);
-            }
-        });
+    /**
+     * @param readaheadSize bytes read at a time by {@link #newSequentialIterator}; 0 to read block by block
+     * @param readaheadExecutor executor fetching the next chunk of a sequential scan, or null
+     */
+    public TableCache(final File databaseDir, int tableCacheSize,
+                      final UserComparator userComparator,
+                      final boolean verifyChecksums,
+                      final IndexPartitionCache indexPartitionCache,
+                      int readaheadSize,
+                      Executor readaheadExecutor) {
+        this(databaseDir, tableCacheSize, 0, userComparator, verifyChecksums, indexPartitionCache, null, readaheadSize, readaheadExecutor);
+    }
+
+    /**
+     * @param tableCacheSize maximum number of open tables
+     * @param indexMemorySize maximum bytes of index kept by the open tables; 0 for no limit
+     * @param blockCache cache of the blocks read by tables not opened with mmap, or null
+     * @param readaheadSize bytes read at a time by {@link #newSequentialIterator}; 0 to read block by block
+     * @param readaheadExecutor executor fetching the next chunk of a sequential scan, or null
+     */
+    public TableCache(File databaseDir, int tableCacheSize, long indexMemorySize,
+                      UserComparator userComparator,
+                      boolean verifyChecksums,
+                      IndexPartitionCache indexPartitionCache,
+                      CompressedBlockCache blockCache,
+                      int readaheadSize,
+                      Executor readaheadExecutor) {
+        this.databaseDir = requireNonNull(databaseDir, "databaseName is null");
+        checkArgument(indexMemorySize >= 0, "indexMemorySize is negative");
+        this.userComparator = userComparator;
+        this.verifyChecksums = verifyChecksums;
+        this.indexPartitionCache = indexPartitionCache;
+        this.blockCache = blockCache;
+        this.readaheadSize = readaheadSize;
+        this.readaheadExecutor = readaheadExecutor;
+
+        int shardCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SHARDS, tableCacheSize / MIN_TABLES_PER_SHARD)));
+        int shardTables = (Math.max(tableCacheSize, 1) + shardCount - 1) / shardCount;
+        long shardIndexMemory = indexMemorySize == 0 ? Long.MAX_VALUE : (indexMemorySize + shardCount - 1) / shardCount;
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(shardTables, shardIndexMemory);
+        }
     }
 
     public InternalTableIterator newIterator(FileMetaData file) {
-        return newIterator(file.getNumber());
+        Table table = retainTable(file.getNumber());
+        try {
+            return new InternalTableIterator(table.iterator(), table, file.getGlobalSequenceNumber());
+        } catch (RuntimeException e) {
+            table.release();
+            throw e;
+        }
     }
 
+    /**
+     * Returns an iterator over the file.  The table stays open until the iterator is closed, even
+     * if it is evicted in the meantime.
+     */
     public InternalTableIterator newIterator(long number) {
-        return new InternalTableIterator(getTable(number).iterator());
+        Table table = retainTable(number);
+        try {
+            return new InternalTableIterator(table.iterator(), table);
+        } catch (RuntimeException e) {
+            table.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns an iterator for reading the whole file front to back, as compaction does, which
+     * reads ahead in large chunks.
+     */
+    public InternalTableIterator newSequentialIterator(FileMetaData file) {
+        if (readaheadSize <= 0) {
+            return newIterator(file);
+        }
+        Table table = retainTable(file.getNumber());
+        try {
+            return new InternalTableIterator(table.sequentialIterator(readaheadSize, readaheadExecutor), table, file.getGlobalSequenceNumber());
+        } catch (RuntimeException e) {
+            table.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the file's table, if it is not open already, and loads its whole index.
+     */
+    public void preload(FileMetaData file) {
+        Table table = retainTable(file.getNumber());
+        try {
+            table.preloadIndex();
+        } finally {
+            table.release();
+        }
+    }
+
+    /**
+     * Returns the first entry of the file at or after the specified key within the data block that
+     * could hold it, or null; see {@link Table#get(Slice)}.
+     */
+    public Entry<InternalKey, Slice> get(FileMetaData file, InternalKey key) {
+        Table table = retainTable(file.getNumber());
+        try {
+            BlockEntry entry = table.get(key.encode());
+            if (entry == null) {
+                return null;
+            }
+            InternalKey internalKey = new InternalKey(entry.getKey());
+            if (file.getGlobalSequenceNumber() != 0) {
+                if (file.getGlobalSequenceNumber() > key.getSequenceNumber()) {
+                    // every entry of the table is newer than the key, so none of them is visible
+                    return null;
+                }
+                internalKey = new InternalKey(internalKey.getUserKey(), file.getGlobalSequenceNumber(), internalKey.getValueType());
+            }
+            return Maps.immutableEntry(internalKey, entry.getValue());
+        } finally {
+            table.release();
+        }
+    }
+
+    /**
+     * Returns the statistics of the file's table, or null if the table has none.
+     */
+    public TableProperties getTableProperties(FileMetaData file) {
+        TableProperties properties = file.getTableProperties();
+        if (properties == null) {
+            Table table = retainTable(file.getNumber());
+            try {
+                properties = table.getProperties();
+            } finally {
+                table.release();
+            }
+            file.setTableProperties(properties);
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the range deletions of the file's table ordered by start key.
+     */
+    public List<RangeTombstone> getRangeTombstones(FileMetaData file) {
+        if (file.getRangeDeletionCount() == 0) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<RangeTombstone> tombstones = ImmutableList.builder();
+        Table table = retainTable(file.getNumber());
+        try {
+            for (Entry<Slice, Slice> entry : table.getRangeTombstones()) {
+                tombstones.add(new RangeTombstone(new InternalKey(entry.getKey()), entry.getValue()));
+            }
+        } finally {
+            table.release();
+        }
+        return tombstones.build();
     }
 
     public long getApproximateOffsetOf(FileMetaData file, Slice key) {
-        return getTable(file.getNumber()).getApproximateOffsetOf(key);
+        Table table = retainTable(file.getNumber());
+        try {
+            return table.getApproximateOffsetOf(key);
+        } finally {
+            table.release();
+        }
     }
 
-    private Table getTable(long number) {
+    /**
+     * Returns the table with a reference taken, which the caller must release.
+     */
+    private Table retainTable(long number) {
+        Shard shard = shards[(int) number & (shards.length - 1)];
+        while (true) {
+            TableHolder holder;
+            boolean load = false;
+            synchronized (shard) {
+                holder = shard.tables.get(number);
+                if (holder == null) {
+                    holder = new TableHolder();
+                    shard.tables.put(number, holder);
+                    load = true;
+                } else if (holder.table != null) {
+                    // the cache's own reference is only released after the table leaves the shard
+                    checkState(holder.table.retain(), "Cached table %s is closed", number);
+                    hitCount.incrementAndGet();
+                    return holder.table;
+                }
+            }
+            if (load) {
+                missCount.incrementAndGet();
+                return load(shard, number, holder);
+            }
+            // another thread is opening the file; wait for it outside the lock, then look again
+            try {
+                getUninterruptibly(holder.opened);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Could not open table " + number, e.getCause());
+            }
+        }
+    }
+
+    private Table load(Shard shard, long number, TableHolder holder) {
         Table table;
         try {
-            table = cache.get(number).getTable();
-        } catch (ExecutionException e) {
-            Throwable cause = e;
-            if (e.getCause() != null) {
-                cause = e.getCause();
+            table = openTable(number);
+        } catch (IOException | RuntimeException e) {
+            synchronized (shard) {
+                shard.tables.remove(number, holder);
+            }
+            holder.opened.setException(e);
+            throw new RuntimeException("Could not open table " + number, e);
+        }
+
+        List<Table> evicted = ImmutableList.of();
+        boolean cached;
+        synchronized (shard) {
+            cached = shard.tables.get(number) == holder;
+            if (cached) {
+                // one reference for the cache, one for the caller
+                checkState(table.retain());
+                holder.table = table;
+                holder.indexMemory = table.getIndexMemoryUsage();
+                shard.indexMemory += holder.indexMemory;
+                evicted = shard.evictExcess();
             }
-            throw new RuntimeException("Could not open table " + number, cause);
         }
+        holder.opened.set(null);
+        if (!cached) {
+            // evicted while it was being opened: the caller takes over the only reference
+            finalizer.addCleanup(table, table.closer());
+        }
+        release(evicted);
         return table;
     }
 
+    private Table openTable(long number) throws IOException {
+        File tableFile = new File(databaseDir, Filename.tableFileName(number));
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(tableFile);
+            FileChannel fileChannel = fis.getChannel();
+            if (Iq80DBFactory.USE_MMAP) {
+                Table table = new MMapTable(tableFile.getAbsolutePath(), fileChannel, userComparator, verifyChecksums, indexPartitionCache, number);
+                // We can close the channel and input stream as the mapping does not need them
+                Closeables.closeQuietly(fis);
+                return table;
+            }
+            return new FileChannelTable(tableFile.getAbsolutePath(), fileChannel, userComparator, verifyChecksums, indexPartitionCache, blockCache, number);
+        } catch (IOException | RuntimeException e) {
+            Closeables.closeQuietly(fis);
+            throw e;
+        }
+    }
+
+    private void release(List<Table> evicted) {
+        evictionCount.addAndGet(evicted.size());
+        for (Table table : evicted) {
+            // a table whose iterators are never closed is still closed once it is unreachable
+            finalizer.addCleanup(table, table.closer());
+            table.release();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of tables closed to stay within the cache limits.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public int getOpenTableCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (TableHolder holder : shard.tables.values()) {
+                    if (holder.table != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the bytes of index kept by the open tables.
+     */
+    public long getIndexMemoryUsage() {
+        long usage = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                usage += shard.indexMemory;
+            }
+        }
+        return usage;
+    }
+
     public void close() {
-        cache.invalidateAll();
+        for (Shard shard : shards) {
+            List<Table> tables = new ArrayList<>();
+            synchronized (shard) {
+                for (TableHolder holder : shard.tables.values()) {
+                    if (holder.table != null) {
+                        tables.add(holder.table);
+                    }
+                }
+                shard.tables.clear();
+                shard.indexMemory = 0;
+            }
+            for (Table table : tables) {
+                finalizer.addCleanup(table, table.closer());
+                table.release();
+            }
+        }
         finalizer.destroy();
     }
 
     public void evict(long number) {
-        cache.invalidate(number);
+        Shard shard = shards[(int) number & (shards.length - 1)];
+        Table table = null;
+        synchronized (shard) {
+            TableHolder holder = shard.tables.remove(number);
+            if (holder != null && holder.table != null) {
+                shard.indexMemory -= holder.indexMemory;
+                table = holder.table;
+            }
+        }
+        if (table != null) {
+            finalizer.addCleanup(table, table.closer());
+            table.release();
+        }
     }
 
-    private static final class TableAndFile {
-        private final Table table;
+    private static final class Shard {
+        private final int maximumTables;
+        private final long maximumIndexMemory;
+        // in access order, so iteration starts at the least recently used table
+        private final LinkedHashMap<Long, TableHolder> tables = new LinkedHashMap<>(16, 0.75f, true);
+        private long indexMemory;
 
-        private TableAndFile(File databaseDir, long fileNumber, UserComparator userComparator, boolean verifyChecksums) throws IOException {
-            String tableFileName = Filename.tableFileName(fileNumber);
-            File tableFile = new File(databaseDir, tableFileName);
-            FileInputStream fis = null;
-            try {
-                fis = new FileInputStream(tableFile);
-                FileChannel fileChannel = fis.getChannel();
-                if (Iq80DBFactory.USE_MMAP) {
-                    table = new MMapTable(tableFile.getAbsolutePath(), fileChannel, userComparator, verifyChecksums);
-                    // We can close the channel and input stream as the mapping does not need them
-                    Closeables.closeQuietly(fis);
-                } else {
-                    table = new FileChannelTable(tableFile.getAbsolutePath(), fileChannel, userComparator, verifyChecksums);
+        private Shard(int maximumTables, long maximumIndexMemory) {
+            this.maximumTables = maximumTables;
+            this.maximumIndexMemory = maximumIndexMemory;
+        }
+
+        /**
+         * Removes least recently used open tables until the shard is within its limits, keeping at
+         * least one entry, and returns them for the caller to release outside the lock.
+         */
+        private List<Table> evictExcess() {
+            List<Table> evicted = new ArrayList<>();
+            Iterator<TableHolder> iterator = tables.values().iterator();
+            while ((tables.size() > maximumTables || indexMemory > maximumIndexMemory) && tables.size() > 1 && iterator.hasNext()) {
+                TableHolder holder = iterator.next();
+                if (holder.table == null) {
+                    // still being opened
+                    continue;
                 }
-            } catch (IOException ioe) {
-                Closeables.closeQuietly(fis);
-                throw ioe;
+                iterator.remove();
+                indexMemory -= holder.indexMemory;
+                evicted.add(holder.table);
             }
+            return evicted;
         }
+    }
 
-        public Table getTable() {
-            return table;
-        }
+    private static final class TableHolder {
+        // completed once the open finished, successfully or not
+        private final SettableFuture<Void> opened = SettableFuture.create();
+        // guarded by the shard; null while the table is being opened
+        private Table table;
+        private long indexMemory;
     }
 }
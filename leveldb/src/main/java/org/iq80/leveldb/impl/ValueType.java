@@ -18,7 +18,24 @@
 package org.iq80.leveldb.impl;
 
 public enum ValueType {
-    DELETION(0x00), VALUE(0x01);
+    DELETION(0x00), VALUE(0x01),
+
+    /**
+     * The value is a {@link BlobIndex} pointing at the real value in a blob file.
+     */
+    BLOB_INDEX(0x11),
+
+    /**
+     * Deletes every key from the user key up to, but excluding, the end key stored as the value.
+     * Range deletions are kept apart from point entries; see {@link RangeTombstone}.
+     */
+    RANGE_DELETION(0x0F),
+
+    /**
+     * A merge operand that the {@link org.iq80.leveldb.MergeOperator} combines with the older
+     * entries of the key when it is read or compacted.
+     */
+    MERGE(0x02);
 
     public static ValueType getValueTypeByPersistentId(int persistentId) {
         switch (persistentId) {
@@ -26,6 +43,12 @@ public enum ValueType {
                 return DELETION;
             case 1:
                 return VALUE;
+            case 0x02:
+                return MERGE;
+            case 0x11:
+                return BLOB_INDEX;
+            case 0x0F:
+                return RANGE_DELETION;
             default:
                 throw new IllegalArgumentException("Unknown persistentId " + persistentId);
         }
@@ -19,8 +19,11 @@ package org.iq80.leveldb.impl;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
+import org.iq80.leveldb.table.TableProperties;
+import org.iq80.leveldb.table.UserComparator;
 import org.iq80.leveldb.util.InternalIterator;
 import org.iq80.leveldb.util.InternalTableIterator;
 import org.iq80.leveldb.util.LevelIterator;
@@ -30,6 +33,7 @@ import org.iq80.leveldb.util.Slice;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -47,12 +51,24 @@ public class Version implements SeekingIterable<InternalKey, Slice> {
     private final VersionSet versionSet;
     private final Level0 level0;
     private final List<Level> levels;
+    private Map<Long, BlobFileMetaData> blobFiles = ImmutableMap.of();
+
+    // files holding range deletions, found on first use
+    private volatile List<FileMetaData> rangeDeletionFiles;
 
     // move these mutable fields somewhere else
     private int compactionLevel;
     private double compactionScore;
     private FileMetaData fileToCompact;
     private int fileToCompactLevel;
+    private FileMetaData fileMarkedForCompaction;
+    private int fileMarkedForCompactionLevel;
+    private FileMetaData oldestFile;
+    private int oldestFileLevel;
+    private long oldestFileCreationTime;
+    private FileMetaData blobGarbageCollectionFile;
+    private int blobGarbageCollectionLevel;
+    private long blobGarbageCollectionCutoff;
 
     public Version(VersionSet versionSet) {
         this.versionSet = versionSet;
@@ -117,6 +133,68 @@ public class Version implements SeekingIterable<InternalKey, Slice> {
         this.compactionScore = compactionScore;
     }
 
+    /**
+     * File whose share of deletion markers crossed the configured ratio, or null.
+     */
+    public synchronized FileMetaData getFileMarkedForCompaction() {
+        return fileMarkedForCompaction;
+    }
+
+    public synchronized int getFileMarkedForCompactionLevel() {
+        return fileMarkedForCompactionLevel;
+    }
+
+    public synchronized void setFileMarkedForCompaction(int level, FileMetaData fileMetaData) {
+        this.fileMarkedForCompactionLevel = level;
+        this.fileMarkedForCompaction = fileMetaData;
+    }
+
+    /**
+     * Least recently written file above the last level with a known creation time, or null.
+     */
+    public synchronized FileMetaData getOldestFile() {
+        return oldestFile;
+    }
+
+    public synchronized int getOldestFileLevel() {
+        return oldestFileLevel;
+    }
+
+    public synchronized long getOldestFileCreationTime() {
+        return oldestFileCreationTime;
+    }
+
+    public synchronized void setOldestFile(int level, FileMetaData fileMetaData, long creationTime) {
+        this.oldestFileLevel = level;
+        this.oldestFile = fileMetaData;
+        this.oldestFileCreationTime = creationTime;
+    }
+
+    /**
+     * File whose blob values should be relocated out of sparse blob files, or null.
+     */
+    public synchronized FileMetaData getBlobGarbageCollectionFile() {
+        return blobGarbageCollectionFile;
+    }
+
+    public synchronized int getBlobGarbageCollectionLevel() {
+        return blobGarbageCollectionLevel;
+    }
+
+    /**
+     * Cutoff computed together with the blob garbage collection file; see
+     * {@link #getBlobGarbageCollectionCutoff(double)}.
+     */
+    public synchronized long getBlobGarbageCollectionCutoff() {
+        return blobGarbageCollectionCutoff;
+    }
+
+    public synchronized void setBlobGarbageCollection(int level, FileMetaData fileMetaData, long cutoff) {
+        this.blobGarbageCollectionLevel = level;
+        this.blobGarbageCollectionFile = fileMetaData;
+        this.blobGarbageCollectionCutoff = cutoff;
+    }
+
     @Override
     public MergingIterator iterator() {
         Builder<InternalIterator> builder = ImmutableList.builder();
@@ -233,6 +311,79 @@ public class Version implements SeekingIterable<InternalKey, Slice> {
         }
     }
 
+    /**
+     * Returns the sequence number of the newest range deletion in the files of this version that
+     * is visible at the snapshot and covers the user key, or 0 if there is none.  Only files whose
+     * key range holds the user key are consulted.
+     */
+    public long getCoveringSequenceNumber(Slice userKey, long snapshot) {
+        List<FileMetaData> files = getRangeDeletionFiles();
+        if (files.isEmpty()) {
+            return 0;
+        }
+        UserComparator userComparator = getInternalKeyComparator().getUserComparator();
+        long sequenceNumber = 0;
+        for (FileMetaData fileMetaData : files) {
+            if (userComparator.compare(userKey, fileMetaData.getSmallest().getUserKey()) >= 0 && userComparator.compare(userKey, fileMetaData.getLargest().getUserKey()) <= 0) {
+                sequenceNumber = Math.max(sequenceNumber, getRangeTombstones(fileMetaData).getCoveringSequenceNumber(userKey, snapshot));
+            }
+        }
+        return sequenceNumber;
+    }
+
+    private List<FileMetaData> getRangeDeletionFiles() {
+        List<FileMetaData> files = rangeDeletionFiles;
+        if (files == null) {
+            Builder<FileMetaData> builder = ImmutableList.builder();
+            for (int level = 0; level < NUM_LEVELS; level++) {
+                for (FileMetaData fileMetaData : getFiles(level)) {
+                    if (fileMetaData.getRangeDeletionCount() > 0) {
+                        builder.add(fileMetaData);
+                    }
+                }
+            }
+            files = builder.build();
+            rangeDeletionFiles = files;
+        }
+        return files;
+    }
+
+    /**
+     * Returns the index of the file's range deletions, which is kept with the file metadata so that
+     * every version holding the file shares it.
+     */
+    private RangeTombstones getRangeTombstones(FileMetaData fileMetaData) {
+        RangeTombstones tombstones = fileMetaData.getRangeTombstones();
+        if (tombstones == null) {
+            tombstones = new RangeTombstones(getTableCache().getRangeTombstones(fileMetaData), getInternalKeyComparator().getUserComparator());
+            fileMetaData.setRangeTombstones(tombstones);
+        }
+        return tombstones;
+    }
+
+    public Map<Long, BlobFileMetaData> getBlobFiles() {
+        return blobFiles;
+    }
+
+    void setBlobFiles(Map<Long, BlobFileMetaData> blobFiles) {
+        this.blobFiles = ImmutableMap.copyOf(blobFiles);
+    }
+
+    /**
+     * Returns the highest numbered blob file whose live ratio is below the specified ratio, or 0 if
+     * there is none.  Relocating the values of every blob file up to this number, rather than only
+     * the sparse ones, lets a rewritten table drop all its references to old blob files at once.
+     */
+    public long getBlobGarbageCollectionCutoff(double minLiveRatio) {
+        long cutoff = 0;
+        for (BlobFileMetaData blobFile : blobFiles.values()) {
+            if (blobFile.getLiveRatio() < minLiveRatio) {
+                cutoff = Math.max(cutoff, blobFile.getNumber());
+            }
+        }
+        return cutoff;
+    }
+
     private boolean updateStats(int seekFileLevel, FileMetaData seekFile) {
         if (seekFile == null) {
             return false;
@@ -261,7 +412,7 @@ public class Version implements SeekingIterable<InternalKey, Slice> {
             for (FileMetaData fileMetaData : getFiles(level)) {
                 if (getInternalKeyComparator().compare(fileMetaData.getLargest(), key) <= 0) {
                     // Entire file is before "ikey", so just add the file size
-                    result += fileMetaData.getFileSize();
+                    result += fileMetaData.getFileSize() + getBlobValueSize(fileMetaData);
                 } else if (getInternalKeyComparator().compare(fileMetaData.getSmallest(), key) > 0) {
                     // Entire file is after "ikey", so ignore
                     if (level > 0) {
@@ -273,13 +424,31 @@ public class Version implements SeekingIterable<InternalKey, Slice> {
                 } else {
                     // "ikey" falls in the range for this table.  Add the
                     // approximate offset of "ikey" within the table.
-                    result += getTableCache().getApproximateOffsetOf(fileMetaData, key.encode());
+                    long offset = getTableCache().getApproximateOffsetOf(fileMetaData, key.encode());
+                    result += offset;
+
+                    // assume the blob values are spread evenly through the table
+                    if (fileMetaData.getFileSize() > 0) {
+                        result += (long) (1.0 * getBlobValueSize(fileMetaData) * offset / fileMetaData.getFileSize());
+                    }
                 }
             }
         }
         return result;
     }
 
+    /**
+     * Bytes of blob file values the table points at; they belong to the table's key range even
+     * though they are not in the file.
+     */
+    private long getBlobValueSize(FileMetaData fileMetaData) {
+        if (fileMetaData.getOldestBlobFileNumber() == 0) {
+            return 0;
+        }
+        TableProperties properties = getTableCache().getTableProperties(fileMetaData);
+        return properties == null ? 0 : properties.getBlobValueSize();
+    }
+
     public void retain() {
         int was = retained.getAndIncrement();
         assert was > 0 : "Version was retain after it was disposed.";
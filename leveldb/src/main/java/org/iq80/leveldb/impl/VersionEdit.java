@@ -38,6 +38,9 @@ public class VersionEdit {
     private final Map<Integer, InternalKey> compactPointers = new TreeMap<>();
     private final Multimap<Integer, FileMetaData> newFiles = ArrayListMultimap.create();
     private final Multimap<Integer, Long> deletedFiles = ArrayListMultimap.create();
+    private final Map<Long, BlobFileMetaData> newBlobFiles = new TreeMap<>();
+    // garbage deltas; only the garbage fields of these entries are used
+    private final Map<Long, BlobFileMetaData> blobGarbage = new TreeMap<>();
 
     public VersionEdit() {
     }
@@ -123,6 +126,83 @@ public class VersionEdit {
         newFiles.putAll(files);
     }
 
+    // Record the table's reference to its oldest blob file.
+    // REQUIRES: the file was added to this edit at the specified level
+    public void setOldestBlobFileNumber(int level, long fileNumber, long oldestBlobFileNumber) {
+        for (FileMetaData file : newFiles.get(level)) {
+            if (file.getNumber() == fileNumber) {
+                newFiles.remove(level, file);
+                newFiles.put(level, new FileMetaData(file.getNumber(), file.getFileSize(), file.getSmallest(), file.getLargest(), oldestBlobFileNumber,
+                        file.getEntryCount(), file.getDeletionCount(), file.getCreationTime(), file.getRangeDeletionCount(), file.getGlobalSequenceNumber()));
+                return;
+            }
+        }
+        throw new IllegalArgumentException(String.format("File %s was not added at level %s", fileNumber, level));
+    }
+
+    // Record the statistics of the table used to score compactions.
+    // REQUIRES: the file was added to this edit at the specified level
+    public void setFileStats(int level, long fileNumber, long entryCount, long deletionCount, long creationTime) {
+        for (FileMetaData file : newFiles.get(level)) {
+            if (file.getNumber() == fileNumber) {
+                newFiles.remove(level, file);
+                newFiles.put(level, new FileMetaData(file.getNumber(), file.getFileSize(), file.getSmallest(), file.getLargest(), file.getOldestBlobFileNumber(),
+                        entryCount, deletionCount, creationTime, file.getRangeDeletionCount(), file.getGlobalSequenceNumber()));
+                return;
+            }
+        }
+        throw new IllegalArgumentException(String.format("File %s was not added at level %s", fileNumber, level));
+    }
+
+    // Record the number of range deletions in the table.
+    // REQUIRES: the file was added to this edit at the specified level
+    public void setRangeDeletionCount(int level, long fileNumber, long rangeDeletionCount) {
+        for (FileMetaData file : newFiles.get(level)) {
+            if (file.getNumber() == fileNumber) {
+                newFiles.remove(level, file);
+                newFiles.put(level, new FileMetaData(file.getNumber(), file.getFileSize(), file.getSmallest(), file.getLargest(), file.getOldestBlobFileNumber(),
+                        file.getEntryCount(), file.getDeletionCount(), file.getCreationTime(), rangeDeletionCount, file.getGlobalSequenceNumber()));
+                return;
+            }
+        }
+        throw new IllegalArgumentException(String.format("File %s was not added at level %s", fileNumber, level));
+    }
+
+    // Record the sequence number every entry of the ingested table takes.
+    // REQUIRES: the file was added to this edit at the specified level
+    public void setGlobalSequenceNumber(int level, long fileNumber, long globalSequenceNumber) {
+        for (FileMetaData file : newFiles.get(level)) {
+            if (file.getNumber() == fileNumber) {
+                newFiles.remove(level, file);
+                newFiles.put(level, new FileMetaData(file.getNumber(), file.getFileSize(), file.getSmallest(), file.getLargest(), file.getOldestBlobFileNumber(),
+                        file.getEntryCount(), file.getDeletionCount(), file.getCreationTime(), file.getRangeDeletionCount(), globalSequenceNumber));
+                return;
+            }
+        }
+        throw new IllegalArgumentException(String.format("File %s was not added at level %s", fileNumber, level));
+    }
+
+    public Map<Long, BlobFileMetaData> getNewBlobFiles() {
+        return ImmutableMap.copyOf(newBlobFiles);
+    }
+
+    public void addBlobFile(BlobFileMetaData blobFile) {
+        newBlobFiles.put(blobFile.getNumber(), blobFile);
+    }
+
+    public Map<Long, BlobFileMetaData> getBlobGarbage() {
+        return ImmutableMap.copyOf(blobGarbage);
+    }
+
+    // Record that the specified number of values in the blob file are no longer referenced.
+    public void addBlobGarbage(long blobFileNumber, long count, long bytes) {
+        BlobFileMetaData garbage = blobGarbage.get(blobFileNumber);
+        if (garbage == null) {
+            garbage = new BlobFileMetaData(blobFileNumber, 0, 0);
+        }
+        blobGarbage.put(blobFileNumber, garbage.addGarbage(count, bytes));
+    }
+
     public Multimap<Integer, Long> getDeletedFiles() {
         return ImmutableMultimap.copyOf(deletedFiles);
     }
@@ -151,6 +231,8 @@ public class VersionEdit {
         sb.append(", compactPointers=").append(compactPointers);
         sb.append(", newFiles=").append(newFiles);
         sb.append(", deletedFiles=").append(deletedFiles);
+        sb.append(", newBlobFiles=").append(newBlobFiles.values());
+        sb.append(", blobGarbage=").append(blobGarbage.values());
         sb.append('}');
         return sb.toString();
     }
@@ -208,6 +208,202 @@ public enum VersionEditTag {
                 writeLengthPrefixedBytes(sliceOutput, fileMetaData.getLargest().encode());
             }
         }
+    },
+
+    // must follow NEW_FILE, the table it refers to is added by that tag
+    NEW_FILE_BLOB_REFERENCE(12) {
+        @Override
+        public void readValue(SliceInput sliceInput, VersionEdit versionEdit) {
+            // level
+            int level = VariableLengthQuantity.readVariableLengthInt(sliceInput);
+
+            // file number
+            long fileNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            // oldest blob file number
+            long oldestBlobFileNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            versionEdit.setOldestBlobFileNumber(level, fileNumber, oldestBlobFileNumber);
+        }
+
+        @Override
+        public void writeValue(SliceOutput sliceOutput, VersionEdit versionEdit) {
+            for (Entry<Integer, FileMetaData> entry : versionEdit.getNewFiles().entries()) {
+                FileMetaData fileMetaData = entry.getValue();
+                if (fileMetaData.getOldestBlobFileNumber() == 0) {
+                    continue;
+                }
+                VariableLengthQuantity.writeVariableLengthInt(getPersistentId(), sliceOutput);
+
+                // level
+                VariableLengthQuantity.writeVariableLengthInt(entry.getKey(), sliceOutput);
+
+                // file number
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getNumber(), sliceOutput);
+
+                // oldest blob file number
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getOldestBlobFileNumber(), sliceOutput);
+            }
+        }
+    },
+
+    // must follow NEW_FILE, the table it refers to is added by that tag
+    NEW_FILE_STATS(13) {
+        @Override
+        public void readValue(SliceInput sliceInput, VersionEdit versionEdit) {
+            // level
+            int level = VariableLengthQuantity.readVariableLengthInt(sliceInput);
+
+            // file number
+            long fileNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            long entryCount = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long deletionCount = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long creationTime = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            versionEdit.setFileStats(level, fileNumber, entryCount, deletionCount, creationTime);
+        }
+
+        @Override
+        public void writeValue(SliceOutput sliceOutput, VersionEdit versionEdit) {
+            for (Entry<Integer, FileMetaData> entry : versionEdit.getNewFiles().entries()) {
+                FileMetaData fileMetaData = entry.getValue();
+                if (fileMetaData.getEntryCount() == 0 && fileMetaData.getCreationTime() == 0) {
+                    continue;
+                }
+                VariableLengthQuantity.writeVariableLengthInt(getPersistentId(), sliceOutput);
+
+                // level
+                VariableLengthQuantity.writeVariableLengthInt(entry.getKey(), sliceOutput);
+
+                // file number
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getNumber(), sliceOutput);
+
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getEntryCount(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getDeletionCount(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getCreationTime(), sliceOutput);
+            }
+        }
+    },
+
+    // must follow NEW_FILE, the table it refers to is added by that tag
+    NEW_FILE_RANGE_DELETIONS(14) {
+        @Override
+        public void readValue(SliceInput sliceInput, VersionEdit versionEdit) {
+            // level
+            int level = VariableLengthQuantity.readVariableLengthInt(sliceInput);
+
+            // file number
+            long fileNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            // range deletion count
+            long rangeDeletionCount = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            versionEdit.setRangeDeletionCount(level, fileNumber, rangeDeletionCount);
+        }
+
+        @Override
+        public void writeValue(SliceOutput sliceOutput, VersionEdit versionEdit) {
+            for (Entry<Integer, FileMetaData> entry : versionEdit.getNewFiles().entries()) {
+                FileMetaData fileMetaData = entry.getValue();
+                if (fileMetaData.getRangeDeletionCount() == 0) {
+                    continue;
+                }
+                VariableLengthQuantity.writeVariableLengthInt(getPersistentId(), sliceOutput);
+
+                // level
+                VariableLengthQuantity.writeVariableLengthInt(entry.getKey(), sliceOutput);
+
+                // file number
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getNumber(), sliceOutput);
+
+                // range deletion count
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getRangeDeletionCount(), sliceOutput);
+            }
+        }
+    },
+
+    // must follow NEW_FILE, the table it refers to is added by that tag
+    NEW_FILE_GLOBAL_SEQUENCE(15) {
+        @Override
+        public void readValue(SliceInput sliceInput, VersionEdit versionEdit) {
+            // level
+            int level = VariableLengthQuantity.readVariableLengthInt(sliceInput);
+
+            // file number
+            long fileNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            // global sequence number
+            long globalSequenceNumber = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            versionEdit.setGlobalSequenceNumber(level, fileNumber, globalSequenceNumber);
+        }
+
+        @Override
+        public void writeValue(SliceOutput sliceOutput, VersionEdit versionEdit) {
+            for (Entry<Integer, FileMetaData> entry : versionEdit.getNewFiles().entries()) {
+                FileMetaData fileMetaData = entry.getValue();
+                if (fileMetaData.getGlobalSequenceNumber() == 0) {
+                    continue;
+                }
+                VariableLengthQuantity.writeVariableLengthInt(getPersistentId(), sliceOutput);
+
+                // level
+                VariableLengthQuantity.writeVariableLengthInt(entry.getKey(), sliceOutput);
+
+                // file number
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getNumber(), sliceOutput);
+
+                // global sequence number
+                VariableLengthQuantity.writeVariableLengthLong(fileMetaData.getGlobalSequenceNumber(), sliceOutput);
+            }
+        }
+    },
+
+    BLOB_FILE(10) {
+        @Override
+        public void readValue(SliceInput sliceInput, VersionEdit versionEdit) {
+            long number = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long totalCount = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long totalBytes = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long garbageCount = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long garbageBytes = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            versionEdit.addBlobFile(new BlobFileMetaData(number, totalCount, totalBytes, garbageCount, garbageBytes));
+        }
+
+        @Override
+        public void writeValue(SliceOutput sliceOutput, VersionEdit versionEdit) {
+            for (BlobFileMetaData blobFile : versionEdit.getNewBlobFiles().values()) {
+                VariableLengthQuantity.writeVariableLengthInt(getPersistentId(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(blobFile.getNumber(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(blobFile.getTotalCount(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(blobFile.getTotalBytes(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(blobFile.getGarbageCount(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(blobFile.getGarbageBytes(), sliceOutput);
+            }
+        }
+    },
+
+    BLOB_GARBAGE(11) {
+        @Override
+        public void readValue(SliceInput sliceInput, VersionEdit versionEdit) {
+            long number = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long count = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+            long bytes = VariableLengthQuantity.readVariableLengthLong(sliceInput);
+
+            versionEdit.addBlobGarbage(number, count, bytes);
+        }
+
+        @Override
+        public void writeValue(SliceOutput sliceOutput, VersionEdit versionEdit) {
+            for (BlobFileMetaData garbage : versionEdit.getBlobGarbage().values()) {
+                VariableLengthQuantity.writeVariableLengthInt(getPersistentId(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(garbage.getNumber(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(garbage.getGarbageCount(), sliceOutput);
+                VariableLengthQuantity.writeVariableLengthLong(garbage.getGarbageBytes(), sliceOutput);
+            }
+        }
     };
 
     public static VersionEditTag getValueTypeByPersistentId(int persistentId) {
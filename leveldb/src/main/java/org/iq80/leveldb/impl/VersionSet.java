@@ -24,9 +24,11 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
+import org.iq80.leveldb.Options;
 import org.iq80.leveldb.table.UserComparator;
 import org.iq80.leveldb.util.InternalIterator;
 import org.iq80.leveldb.util.Level0Iterator;
+import org.iq80.leveldb.util.LevelIterator;
 import org.iq80.leveldb.util.MergingIterator;
 import org.iq80.leveldb.util.Slice;
 
@@ -39,6 +41,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -52,6 +55,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
+import static org.iq80.leveldb.impl.Compaction.totalFileSize;
 import static org.iq80.leveldb.impl.DbConstants.NUM_LEVELS;
 import static org.iq80.leveldb.impl.LogMonitors.throwExceptionMonitor;
 
@@ -75,14 +79,36 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
     private final File databaseDir;
     private final TableCache tableCache;
     private final InternalKeyComparator internalKeyComparator;
+    private final double compactionDeletionRatio;
+    private final long maxFileAge;
+    private final long maxCompactionBytes;
+    private final double blobMinLiveRatio;
+    private final Runnable obsoleteFilesListener;
 
     private LogWriter descriptorLog;
     private final Map<Integer, InternalKey> compactPointers = new TreeMap<>();
 
     public VersionSet(File databaseDir, TableCache tableCache, InternalKeyComparator internalKeyComparator) throws IOException {
+        this(databaseDir, tableCache, internalKeyComparator, new Options(), new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    /**
+     * @param obsoleteFilesListener called when a version that is no longer current is disposed while
+     * holding on to blob files the current version does not reference
+     */
+    public VersionSet(File databaseDir, TableCache tableCache, InternalKeyComparator internalKeyComparator, Options options, Runnable obsoleteFilesListener) throws IOException {
         this.databaseDir = databaseDir;
         this.tableCache = tableCache;
         this.internalKeyComparator = internalKeyComparator;
+        this.compactionDeletionRatio = options.compactionDeletionRatio();
+        this.maxFileAge = options.maxFileAge();
+        this.maxCompactionBytes = options.maxCompactionBytes() > 0 ? options.maxCompactionBytes() : Long.MAX_VALUE;
+        this.blobMinLiveRatio = options.blobMinLiveRatio();
+        this.obsoleteFilesListener = requireNonNull(obsoleteFilesListener, "obsoleteFilesListener is null");
         appendVersion(new Version(this));
 
         initializeIfNeeded();
@@ -143,6 +169,13 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
         checkArgument(version != current, "version is the current version");
         boolean removed = activeVersions.remove(version) != null;
         assert removed : "Expected the version to still be in the active set";
+
+        // a reader released the last version referencing these blob files after they were
+        // replaced, so nothing else would reclaim them until the next compaction
+        Version current = this.current;
+        if (current != null && !current.getBlobFiles().keySet().containsAll(version.getBlobFiles().keySet())) {
+            obsoleteFilesListener.run();
+        }
     }
 
     public InternalKeyComparator getInternalKeyComparator() {
@@ -187,10 +220,10 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
             if (!c.getInputs()[which].isEmpty()) {
                 if (c.getLevel() + which == 0) {
                     List<FileMetaData> files = c.getInputs()[which];
-                    list.add(new Level0Iterator(tableCache, files, internalKeyComparator));
+                    list.add(new Level0Iterator(tableCache, files, internalKeyComparator, true));
                 } else {
                     // Create concatenating iterator for the files from this level
-                    list.add(Level.createLevelConcatIterator(tableCache, c.getInputs()[which], internalKeyComparator));
+                    list.add(new LevelIterator(tableCache, c.getInputs()[which], internalKeyComparator, true));
                 }
             }
         }
@@ -291,6 +324,9 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
 
         // Save files
         edit.addFiles(current.getFiles());
+        for (BlobFileMetaData blobFile : current.getBlobFiles().values()) {
+            edit.addBlobFile(blobFile);
+        }
 
         Slice record = edit.encode();
         log.addRecord(record, false);
@@ -394,7 +430,7 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
                 // Compute the ratio of current size to size limit.
                 long levelBytes = 0;
                 for (FileMetaData fileMetaData : version.getFiles(level)) {
-                    levelBytes += fileMetaData.getFileSize();
+                    levelBytes += compensatedFileSize(fileMetaData);
                 }
                 score = 1.0 * levelBytes / maxBytesForLevel(level);
             }
@@ -407,6 +443,88 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
 
         version.setCompactionLevel(bestLevel);
         version.setCompactionScore(bestScore);
+
+        markFilesForCompaction(version);
+        pickBlobGarbageCollection(version);
+    }
+
+    /**
+     * Finds a table outside level 0 that still references a blob file at or below the garbage
+     * collection cutoff.  Level-0 tables are left to regular compactions since a rewritten table
+     * would change its place in the level-0 order.
+     */
+    private void pickBlobGarbageCollection(Version version) {
+        long cutoff = version.getBlobGarbageCollectionCutoff(blobMinLiveRatio);
+        if (cutoff == 0) {
+            return;
+        }
+        for (int level = 1; level < version.numberOfLevels(); level++) {
+            for (FileMetaData fileMetaData : version.getFiles(level)) {
+                if (fileMetaData.getOldestBlobFileNumber() != 0 && fileMetaData.getOldestBlobFileNumber() <= cutoff) {
+                    version.setBlobGarbageCollection(level, fileMetaData, cutoff);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the files that should be compacted even though their level is within its size target:
+     * the file with the largest share of deletion markers, if that share reaches
+     * compactionDeletionRatio, and the oldest file, which is compacted once it is older than
+     * maxFileAge.  Files in the last level have no level to move to and are never picked.
+     */
+    private void markFilesForCompaction(Version version) {
+        if (compactionDeletionRatio <= 0 && maxFileAge <= 0) {
+            return;
+        }
+
+        FileMetaData markedFile = null;
+        int markedFileLevel = -1;
+        double markedDeletionRatio = 0;
+        FileMetaData oldestFile = null;
+        int oldestFileLevel = -1;
+        long oldestCreationTime = Long.MAX_VALUE;
+        for (int level = 0; level < version.numberOfLevels() - 1; level++) {
+            for (FileMetaData fileMetaData : version.getFiles(level)) {
+                if (fileMetaData.getEntryCount() > 0) {
+                    double deletionRatio = 1.0 * fileMetaData.getDeletionCount() / fileMetaData.getEntryCount();
+                    if (compactionDeletionRatio > 0 && deletionRatio >= compactionDeletionRatio && deletionRatio > markedDeletionRatio) {
+                        markedFile = fileMetaData;
+                        markedFileLevel = level;
+                        markedDeletionRatio = deletionRatio;
+                    }
+                }
+                long creationTime = fileMetaData.getCreationTime();
+                if (maxFileAge > 0 && creationTime > 0 && creationTime < oldestCreationTime) {
+                    oldestFile = fileMetaData;
+                    oldestFileLevel = level;
+                    oldestCreationTime = creationTime;
+                }
+            }
+        }
+
+        version.setFileMarkedForCompaction(markedFileLevel, markedFile);
+        if (oldestFile != null) {
+            version.setOldestFile(oldestFileLevel, oldestFile, oldestCreationTime);
+        }
+    }
+
+    private boolean isOldestFileExpired() {
+        return maxFileAge > 0 && current.getOldestFile() != null && System.currentTimeMillis() - current.getOldestFileCreationTime() >= maxFileAge;
+    }
+
+    /**
+     * Size of the file for compaction scoring.  A deletion marker is small itself but hides older
+     * data that only a compaction reclaims, so each one is charged the average entry size of the
+     * file on top of the bytes it occupies.  Files whose counts were never recorded are charged
+     * their plain size.
+     */
+    private static long compensatedFileSize(FileMetaData fileMetaData) {
+        if (fileMetaData.getEntryCount() == 0) {
+            return fileMetaData.getFileSize();
+        }
+        return fileMetaData.getFileSize() + fileMetaData.getDeletionCount() * (fileMetaData.getFileSize() / fileMetaData.getEntryCount());
     }
 
     private static <V> V coalesce(V... values) {
@@ -426,6 +544,17 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
         return builder.build();
     }
 
+    /**
+     * Numbers of the blob files referenced by any active version.
+     */
+    public Set<Long> getLiveBlobFiles() {
+        Set<Long> live = new HashSet<>();
+        for (Version activeVersion : activeVersions.keySet()) {
+            live.addAll(activeVersion.getBlobFiles().keySet());
+        }
+        return live;
+    }
+
     private static double maxBytesForLevel(int level) {
         // Note: the result for level zero is not really used since we set
         // the level-0 compaction threshold based on number of files.
@@ -442,7 +571,7 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
     }
 
     public boolean needsCompaction() {
-        return current.getCompactionScore() >= 1 || current.getFileToCompact() != null;
+        return current.getCompactionScore() >= 1 || current.getFileToCompact() != null || current.getFileMarkedForCompaction() != null || isOldestFileExpired();
     }
 
     public Compaction compactRange(int level, InternalKey begin, InternalKey end) {
@@ -451,14 +580,21 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
             return null;
         }
 
-        return setupOtherInputs(level, levelInputs);
+        List<FileMetaData> limitedInputs = limitInputs(level, levelInputs);
+        boolean partial = limitedInputs.size() < levelInputs.size();
+        Compaction compaction = setupOtherInputs(level, limitedInputs, partial);
+        compaction.setPartial(partial);
+        return compaction;
     }
 
     public Compaction pickCompaction() {
         // We prefer compactions triggered by too much data in a level over
-        // the compactions triggered by seeks.
+        // the compactions triggered by seeks, and both over the ones
+        // triggered by deletion markers or file age.
         boolean sizeCompaction = (current.getCompactionScore() >= 1);
         boolean seekCompaction = (current.getFileToCompact() != null);
+        boolean deletionCompaction = (current.getFileMarkedForCompaction() != null);
+        boolean ageCompaction = isOldestFileExpired();
 
         int level;
         List<FileMetaData> levelInputs;
@@ -482,6 +618,12 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
         } else if (seekCompaction) {
             level = current.getFileToCompactLevel();
             levelInputs = ImmutableList.of(current.getFileToCompact());
+        } else if (deletionCompaction) {
+            level = current.getFileMarkedForCompactionLevel();
+            levelInputs = ImmutableList.of(current.getFileMarkedForCompaction());
+        } else if (ageCompaction) {
+            level = current.getOldestFileLevel();
+            levelInputs = ImmutableList.of(current.getOldestFile());
         } else {
             return null;
         }
@@ -497,11 +639,42 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
             checkState(!levelInputs.isEmpty());
         }
 
-        Compaction compaction = setupOtherInputs(level, levelInputs);
+        List<FileMetaData> limitedInputs = limitInputs(level, levelInputs);
+        Compaction compaction = setupOtherInputs(level, limitedInputs, limitedInputs.size() < levelInputs.size());
+        if (!sizeCompaction && !seekCompaction) {
+            // moving the file down a level would keep the deletion markers and the old data
+            compaction.setRewriteRequired(true);
+        }
         return compaction;
     }
 
-    private Compaction setupOtherInputs(int level, List<FileMetaData> levelInputs) {
+    /**
+     * Drops inputs once they add up to maxCompactionBytes, keeping at least one file.  Files in
+     * other levels are kept in key order, so the rest of the range can follow in later compactions.
+     * Level 0 files may overlap each other, so there the oldest files are kept: the newer files
+     * left behind still shadow the older entries moved down a level.
+     */
+    private List<FileMetaData> limitInputs(int level, List<FileMetaData> levelInputs) {
+        List<FileMetaData> inputs = levelInputs;
+        if (level == 0) {
+            inputs = new ArrayList<>(levelInputs);
+            Collections.sort(inputs, Collections.reverseOrder(Level0.NEWEST_FIRST));
+        }
+        long totalSize = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            totalSize += inputs.get(i).getFileSize();
+            if (totalSize >= maxCompactionBytes && i + 1 < inputs.size()) {
+                return ImmutableList.copyOf(inputs.subList(0, i + 1));
+            }
+        }
+        return levelInputs;
+    }
+
+    /**
+     * @param limited whether the level inputs were cut down to maxCompactionBytes, in which case
+     * they are not expanded any further
+     */
+    private Compaction setupOtherInputs(int level, List<FileMetaData> levelInputs, boolean limited) {
         Entry<InternalKey, InternalKey> range = getRange(levelInputs);
         InternalKey smallest = range.getKey();
         InternalKey largest = range.getValue();
@@ -514,8 +687,9 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
         InternalKey allLimit = range.getValue();
 
         // See if we can grow the number of inputs in "level" without
-        // changing the number of "level+1" files we pick up.
-        if (!levelUpInputs.isEmpty()) {
+        // changing the number of "level+1" files we pick up, as long as
+        // the compaction stays within maxCompactionBytes.
+        if (!levelUpInputs.isEmpty() && !limited) {
             List<FileMetaData> expanded0 = getOverlappingInputs(level, allStart, allLimit);
 
             if (expanded0.size() > levelInputs.size()) {
@@ -524,7 +698,7 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
                 InternalKey newLimit = range.getValue();
 
                 List<FileMetaData> expanded1 = getOverlappingInputs(level + 1, newStart, newLimit);
-                if (expanded1.size() == levelUpInputs.size()) {
+                if (expanded1.size() == levelUpInputs.size() && totalFileSize(expanded0) + totalFileSize(levelUpInputs) <= maxCompactionBytes) {
                     //              Log(options_->info_log,
                     //                  "Expanding@%d %d+%d to %d+%d\n",
                     //                  level,
@@ -630,10 +804,12 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
         private final VersionSet versionSet;
         private final Version baseVersion;
         private final List<LevelState> levels;
+        private final Map<Long, BlobFileMetaData> blobFiles;
 
         private Builder(VersionSet versionSet, Version baseVersion) {
             this.versionSet = versionSet;
             this.baseVersion = baseVersion;
+            this.blobFiles = new TreeMap<>(baseVersion.getBlobFiles());
 
             levels = new ArrayList<>(baseVersion.numberOfLevels());
             for (int i = 0; i < baseVersion.numberOfLevels(); i++) {
@@ -687,12 +863,32 @@ public class VersionSet implements SeekingIterable<InternalKey, Slice> {
                 levels.get(level).deletedFiles.remove(fileMetaData.getNumber());
                 levels.get(level).addedFiles.add(fileMetaData);
             }
+
+            // Add new blob files, then account for the values no longer referenced.  A blob
+            // file leaves the version once all of its values are garbage.
+            for (BlobFileMetaData blobFile : edit.getNewBlobFiles().values()) {
+                blobFiles.put(blobFile.getNumber(), blobFile);
+            }
+            for (BlobFileMetaData garbage : edit.getBlobGarbage().values()) {
+                BlobFileMetaData blobFile = blobFiles.get(garbage.getNumber());
+                if (blobFile != null) {
+                    blobFiles.put(blobFile.getNumber(), blobFile.addGarbage(garbage.getGarbageCount(), garbage.getGarbageBytes()));
+                }
+            }
+            Iterator<BlobFileMetaData> blobFileIterator = blobFiles.values().iterator();
+            while (blobFileIterator.hasNext()) {
+                if (blobFileIterator.next().isObsolete()) {
+                    blobFileIterator.remove();
+                }
+            }
         }
 
         /**
          * Saves the current state in specified version.
          */
         public void saveTo(Version version) throws IOException {
+            version.setBlobFiles(blobFiles);
+
             FileMetaDataBySmallestKey cmp = new FileMetaDataBySmallestKey(versionSet.internalKeyComparator);
             for (int level = 0; level < baseVersion.numberOfLevels(); level++) {
                 // Merge the set of added files with the set of pre-existing files.
@@ -22,6 +22,7 @@ import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.util.Slice;
 import org.iq80.leveldb.util.Slices;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
@@ -101,6 +102,48 @@ public class WriteBatchImpl implements WriteBatch {
         return this;
     }
 
+    /**
+     * batch add一个范围删除记录，key为范围起始，value为范围结束  approximateSize大小=12+begin长度+end长度
+     * @param begin begin
+     * @param end end
+     * @return WriteBatchImpl
+     */
+    @Override
+    public WriteBatchImpl deleteRange(byte[] begin, byte[] end) {
+        requireNonNull(begin, "begin is null");
+        requireNonNull(end, "end is null");
+        return deleteRange(Slices.wrappedBuffer(begin), Slices.wrappedBuffer(end));
+    }
+
+    public WriteBatchImpl deleteRange(Slice begin, Slice end) {
+        requireNonNull(begin, "begin is null");
+        requireNonNull(end, "end is null");
+        batch.add(new RangeDeletion(begin, end));
+        approximateSize += 12 + begin.length() + end.length();
+        return this;
+    }
+
+    /**
+     * batch add一个合并操作数记录  approximateSize大小=12+key长度+value长度
+     * @param key key
+     * @param value value
+     * @return WriteBatchImpl
+     */
+    @Override
+    public WriteBatchImpl merge(byte[] key, byte[] value) {
+        requireNonNull(key, "key is null");
+        requireNonNull(value, "value is null");
+        return merge(Slices.wrappedBuffer(key), Slices.wrappedBuffer(value));
+    }
+
+    public WriteBatchImpl merge(Slice key, Slice value) {
+        requireNonNull(key, "key is null");
+        requireNonNull(value, "value is null");
+        batch.add(new Merge(key, value));
+        approximateSize += 12 + key.length() + value.length();
+        return this;
+    }
+
     @Override
     public void close() {
     }
@@ -114,7 +157,11 @@ public class WriteBatchImpl implements WriteBatch {
         for (Entry<Slice, Slice> entry : batch) {
             Slice key = entry.getKey();
             Slice value = entry.getValue();
-            if (value != null) {
+            if (entry instanceof RangeDeletion) {
+                handler.deleteRange(key, value);
+            } else if (entry instanceof Merge) {
+                handler.merge(key, value);
+            } else if (value != null) {
                 handler.put(key, value);
             } else {
                 handler.delete(key);
@@ -126,5 +173,21 @@ public class WriteBatchImpl implements WriteBatch {
         void put(Slice key, Slice value);
 
         void delete(Slice key);
+
+        void deleteRange(Slice begin, Slice end);
+
+        void merge(Slice key, Slice value);
+    }
+
+    private static final class RangeDeletion extends SimpleImmutableEntry<Slice, Slice> {
+        private RangeDeletion(Slice begin, Slice end) {
+            super(begin, end);
+        }
+    }
+
+    private static final class Merge extends SimpleImmutableEntry<Slice, Slice> {
+        private Merge(Slice key, Slice value) {
+            super(key, value);
+        }
     }
 }
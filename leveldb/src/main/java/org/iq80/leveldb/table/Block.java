@@ -19,13 +19,15 @@ package org.iq80.leveldb.table;
 
 import org.iq80.leveldb.impl.SeekingIterable;
 import org.iq80.leveldb.util.Slice;
-import org.iq80.leveldb.util.Slices;
 
+import java.nio.ByteBuffer;
 import java.util.Comparator;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static java.util.Objects.requireNonNull;
 import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
+import static org.iq80.leveldb.util.SizeOf.SIZE_OF_SHORT;
 
 /**
  * Binary Structure
@@ -53,6 +55,12 @@ import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
  * <td>Index of prefix compression restarts</td>
  * </tr>
  * <tr>
+ * <td>hash index</td>
+ * <td>vary</td>
+ * <td>vary</td>
+ * <td>Optional {@link DataBlockHashIndex}, present when the high bit of the restart count is set</td>
+ * </tr>
+ * <tr>
  * <td>restart count</td>
  * <td>0</td>
  * <td>4</td>
@@ -62,48 +70,84 @@ import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
  * </table>
  */
 public class Block implements SeekingIterable<Slice, Slice> {
-    private final Slice block;
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).order(LITTLE_ENDIAN);
+
+    private final ByteBuffer block;
     private final Comparator<Slice> comparator;
 
-    private final Slice data;
-    private final Slice restartPositions;
+    private final ByteBuffer data;
+    private final ByteBuffer restartPositions;
+    private final DataBlockHashIndex hashIndex;
+
+    // keeps what backs a direct buffer, such as a mapped table, reachable for as long as the block is
+    private final Object owner;
 
     public Block(Slice block, Comparator<Slice> comparator) {
+        this(ByteBuffer.wrap(requireNonNull(block, "block is null").getRawArray(), block.getRawOffset(), block.length()), comparator, null);
+    }
+
+    /**
+     * Creates a block over the remaining bytes of the buffer.  A block over a direct buffer is read
+     * in place and copies only the entries its iterators return.
+     *
+     * @param owner object that must stay reachable while the buffer is in use, or null
+     */
+    public Block(ByteBuffer block, Comparator<Slice> comparator, Object owner) {
         requireNonNull(block, "block is null");
-        checkArgument(block.length() >= SIZE_OF_INT, "Block is corrupt: size must be at least %s block", SIZE_OF_INT);
+        checkArgument(block.remaining() >= SIZE_OF_INT, "Block is corrupt: size must be at least %s block", SIZE_OF_INT);
         requireNonNull(comparator, "comparator is null");
 
-        block = block.slice();
+        block = block.slice().order(LITTLE_ENDIAN);
         this.block = block;
         this.comparator = comparator;
+        this.owner = owner;
 
         // Keys are prefix compressed.  Every once in a while the prefix compression is restarted and the full key is written.
         // These "restart" locations are written at the end of the file, so you can seek to key without having to read the
         // entire file sequentially.
 
         // key restart count is the last int of the block
-        int restartCount = block.getInt(block.length() - SIZE_OF_INT);
+        int restartCount = block.getInt(block.limit() - SIZE_OF_INT);
+
+        // the hash index, if any, sits between the restarts and the restart count
+        int restartsEnd = block.limit() - SIZE_OF_INT;
+        if ((restartCount & DataBlockHashIndex.HASH_INDEX_FLAG) != 0) {
+            restartCount &= ~DataBlockHashIndex.HASH_INDEX_FLAG;
+            int bucketCount = block.getShort(restartsEnd - SIZE_OF_SHORT) & 0xFFFF;
+            restartsEnd -= SIZE_OF_SHORT + bucketCount;
+            checkArgument(restartsEnd >= 0, "Block is corrupt: hash index is greater than block size");
+            // not trusted for comparators that can not hash keys, whatever wrote the table
+            hashIndex = DataBlockHashIndex.canHashKeys(comparator) ? new DataBlockHashIndex(slice(block, restartsEnd, bucketCount)) : null;
+        } else {
+            hashIndex = null;
+        }
 
         if (restartCount > 0) {
             // restarts are written at the end of the block
-            int restartOffset = block.length() - (1 + restartCount) * SIZE_OF_INT;
-            checkArgument(restartOffset < block.length() - SIZE_OF_INT, "Block is corrupt: restart offset count is greater than block size");
-            restartPositions = block.slice(restartOffset, restartCount * SIZE_OF_INT);
+            int restartOffset = restartsEnd - restartCount * SIZE_OF_INT;
+            checkArgument(restartOffset >= 0 && restartOffset < restartsEnd, "Block is corrupt: restart offset count is greater than block size");
+            restartPositions = slice(block, restartOffset, restartCount * SIZE_OF_INT);
 
             // data starts at 0 and extends to the restart index
-            data = block.slice(0, restartOffset);
+            data = slice(block, 0, restartOffset);
         } else {
-            data = Slices.EMPTY_SLICE;
-            restartPositions = Slices.EMPTY_SLICE;
+            data = EMPTY_BUFFER;
+            restartPositions = EMPTY_BUFFER;
         }
     }
 
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length).position(offset);
+        return duplicate.slice().order(LITTLE_ENDIAN);
+    }
+
     public long size() {
-        return block.length();
+        return block.limit();
     }
 
     @Override
     public BlockIterator iterator() {
-        return new BlockIterator(data, restartPositions, comparator);
+        return new BlockIterator(data.duplicate().order(LITTLE_ENDIAN), restartPositions, comparator, hashIndex, owner);
     }
 }
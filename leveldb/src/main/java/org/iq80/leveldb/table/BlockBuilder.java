@@ -17,7 +17,6 @@
  */
 package org.iq80.leveldb.table;
 
-import com.google.common.primitives.Ints;
 import org.iq80.leveldb.util.DynamicSliceOutput;
 import org.iq80.leveldb.util.IntVector;
 import org.iq80.leveldb.util.Slice;
@@ -43,7 +42,14 @@ public class BlockBuilder {
     private final DynamicSliceOutput block;
     private Slice lastKey;
 
+    // null when the block is written without a hash index
+    private final DataBlockHashIndex.Builder hashIndex;
+
     public BlockBuilder(int estimatedSize, int blockRestartInterval, Comparator<Slice> comparator) {
+        this(estimatedSize, blockRestartInterval, comparator, false);
+    }
+
+    public BlockBuilder(int estimatedSize, int blockRestartInterval, Comparator<Slice> comparator, boolean hashIndex) {
         checkArgument(estimatedSize >= 0, "estimatedSize is negative");
         checkArgument(blockRestartInterval >= 0, "blockRestartInterval is negative");
         requireNonNull(comparator, "comparator is null");
@@ -51,6 +57,7 @@ public class BlockBuilder {
         this.block = new DynamicSliceOutput(estimatedSize);
         this.blockRestartInterval = blockRestartInterval;
         this.comparator = comparator;
+        this.hashIndex = hashIndex ? new DataBlockHashIndex.Builder() : null;
 
         restartPositions = new IntVector(32);
         restartPositions.add(0);  // first restart point must be 0
@@ -64,6 +71,9 @@ public class BlockBuilder {
         restartBlockEntryCount = 0;
         lastKey = null;
         finished = false;
+        if (hashIndex != null) {
+            hashIndex.reset();
+        }
     }
 
     public int getEntryCount() {
@@ -87,9 +97,17 @@ public class BlockBuilder {
 
         return block.size() +                              // raw data buffer
                 restartPositions.size() * SIZE_OF_INT +    // restart positions
+                hashIndexSizeEstimate() +                  // hash index
                 SIZE_OF_INT;                               // restart position size
     }
 
+    private int hashIndexSizeEstimate() {
+        if (hashIndex == null || !hashIndex.isValid()) {
+            return 0;
+        }
+        return hashIndex.estimateSize();
+    }
+
     public void add(BlockEntry blockEntry) {
         requireNonNull(blockEntry, "blockEntry is null");
         add(blockEntry.getKey(), blockEntry.getValue());
@@ -125,6 +143,10 @@ public class BlockBuilder {
         // write value bytes
         block.writeBytes(value, 0, value.length());
 
+        if (hashIndex != null && hashIndex.isValid()) {
+            hashIndex.add(DataBlockHashIndex.hashKey(key, comparator), restartPositions.size() - 1);
+        }
+
         // update last key
         lastKey = key;
 
@@ -134,16 +156,10 @@ public class BlockBuilder {
     }
 
     public static int calculateSharedBytes(Slice leftKey, Slice rightKey) {
-        int sharedKeyBytes = 0;
-
-        if (leftKey != null && rightKey != null) {
-            int minSharedKeyBytes = Ints.min(leftKey.length(), rightKey.length());
-            while (sharedKeyBytes < minSharedKeyBytes && leftKey.getByte(sharedKeyBytes) == rightKey.getByte(sharedKeyBytes)) {
-                sharedKeyBytes++;
-            }
+        if (leftKey == null || rightKey == null) {
+            return 0;
         }
-
-        return sharedKeyBytes;
+        return leftKey.sharedPrefixLength(rightKey);
     }
 
     public Slice finish() {
@@ -152,7 +168,12 @@ public class BlockBuilder {
 
             if (entryCount > 0) {
                 restartPositions.write(block);
-                block.writeInt(restartPositions.size());
+                if (hashIndex != null && hashIndex.isValid()) {
+                    hashIndex.finish(block);
+                    block.writeInt(restartPositions.size() | DataBlockHashIndex.HASH_INDEX_FLAG);
+                } else {
+                    block.writeInt(restartPositions.size());
+                }
             } else {
                 block.writeInt(0);
             }
@@ -19,40 +19,69 @@ package org.iq80.leveldb.table;
 
 import org.iq80.leveldb.impl.SeekingIterator;
 import org.iq80.leveldb.util.Slice;
-import org.iq80.leveldb.util.SliceInput;
-import org.iq80.leveldb.util.SliceOutput;
-import org.iq80.leveldb.util.Slices;
 import org.iq80.leveldb.util.VariableLengthQuantity;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.NoSuchElementException;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkPositionIndex;
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static java.util.Objects.requireNonNull;
 import static org.iq80.leveldb.util.SizeOf.SIZE_OF_INT;
 
 public class BlockIterator implements SeekingIterator<Slice, Slice> {
-    private final SliceInput data;
-    private final Slice restartPositions;
+    private final ByteBuffer data;
+    private final ByteBuffer restartPositions;
     private final int restartCount;
     private final Comparator<Slice> comparator;
+    // compares keys where they are stored; null when the comparator can only compare whole slices
+    private final UserComparator regionComparator;
+    private final DataBlockHashIndex hashIndex;
+
+    // keeps what backs a direct buffer reachable while the iterator reads it
+    private final Object owner;
 
     private BlockEntry nextEntry;
 
+    // the whole block, when it is on the heap, so that restart keys are compared in place
+    private final Slice dataView;
+
+    // scratch space for the keys decoded during seek, and views of it
+    private byte[] keyBuffer = new byte[64];
+    private Slice keyView = new Slice(keyBuffer);
+    private byte[] restartKeyBuffer = new byte[64];
+    private Slice restartKeyView = new Slice(restartKeyBuffer);
+
     public BlockIterator(Slice data, Slice restartPositions, Comparator<Slice> comparator) {
+        this(ByteBuffer.wrap(data.getRawArray(), data.getRawOffset(), data.length()).slice().order(LITTLE_ENDIAN),
+                ByteBuffer.wrap(restartPositions.getRawArray(), restartPositions.getRawOffset(), restartPositions.length()).slice().order(LITTLE_ENDIAN),
+                comparator, null, null);
+    }
+
+    /**
+     * @param data the entries, read from position 0 to the limit; the iterator moves its position
+     * @param restartPositions the restart offsets, read with absolute gets only
+     */
+    BlockIterator(ByteBuffer data, ByteBuffer restartPositions, Comparator<Slice> comparator, DataBlockHashIndex hashIndex, Object owner) {
         requireNonNull(data, "data is null");
         requireNonNull(restartPositions, "restartPositions is null");
-        checkArgument(restartPositions.length() % SIZE_OF_INT == 0, "restartPositions.readableBytes() must be a multiple of %s", SIZE_OF_INT);
+        checkArgument(restartPositions.limit() % SIZE_OF_INT == 0, "restartPositions.readableBytes() must be a multiple of %s", SIZE_OF_INT);
         requireNonNull(comparator, "comparator is null");
 
-        this.data = data.input();
+        this.data = data;
+        this.dataView = data.hasArray() ? new Slice(data.array(), data.arrayOffset(), data.limit()) : null;
 
-        this.restartPositions = restartPositions.slice();
-        restartCount = this.restartPositions.length() / SIZE_OF_INT;
+        this.restartPositions = restartPositions;
+        restartCount = this.restartPositions.limit() / SIZE_OF_INT;
 
         this.comparator = comparator;
+        this.regionComparator = comparator instanceof UserComparator ? (UserComparator) comparator : null;
+        this.hashIndex = hashIndex;
+        this.owner = owner;
 
         seekToFirst();
     }
@@ -78,11 +107,11 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
 
         BlockEntry entry = nextEntry;
 
-        if (!data.isReadable()) {
+        if (!data.hasRemaining()) {
             nextEntry = null;
         } else {
             // read entry at current data position
-            nextEntry = readEntry(data, nextEntry);
+            nextEntry = readEntry(nextEntry);
         }
 
         return entry;
@@ -105,6 +134,10 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
 
     /**
      * Repositions the iterator so the key of the next BlockElement returned greater than or equal to the specified targetKey.
+     * <p/>
+     * Restart keys are compared where they sit in the block and the keys walked during the linear
+     * scan are rebuilt in a reused buffer, both through views created once per iterator, so only
+     * the entry the iterator finally lands on is materialized.
      */
     @Override
     public void seek(Slice targetKey) {
@@ -117,11 +150,9 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
 
         // binary search restart positions to find the restart position immediately before the targetKey
         while (left < right) {
-            int mid = (left + right + 1) / 2;
-
-            seekToRestartPosition(mid);
+            int mid = (left + right + 1) >>> 1;
 
-            if (comparator.compare(nextEntry.getKey(), targetKey) < 0) {
+            if (compareRestartKey(mid, targetKey) < 0) {
                 // key at mid is smaller than targetKey.  Therefore all restart
                 // blocks before mid are uninteresting.
                 left = mid;
@@ -132,13 +163,100 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
             }
         }
 
-        // linear search (within restart block) for first key greater than or equal to targetKey
-        for (seekToRestartPosition(left); nextEntry != null; next()) {
-            if (comparator.compare(peek().getKey(), targetKey) >= 0) {
-                break;
+        scanFromRestartPosition(left, targetKey);
+    }
+
+    /**
+     * Positions the iterator like {@link #seek(Slice)} for a point lookup.  When the block has a hash
+     * index the restart interval holding the target's key is found directly.
+     *
+     * @return false if the block certainly holds no entry for the target's key, in which case the
+     * position of the iterator is unspecified
+     */
+    public boolean seekForGet(Slice targetKey) {
+        if (hashIndex == null) {
+            seek(targetKey);
+            return true;
+        }
+
+        int restartIndex = hashIndex.lookup(DataBlockHashIndex.hashKey(targetKey, comparator));
+        if (restartIndex == DataBlockHashIndex.NO_ENTRY) {
+            nextEntry = null;
+            return false;
+        }
+        if (restartIndex == DataBlockHashIndex.COLLISION || restartIndex >= restartCount) {
+            seek(targetKey);
+            return true;
+        }
+
+        // all entries for the key are in this interval, and every entry before it is smaller
+        scanFromRestartPosition(restartIndex, targetKey);
+        return true;
+    }
+
+    /**
+     * Linear search, starting at the specified restart position, for the first key greater than or
+     * equal to targetKey.
+     */
+    private void scanFromRestartPosition(int restartPosition, Slice targetKey) {
+        data.position(restartPositions.getInt(restartPosition * SIZE_OF_INT));
+        nextEntry = null;
+        int keyLength = 0;
+        while (data.hasRemaining()) {
+            int sharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
+            int nonSharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
+            int valueLength = VariableLengthQuantity.readVariableLengthInt(data);
+            checkState(sharedKeyLength <= keyLength, "Entry has a shared key but no previous entry was provided");
+
+            keyLength = sharedKeyLength + nonSharedKeyLength;
+            if (keyBuffer.length < keyLength) {
+                keyBuffer = Arrays.copyOf(keyBuffer, Math.max(keyLength, keyBuffer.length * 2));
+                keyView = new Slice(keyBuffer);
             }
+            int keyPosition = data.position();
+            data.get(keyBuffer, sharedKeyLength, nonSharedKeyLength);
+
+            if (compareKey(keyView, 0, keyLength, targetKey) >= 0) {
+                final Slice key;
+                if (sharedKeyLength > 0 || !data.hasArray()) {
+                    key = new Slice(Arrays.copyOf(keyBuffer, keyLength));
+                } else {
+                    key = new Slice(data.array(), data.arrayOffset() + keyPosition, nonSharedKeyLength);
+                }
+                nextEntry = new BlockEntry(key, readSlice(valueLength));
+                return;
+            }
+            data.position(data.position() + valueLength);
         }
+    }
 
+    /**
+     * Compares the key stored at the specified restart position with targetKey, in place when the
+     * block is on the heap and in a reused buffer otherwise.  Restart entries never share a prefix
+     * with their predecessor, so the key can be read without decoding any other entry.
+     */
+    private int compareRestartKey(int restartPosition, Slice targetKey) {
+        data.position(restartPositions.getInt(restartPosition * SIZE_OF_INT));
+        int sharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
+        checkState(sharedKeyLength == 0, "Restart entry has a shared key");
+        int nonSharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
+        VariableLengthQuantity.readVariableLengthInt(data);
+        if (dataView != null) {
+            return compareKey(dataView, data.position(), nonSharedKeyLength, targetKey);
+        }
+        if (restartKeyBuffer.length < nonSharedKeyLength) {
+            restartKeyBuffer = new byte[Math.max(nonSharedKeyLength, restartKeyBuffer.length * 2)];
+            restartKeyView = new Slice(restartKeyBuffer);
+        }
+        data.get(restartKeyBuffer, 0, nonSharedKeyLength);
+        return compareKey(restartKeyView, 0, nonSharedKeyLength, targetKey);
+    }
+
+    private int compareKey(Slice source, int index, int length, Slice targetKey) {
+        if (regionComparator != null) {
+            return regionComparator.compare(source, index, length, targetKey, 0, targetKey.length());
+        }
+        return comparator.compare(source.slice(index, length), targetKey);
     }
 
     /**
@@ -151,13 +269,13 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
 
         // seek data readIndex to the beginning of the restart block
         int offset = restartPositions.getInt(restartPosition * SIZE_OF_INT);
-        data.setPosition(offset);
+        data.position(offset);
 
         // clear the entries to assure key is not prefixed
         nextEntry = null;
 
         // read the entry
-        nextEntry = readEntry(data, null);
+        nextEntry = readEntry(null);
     }
 
     /**
@@ -167,9 +285,7 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
      *
      * @return true if an entry was read
      */
-    private static BlockEntry readEntry(SliceInput data, BlockEntry previousEntry) {
-        requireNonNull(data, "data is null");
-
+    private BlockEntry readEntry(BlockEntry previousEntry) {
         // read entry header
         int sharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
         int nonSharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
@@ -178,17 +294,32 @@ public class BlockIterator implements SeekingIterator<Slice, Slice> {
         // read key
         final Slice key;
         if (sharedKeyLength > 0) {
-            key = Slices.allocate(sharedKeyLength + nonSharedKeyLength);
-            SliceOutput sliceOutput = key.output();
             checkState(previousEntry != null, "Entry has a shared key but no previous entry was provided");
-            sliceOutput.writeBytes(previousEntry.getKey(), 0, sharedKeyLength);
-            sliceOutput.writeBytes(data, nonSharedKeyLength);
+            byte[] keyBytes = new byte[sharedKeyLength + nonSharedKeyLength];
+            previousEntry.getKey().getBytes(0, keyBytes, 0, sharedKeyLength);
+            data.get(keyBytes, sharedKeyLength, nonSharedKeyLength);
+            key = new Slice(keyBytes);
         } else {
-            key = data.readSlice(nonSharedKeyLength);
+            key = readSlice(nonSharedKeyLength);
         }
         // read value
-        Slice value = data.readSlice(valueLength);
+        Slice value = readSlice(valueLength);
 
         return new BlockEntry(key, value);
     }
+
+    /**
+     * Reads the next length bytes, as a view of the array when the block is on the heap and as a
+     * copy otherwise.
+     */
+    private Slice readSlice(int length) {
+        int position = data.position();
+        if (data.hasArray()) {
+            data.position(position + length);
+            return new Slice(data.array(), data.arrayOffset() + position, length);
+        }
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new Slice(bytes);
+    }
 }
@@ -30,6 +30,11 @@ public class BytewiseComparator implements UserComparator {
         return sliceA.compareTo(sliceB);
     }
 
+    @Override
+    public int compare(Slice left, int leftIndex, int leftLength, Slice right, int rightIndex, int rightLength) {
+        return left.compareTo(leftIndex, leftLength, right, rightIndex, rightLength);
+    }
+
     @Override
     public Slice findShortestSeparator(Slice start, Slice limit) {
         // Find length of common prefix
@@ -65,4 +70,14 @@ public class BytewiseComparator implements UserComparator {
         // key is a run of 0xffs.  Leave it alone.
         return key;
     }
+
+    @Override
+    public Slice hashKey(Slice key) {
+        return key;
+    }
+
+    @Override
+    public boolean canHashKeys() {
+        return true;
+    }
 }
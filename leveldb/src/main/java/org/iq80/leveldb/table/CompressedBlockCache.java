@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.iq80.leveldb.util.ByteBufferSupport;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Holds blocks as they are stored in table files, still compressed and followed by their trailer,
+ * outside of the Java heap.  A single instance is shared by every open table of a database and
+ * keyed by file number, so blocks stay cached when a table is closed and opened again.  A hit
+ * costs a decompression instead of a file read, and compressed blocks fit several times as much
+ * data into the same memory as decompressed ones.  The memory of a block is freed as soon as it
+ * has left the cache and no reader still holds it, rather than when the collector gets to it.
+ */
+public class CompressedBlockCache {
+    private final Cache<BlockKey, CachedBlock> cache;
+    // bytes of the blocks in the cache, updated as they are added and removed
+    private final AtomicLong memoryUsage = new AtomicLong();
+
+    public CompressedBlockCache(long maximumBytes) {
+        checkArgument(maximumBytes >= 0, "maximumBytes is negative");
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher(new Weigher<BlockKey, CachedBlock>() {
+                    @Override
+                    public int weigh(BlockKey key, CachedBlock block) {
+                        return block.buffer.capacity();
+                    }
+                })
+                .removalListener(new RemovalListener<BlockKey, CachedBlock>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<BlockKey, CachedBlock> notification) {
+                        CachedBlock block = notification.getValue();
+                        memoryUsage.addAndGet(-block.buffer.capacity());
+                        block.release();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the stored block and trailer at the offset of the file, or null.  The caller must
+     * release the block once it is done with its buffer.
+     */
+    CachedBlock get(long fileNumber, long offset) {
+        CachedBlock block = cache.getIfPresent(new BlockKey(fileNumber, offset));
+        if (block == null || !block.retain()) {
+            // evicted and freed since it was looked up
+            return null;
+        }
+        return block;
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer off heap and caches them.
+     */
+    void put(long fileNumber, long offset, ByteBuffer block) {
+        // direct buffers are mapped buffers, which is what ByteBufferSupport frees
+        MappedByteBuffer copy = (MappedByteBuffer) ByteBuffer.allocateDirect(block.remaining());
+        copy.put(block.duplicate());
+        copy.flip();
+        memoryUsage.addAndGet(copy.capacity());
+        cache.put(new BlockKey(fileNumber, offset), new CachedBlock(copy));
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Approximate number of bytes of blocks currently held.
+     */
+    public long getMemoryUsage() {
+        return memoryUsage.get();
+    }
+
+    /**
+     * A block held in direct memory, freed when the cache and every reader have released it.
+     */
+    static final class CachedBlock {
+        private final MappedByteBuffer buffer;
+        // the reference of the cache plus one per reader
+        private final AtomicInteger retained = new AtomicInteger(1);
+
+        private CachedBlock(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns a view of the block and trailer, valid until the block is released.
+         */
+        ByteBuffer getBuffer() {
+            return buffer.duplicate();
+        }
+
+        private boolean retain() {
+            while (true) {
+                int current = retained.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (retained.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            int now = retained.decrementAndGet();
+            checkState(now >= 0, "Cached block was released after it was freed");
+            if (now == 0) {
+                ByteBufferSupport.unmap(buffer);
+            }
+        }
+    }
+
+    private static final class BlockKey {
+        private final long fileNumber;
+        private final long offset;
+
+        private BlockKey(long fileNumber, long offset) {
+            this.fileNumber = fileNumber;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            BlockKey that = (BlockKey) o;
+            return fileNumber == that.fileNumber && offset == that.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(fileNumber) + Long.hashCode(offset);
+        }
+    }
+}
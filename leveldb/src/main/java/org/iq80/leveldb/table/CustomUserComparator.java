@@ -18,13 +18,20 @@
 package org.iq80.leveldb.table;
 
 import org.iq80.leveldb.DBComparator;
+import org.iq80.leveldb.DBSliceComparator;
 import org.iq80.leveldb.util.Slice;
 
+/**
+ * Adapts a {@link DBComparator} to the slices the database stores.  A {@link DBSliceComparator} is
+ * handed the array regions of the slices directly; any other comparator is given copies of the keys.
+ */
 public class CustomUserComparator implements UserComparator {
     private final DBComparator comparator;
+    private final DBSliceComparator sliceComparator;
 
     public CustomUserComparator(DBComparator comparator) {
         this.comparator = comparator;
+        this.sliceComparator = comparator instanceof DBSliceComparator ? (DBSliceComparator) comparator : null;
     }
 
     @Override
@@ -34,16 +41,50 @@ public class CustomUserComparator implements UserComparator {
 
     @Override
     public Slice findShortestSeparator(Slice start, Slice limit) {
+        if (sliceComparator != null) {
+            byte[] separator = sliceComparator.findShortestSeparator(
+                    start.getRawArray(), start.getRawOffset(), start.length(),
+                    limit.getRawArray(), limit.getRawOffset(), limit.length());
+            return separator == null ? start : new Slice(separator);
+        }
         return new Slice(comparator.findShortestSeparator(start.getBytes(), limit.getBytes()));
     }
 
     @Override
     public Slice findShortSuccessor(Slice key) {
+        if (sliceComparator != null) {
+            byte[] successor = sliceComparator.findShortSuccessor(key.getRawArray(), key.getRawOffset(), key.length());
+            return successor == null ? key : new Slice(successor);
+        }
         return new Slice(comparator.findShortSuccessor(key.getBytes()));
     }
 
     @Override
     public int compare(Slice o1, Slice o2) {
-        return comparator.compare(o1.getBytes(), o2.getBytes());
+        return compare(o1, 0, o1.length(), o2, 0, o2.length());
+    }
+
+    @Override
+    public int compare(Slice left, int leftIndex, int leftLength, Slice right, int rightIndex, int rightLength) {
+        if (sliceComparator != null) {
+            return sliceComparator.compare(
+                    left.getRawArray(), left.getRawOffset() + leftIndex, leftLength,
+                    right.getRawArray(), right.getRawOffset() + rightIndex, rightLength);
+        }
+        return comparator.compare(left.getBytes(leftIndex, leftLength), right.getBytes(rightIndex, rightLength));
+    }
+
+    @Override
+    public Slice hashKey(Slice key) {
+        return key;
+    }
+
+    /**
+     * A custom comparator may consider keys with different bytes equal, for example when it
+     * ignores case, so a hash of the bytes could miss a key that is present.
+     */
+    @Override
+    public boolean canHashKeys() {
+        return false;
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import org.iq80.leveldb.util.IntVector;
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.SliceOutput;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static org.iq80.leveldb.util.SizeOf.SIZE_OF_SHORT;
+
+/**
+ * Optional hash index stored in a data block between the restart array and the restart count.
+ * Each bucket is one byte holding the restart interval that contains the keys hashing to it, so a
+ * point lookup can jump straight to that interval instead of binary searching the restart array.
+ * <p/>
+ * Binary Structure
+ * <table summary="record format">
+ * <tbody>
+ * <thead>
+ * <tr>
+ * <th>name</th>
+ * <th>length</th>
+ * <th>description</th>
+ * </tr>
+ * </thead>
+ * <p/>
+ * <tr>
+ * <td>buckets</td>
+ * <td>bucket count</td>
+ * <td>Restart index of the keys hashing to the bucket, or a no entry/collision marker</td>
+ * </tr>
+ * <tr>
+ * <td>bucket count</td>
+ * <td>2</td>
+ * <td>Number of buckets</td>
+ * </tr>
+ * </tbody>
+ * </table>
+ * The presence of the index is flagged by the high bit of the block's restart count.
+ */
+public final class DataBlockHashIndex {
+    static final int HASH_INDEX_FLAG = 0x8000_0000;
+
+    /**
+     * Restart indexes must fit in a bucket below the marker values.
+     */
+    static final int MAX_RESTART_COUNT = 254;
+
+    public static final int NO_ENTRY = -1;
+    public static final int COLLISION = -2;
+
+    private static final int NO_ENTRY_MARKER = 255;
+    private static final int COLLISION_MARKER = 254;
+    private static final int MAX_BUCKET_COUNT = 0xFFFF;
+    private static final double UTILIZATION_RATIO = 0.75;
+
+    private final ByteBuffer buckets;
+
+    DataBlockHashIndex(ByteBuffer buckets) {
+        this.buckets = buckets;
+    }
+
+    /**
+     * Returns the restart index of the interval holding the key, {@link #NO_ENTRY} if the block
+     * does not contain the key, or {@link #COLLISION} if the index can not tell.
+     */
+    public int lookup(Slice hashKey) {
+        int bucket = buckets.get(bucketIndex(hash(hashKey), buckets.limit())) & 0xFF;
+        if (bucket == NO_ENTRY_MARKER) {
+            return NO_ENTRY;
+        }
+        if (bucket == COLLISION_MARKER) {
+            return COLLISION;
+        }
+        return bucket;
+    }
+
+    /**
+     * The part of a key that is hashed, as chosen by the comparator; see
+     * {@link UserComparator#hashKey(Slice)}.
+     */
+    static Slice hashKey(Slice key, Comparator<Slice> comparator) {
+        if (comparator instanceof UserComparator) {
+            return ((UserComparator) comparator).hashKey(key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns false if blocks ordered by the comparator must not be looked up through a hash index.
+     */
+    static boolean canHashKeys(Comparator<Slice> comparator) {
+        return !(comparator instanceof UserComparator) || ((UserComparator) comparator).canHashKeys();
+    }
+
+    private static int bucketIndex(int hash, int bucketCount) {
+        return (int) ((hash & 0xFFFF_FFFFL) % bucketCount);
+    }
+
+    /**
+     * Same hash function as LevelDB's util/hash.cc.
+     */
+    static int hash(Slice key) {
+        byte[] data = key.getRawArray();
+        int offset = key.getRawOffset();
+        int length = key.length();
+        int limit = offset + length;
+
+        int m = 0xc6a4a793;
+        int r = 24;
+        int h = 0xbc9f1d34 ^ (length * m);
+
+        // pick up four bytes at a time
+        for (; offset + 4 <= limit; offset += 4) {
+            int w = (data[offset] & 0xFF) |
+                    (data[offset + 1] & 0xFF) << 8 |
+                    (data[offset + 2] & 0xFF) << 16 |
+                    (data[offset + 3] & 0xFF) << 24;
+            h += w;
+            h *= m;
+            h ^= (h >>> 16);
+        }
+
+        // pick up remaining bytes
+        switch (limit - offset) {
+            case 3:
+                h += (data[offset + 2] & 0xFF) << 16;
+                // fall through
+            case 2:
+                h += (data[offset + 1] & 0xFF) << 8;
+                // fall through
+            case 1:
+                h += data[offset] & 0xFF;
+                h *= m;
+                h ^= (h >>> r);
+                break;
+            default:
+                break;
+        }
+        return h;
+    }
+
+    static class Builder {
+        private final IntVector hashes = new IntVector(64);
+        private final IntVector restartIndexes = new IntVector(64);
+        private boolean valid = true;
+
+        public void add(Slice hashKey, int restartIndex) {
+            checkState(valid, "builder is no longer valid");
+            if (restartIndex >= MAX_RESTART_COUNT) {
+                // the restart index no longer fits in a bucket; the block is written without an index
+                valid = false;
+                return;
+            }
+            hashes.add(hash(hashKey));
+            restartIndexes.add(restartIndex);
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public int estimateSize() {
+            return bucketCount() + SIZE_OF_SHORT;
+        }
+
+        private int bucketCount() {
+            return Math.min(MAX_BUCKET_COUNT, (int) (hashes.size() / UTILIZATION_RATIO) + 1);
+        }
+
+        public void finish(SliceOutput output) {
+            checkArgument(valid, "hash index can not be written");
+            int bucketCount = bucketCount();
+            byte[] buckets = new byte[bucketCount];
+            Arrays.fill(buckets, (byte) NO_ENTRY_MARKER);
+
+            int[] hashValues = hashes.values();
+            int[] restarts = restartIndexes.values();
+            for (int i = 0; i < hashValues.length; i++) {
+                int index = bucketIndex(hashValues[i], bucketCount);
+                int current = buckets[index] & 0xFF;
+                if (current == NO_ENTRY_MARKER) {
+                    buckets[index] = (byte) restarts[i];
+                } else if (current != restarts[i]) {
+                    buckets[index] = (byte) COLLISION_MARKER;
+                }
+            }
+            output.writeBytes(buckets);
+            output.writeShort(bucketCount);
+        }
+
+        public void reset() {
+            hashes.clear();
+            restartIndexes.clear();
+            valid = true;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import org.iq80.leveldb.util.Slice;
+
+/**
+ * Classifies the entries added to a {@link TableBuilder} for the {@link TableProperties} of the
+ * table.  The builder sees keys and values as opaque bytes, so whoever encodes them supplies the
+ * classification.
+ */
+public interface EntryClassifier {
+    /**
+     * Whether the entry marks its key as deleted.
+     */
+    boolean isDeletion(Slice key, Slice value);
+
+    /**
+     * Bytes of the value stored outside the table that the entry points at, or 0 when the value is
+     * in the table itself.
+     */
+    long getBlobValueSize(Slice key, Slice value);
+}
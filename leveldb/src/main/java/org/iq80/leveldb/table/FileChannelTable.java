@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 
 import static org.iq80.leveldb.CompressionType.SNAPPY;
 
@@ -33,6 +34,15 @@ public class FileChannelTable extends Table {
         super(name, fileChannel, comparator, verifyChecksums);
     }
 
+    public FileChannelTable(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums, IndexPartitionCache indexPartitionCache) throws IOException {
+        super(name, fileChannel, comparator, verifyChecksums, indexPartitionCache);
+    }
+
+    public FileChannelTable(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums, IndexPartitionCache indexPartitionCache,
+            CompressedBlockCache blockCache, long fileNumber) throws IOException {
+        super(name, fileChannel, comparator, verifyChecksums, indexPartitionCache, blockCache, fileNumber);
+    }
+
     @Override
     protected Footer init() throws IOException {
         long size = fileChannel.size();
@@ -40,11 +50,54 @@ public class FileChannelTable extends Table {
         return Footer.readFooter(Slices.copiedBuffer(footerData));
     }
 
-    @SuppressWarnings({"AssignmentToStaticFieldFromInstanceMethod", "NonPrivateFieldAccessedInSynchronizedContext"})
     @Override
-    protected Block readBlock(BlockHandle blockHandle) throws IOException {
-        // read block trailer
-        ByteBuffer trailerData = read(blockHandle.getOffset() + blockHandle.getDataSize(), BlockTrailer.ENCODED_LENGTH);
+    protected ReadaheadReader newReadaheadReader(int readaheadSize, Executor readaheadExecutor) {
+        // the data blocks end where the metadata written by TableBuilder.finish() begins
+        return new ReadaheadReader(fileChannel, readaheadSize, metaindexBlockHandle.getOffset(), readaheadExecutor);
+    }
+
+    @Override
+    protected Slice readBlockContents(BlockHandle blockHandle) throws IOException {
+        CompressedBlockCache blockCache = getBlockCache();
+        if (blockCache != null) {
+            CompressedBlockCache.CachedBlock cachedBlock = blockCache.get(fileNumber, blockHandle.getOffset());
+            if (cachedBlock != null) {
+                try {
+                    // the contents are copied out, so the cached buffer may be freed afterwards
+                    return readBlockContents(blockHandle, cachedBlock.getBuffer());
+                } finally {
+                    cachedBlock.release();
+                }
+            }
+        }
+        // the block and its trailer in a single read
+        ByteBuffer blockData = read(blockHandle.getOffset(), blockHandle.getDataSize() + BlockTrailer.ENCODED_LENGTH);
+        if (blockCache != null) {
+            blockCache.put(fileNumber, blockHandle.getOffset(), blockData);
+        }
+        return readBlockContents(blockHandle, blockData);
+    }
+
+    @Override
+    protected Slice readBlockContents(BlockHandle blockHandle, ReadaheadReader readaheadReader) throws IOException {
+        // sequential scans read every block once, so they neither use nor fill the block cache
+        ByteBuffer blockData = readaheadReader.read(blockHandle.getOffset(), blockHandle.getDataSize() + BlockTrailer.ENCODED_LENGTH);
+        return readBlockContents(blockHandle, blockData);
+    }
+
+    /**
+     * Decodes the block from its stored bytes followed by its trailer.
+     */
+    private Slice readBlockContents(BlockHandle blockHandle, ByteBuffer blockData) throws IOException {
+        ByteBuffer trailerData = blockData.duplicate();
+        trailerData.position(blockHandle.getDataSize());
+        ByteBuffer uncompressedBuffer = blockData.duplicate();
+        uncompressedBuffer.limit(blockHandle.getDataSize());
+        return readBlockContents(trailerData.slice(), uncompressedBuffer.slice());
+    }
+
+    @SuppressWarnings({"AssignmentToStaticFieldFromInstanceMethod", "NonPrivateFieldAccessedInSynchronizedContext"})
+    private Slice readBlockContents(ByteBuffer trailerData, ByteBuffer uncompressedBuffer) throws IOException {
         BlockTrailer blockTrailer = BlockTrailer.readBlockTrailer(Slices.copiedBuffer(trailerData));
 
         // todo re-enable crc check when ported to support direct buffers
@@ -60,10 +113,9 @@ public class FileChannelTable extends Table {
 
         // decompress data
 
-        ByteBuffer uncompressedBuffer = read(blockHandle.getOffset(), blockHandle.getDataSize());
         Slice uncompressedData;
         if (blockTrailer.getCompressionType() == SNAPPY) {
-            synchronized (FileChannelTable.class) {
+            synchronized (Table.class) {
                 int uncompressedLength = uncompressedLength(uncompressedBuffer);
                 if (uncompressedScratch.capacity() < uncompressedLength) {
                     uncompressedScratch = ByteBuffer.allocateDirect(uncompressedLength);
@@ -77,7 +129,7 @@ public class FileChannelTable extends Table {
             uncompressedData = Slices.copiedBuffer(uncompressedBuffer);
         }
 
-        return new Block(uncompressedData, comparator);
+        return uncompressedData;
     }
 
     private ByteBuffer read(long offset, int length) throws IOException {
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Holds the index partitions of tables written with a partitioned index.  A single instance is
+ * shared by every open table of a database, so the memory used by index partitions is bounded by
+ * one budget no matter how many tables are open; only the small top-level index of each table
+ * stays resident with the table itself.
+ */
+public class IndexPartitionCache {
+    private final Cache<PartitionKey, Block> cache;
+
+    public IndexPartitionCache(long maximumBytes) {
+        checkArgument(maximumBytes >= 0, "maximumBytes is negative");
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher(new Weigher<PartitionKey, Block>() {
+                    @Override
+                    public int weigh(PartitionKey key, Block block) {
+                        return (int) Math.min(block.size(), Integer.MAX_VALUE);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @param tableKey number of the table file, or a negative id unique to a table that has none
+     */
+    Block get(long tableKey, BlockHandle blockHandle, Callable<Block> loader) throws IOException {
+        try {
+            return cache.get(new PartitionKey(tableKey, blockHandle.getOffset()), loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Could not load index partition", e.getCause());
+        }
+    }
+
+    /**
+     * Approximate number of bytes of index partitions currently held.
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (Block block : cache.asMap().values()) {
+            bytes += block.size();
+        }
+        return bytes;
+    }
+
+    private static final class PartitionKey {
+        private final long tableKey;
+        private final long offset;
+
+        private PartitionKey(long tableKey, long offset) {
+            this.tableKey = tableKey;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PartitionKey that = (PartitionKey) o;
+            return tableKey == that.tableKey && offset == that.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(tableKey) + Long.hashCode(offset);
+        }
+    }
+}
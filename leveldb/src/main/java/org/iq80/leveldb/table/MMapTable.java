@@ -17,8 +17,8 @@
  */
 package org.iq80.leveldb.table;
 
-import org.iq80.leveldb.util.ByteBufferSupport;
 import org.iq80.leveldb.util.Closeables;
+import org.iq80.leveldb.util.MappedFile;
 import org.iq80.leveldb.util.Slice;
 import org.iq80.leveldb.util.Slices;
 import org.iq80.leveldb.util.Snappy;
@@ -26,29 +26,32 @@ import org.iq80.leveldb.util.Snappy;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 import java.util.Comparator;
 import java.util.concurrent.Callable;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static org.iq80.leveldb.CompressionType.SNAPPY;
 
 public class MMapTable extends Table {
-    private MappedByteBuffer data;
+    private MappedFile data;
 
     public MMapTable(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums) throws IOException {
-        super(name, fileChannel, comparator, verifyChecksums);
-        checkArgument(fileChannel.size() <= Integer.MAX_VALUE, "File must be smaller than %s bytes", Integer.MAX_VALUE);
+        this(name, fileChannel, comparator, verifyChecksums, null);
+    }
+
+    public MMapTable(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums, IndexPartitionCache indexPartitionCache) throws IOException {
+        super(name, fileChannel, comparator, verifyChecksums, indexPartitionCache);
+    }
+
+    public MMapTable(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums, IndexPartitionCache indexPartitionCache, long fileNumber)
+            throws IOException {
+        super(name, fileChannel, comparator, verifyChecksums, indexPartitionCache, null, fileNumber);
     }
 
     @Override
     protected Footer init() throws IOException {
-        long size = fileChannel.size();
-        data = fileChannel.map(MapMode.READ_ONLY, 0, size);
-        Slice footerSlice = Slices.copiedBuffer(data, (int) size - Footer.ENCODED_LENGTH, Footer.ENCODED_LENGTH);
+        data = new MappedFile(fileChannel);
+        Slice footerSlice = Slices.copiedBuffer(data.read(data.size() - Footer.ENCODED_LENGTH, Footer.ENCODED_LENGTH));
         return Footer.readFooter(footerSlice);
     }
 
@@ -60,26 +63,37 @@ public class MMapTable extends Table {
     private static class Closer implements Callable<Void> {
         private final String name;
         private final Closeable closeable;
-        private final MappedByteBuffer data;
+        private final MappedFile data;
 
-        public Closer(String name, Closeable closeable, MappedByteBuffer data) {
+        public Closer(String name, Closeable closeable, MappedFile data) {
             this.name = name;
             this.closeable = closeable;
             this.data = data;
         }
 
         public Void call() {
-            ByteBufferSupport.unmap(data);
+            data.close();
             Closeables.closeQuietly(closeable);
             return null;
         }
     }
 
-    @SuppressWarnings({"NonPrivateFieldAccessedInSynchronizedContext", "AssignmentToStaticFieldFromInstanceMethod"})
+    /**
+     * Uncompressed blocks are read in place from the mapping rather than copied to the heap.  The
+     * block keeps this table reachable so the mapping is not released while the block is in use.
+     */
     @Override
     protected Block readBlock(BlockHandle blockHandle) throws IOException {
-        // read block trailer
-        BlockTrailer blockTrailer = BlockTrailer.readBlockTrailer(Slices.copiedBuffer(this.data, (int) blockHandle.getOffset() + blockHandle.getDataSize(), BlockTrailer.ENCODED_LENGTH));
+        BlockTrailer blockTrailer = readBlockTrailer(blockHandle);
+        if (blockTrailer.getCompressionType() == SNAPPY) {
+            return new Block(uncompress(blockHandle), comparator);
+        }
+        return new Block(data.read(blockHandle.getOffset(), blockHandle.getDataSize()), comparator, this);
+    }
+
+    @Override
+    protected Slice readBlockContents(BlockHandle blockHandle) throws IOException {
+        BlockTrailer blockTrailer = readBlockTrailer(blockHandle);
 
         // todo re-enable crc check when ported to support direct buffers
         //        // only verify check sums if explicitly asked by the user
@@ -93,29 +107,28 @@ public class MMapTable extends Table {
         //        }
 
         // decompress data
-        Slice uncompressedData;
-        ByteBuffer uncompressedBuffer = read(this.data, (int) blockHandle.getOffset(), blockHandle.getDataSize());
         if (blockTrailer.getCompressionType() == SNAPPY) {
-            synchronized (MMapTable.class) {
-                int uncompressedLength = uncompressedLength(uncompressedBuffer);
-                if (uncompressedScratch.capacity() < uncompressedLength) {
-                    uncompressedScratch = ByteBuffer.allocateDirect(uncompressedLength);
-                }
-                uncompressedScratch.clear();
-
-                Snappy.uncompress(uncompressedBuffer, uncompressedScratch);
-                uncompressedData = Slices.copiedBuffer(uncompressedScratch);
-            }
-        } else {
-            uncompressedData = Slices.copiedBuffer(uncompressedBuffer);
+            return uncompress(blockHandle);
         }
+        return Slices.copiedBuffer(data.read(blockHandle.getOffset(), blockHandle.getDataSize()));
+    }
 
-        return new Block(uncompressedData, comparator);
+    private BlockTrailer readBlockTrailer(BlockHandle blockHandle) {
+        return BlockTrailer.readBlockTrailer(Slices.copiedBuffer(data.read(blockHandle.getOffset() + blockHandle.getDataSize(), BlockTrailer.ENCODED_LENGTH)));
     }
 
-    public static ByteBuffer read(MappedByteBuffer data, int offset, int length) throws IOException {
-        int newPosition = data.position() + offset;
-        ByteBuffer block = (ByteBuffer) data.duplicate().order(ByteOrder.LITTLE_ENDIAN).clear().limit(newPosition + length).position(newPosition);
-        return block;
+    @SuppressWarnings({"NonPrivateFieldAccessedInSynchronizedContext", "AssignmentToStaticFieldFromInstanceMethod"})
+    private Slice uncompress(BlockHandle blockHandle) throws IOException {
+        ByteBuffer compressedBuffer = data.read(blockHandle.getOffset(), blockHandle.getDataSize());
+        synchronized (Table.class) {
+            int uncompressedLength = uncompressedLength(compressedBuffer);
+            if (uncompressedScratch.capacity() < uncompressedLength) {
+                uncompressedScratch = ByteBuffer.allocateDirect(uncompressedLength);
+            }
+            uncompressedScratch.clear();
+
+            Snappy.uncompress(compressedBuffer, uncompressedScratch);
+            return Slices.copiedBuffer(uncompressedScratch);
+        }
     }
 }
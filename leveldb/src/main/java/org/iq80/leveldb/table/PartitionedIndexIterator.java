@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import org.iq80.leveldb.util.AbstractSeekingIterator;
+import org.iq80.leveldb.util.Slice;
+
+import java.util.Map.Entry;
+
+/**
+ * Iterates the entries of a partitioned index: the top-level index maps the last key of each
+ * partition to the partition's handle, and partitions are opened as the iterator reaches them.
+ */
+public final class PartitionedIndexIterator extends AbstractSeekingIterator<Slice, Slice> {
+    private final Table table;
+    private final BlockIterator topLevelIterator;
+    private BlockIterator current;
+
+    PartitionedIndexIterator(Table table, BlockIterator topLevelIterator) {
+        this.table = table;
+        this.topLevelIterator = topLevelIterator;
+    }
+
+    @Override
+    protected void seekToFirstInternal() {
+        topLevelIterator.seekToFirst();
+        current = null;
+    }
+
+    @Override
+    protected void seekInternal(Slice targetKey) {
+        topLevelIterator.seek(targetKey);
+        if (topLevelIterator.hasNext()) {
+            current = nextPartition();
+            current.seek(targetKey);
+        } else {
+            current = null;
+        }
+    }
+
+    @Override
+    protected Entry<Slice, Slice> getNextElement() {
+        while (current == null || !current.hasNext()) {
+            if (!topLevelIterator.hasNext()) {
+                current = null;
+                return null;
+            }
+            current = nextPartition();
+        }
+        return current.next();
+    }
+
+    private BlockIterator nextPartition() {
+        return table.openIndexPartition(topLevelIterator.next().getValue()).iterator();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads the data blocks of a table front to back in large chunks.  When a read misses the
+ * current chunk the chunk holding it is read, and the chunk after it is fetched on the executor
+ * while the current one is consumed, so scanning a table costs a few large reads rather than one
+ * small read per block.  Not thread safe.
+ */
+public class ReadaheadReader {
+    private final FileChannel fileChannel;
+    private final int readaheadSize;
+    private final long limit;
+    private final Executor executor;
+
+    private ByteBuffer chunk;
+    private long chunkOffset;
+
+    private FutureTask<ByteBuffer> prefetch;
+    private long prefetchOffset;
+
+    /**
+     * @param limit offset where the data blocks end; chunks are not read past it
+     * @param executor executor fetching the next chunk, or null to read each chunk when it is needed
+     */
+    public ReadaheadReader(FileChannel fileChannel, int readaheadSize, long limit, Executor executor) {
+        requireNonNull(fileChannel, "fileChannel is null");
+        checkArgument(readaheadSize > 0, "readaheadSize must be positive");
+        this.fileChannel = fileChannel;
+        this.readaheadSize = readaheadSize;
+        this.limit = limit;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns a buffer holding the specified range of the file.
+     */
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (!contains(chunk, chunkOffset, offset, length)) {
+            chunk = null;
+            if (prefetch != null) {
+                ByteBuffer prefetched = getPrefetched();
+                if (contains(prefetched, prefetchOffset, offset, length)) {
+                    chunk = prefetched;
+                    chunkOffset = prefetchOffset;
+                }
+            }
+            if (chunk == null) {
+                chunk = readChunk(offset, Math.max(length, (int) Math.min(readaheadSize, limit - offset)));
+                chunkOffset = offset;
+            }
+            if (chunk.limit() < length) {
+                throw new IOException("Could not read all the data");
+            }
+            startPrefetch(chunkOffset + chunk.limit());
+        }
+
+        ByteBuffer result = chunk.duplicate();
+        result.position((int) (offset - chunkOffset));
+        result.limit(result.position() + length);
+        return result.slice();
+    }
+
+    private static boolean contains(ByteBuffer buffer, long bufferOffset, long offset, int length) {
+        return buffer != null && offset >= bufferOffset && offset + length <= bufferOffset + buffer.limit();
+    }
+
+    private void startPrefetch(final long offset) {
+        if (executor == null || offset >= limit) {
+            return;
+        }
+        final int length = (int) Math.min(readaheadSize, limit - offset);
+        prefetch = new FutureTask<>(new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws IOException {
+                return readChunk(offset, length);
+            }
+        });
+        prefetchOffset = offset;
+        executor.execute(prefetch);
+    }
+
+    private ByteBuffer getPrefetched() throws IOException {
+        FutureTask<ByteBuffer> prefetch = this.prefetch;
+        this.prefetch = null;
+        try {
+            return Uninterruptibles.getUninterruptibly(prefetch);
+        } catch (ExecutionException e) {
+            Throwable cause = e;
+            if (e.getCause() != null) {
+                cause = e.getCause();
+            }
+            Throwables.propagateIfInstanceOf(cause, IOException.class);
+            throw Throwables.propagate(cause);
+        }
+    }
+
+    /**
+     * Reads up to length bytes at offset; the returned buffer is shorter at the end of the file.
+     */
+    private ByteBuffer readChunk(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
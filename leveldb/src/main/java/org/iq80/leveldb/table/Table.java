@@ -18,9 +18,13 @@
 package org.iq80.leveldb.table;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 import org.iq80.leveldb.impl.SeekingIterable;
+import org.iq80.leveldb.impl.SeekingIterator;
 import org.iq80.leveldb.util.Closeables;
 import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.Slices;
 import org.iq80.leveldb.util.TableIterator;
 import org.iq80.leveldb.util.VariableLengthQuantity;
 
@@ -29,9 +33,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
 public abstract class Table implements SeekingIterable<Slice, Slice> {
@@ -39,10 +50,43 @@ public abstract class Table implements SeekingIterable<Slice, Slice> {
     protected final FileChannel fileChannel;
     protected final Comparator<Slice> comparator;
     protected final boolean verifyChecksums;
+    private static final AtomicLong TABLE_IDS = new AtomicLong();
+
     protected final Block indexBlock;
     protected final BlockHandle metaindexBlockHandle;
 
+    // when set, indexBlock is only the top level of a partitioned index
+    private final boolean partitionedIndex;
+    private final IndexPartitionCache indexPartitionCache;
+    // used through getBlockCache() by subclasses reading through the file channel; null when not cached
+    private final CompressedBlockCache blockCache;
+    // set once the index and meta blocks have been read
+    private boolean opened;
+    protected final long fileNumber;
+    // names the table's partitions in the index partition cache; file numbers are never reused, so
+    // partitions survive the table being evicted from the table cache and opened again
+    private final long partitionCacheKey;
+    private final TableProperties properties;
+    private final List<Entry<Slice, Slice>> rangeTombstones;
+
+    // the opener holds the first reference
+    private final AtomicInteger retained = new AtomicInteger(1);
+
     public Table(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums) throws IOException {
+        this(name, fileChannel, comparator, verifyChecksums, null);
+    }
+
+    public Table(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums, IndexPartitionCache indexPartitionCache) throws IOException {
+        this(name, fileChannel, comparator, verifyChecksums, indexPartitionCache, null, 0);
+    }
+
+    /**
+     * @param blockCache cache of the blocks as stored in the file, or null
+     * @param fileNumber number of the file, identifying its blocks in the block cache and the index
+     * partition cache, or 0 when the table is not a numbered database file
+     */
+    public Table(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums, IndexPartitionCache indexPartitionCache,
+            CompressedBlockCache blockCache, long fileNumber) throws IOException {
         requireNonNull(name, "name is null");
         requireNonNull(fileChannel, "fileChannel is null");
         long size = fileChannel.size();
@@ -53,33 +97,212 @@ public abstract class Table implements SeekingIterable<Slice, Slice> {
         this.fileChannel = fileChannel;
         this.verifyChecksums = verifyChecksums;
         this.comparator = comparator;
+        this.indexPartitionCache = indexPartitionCache;
+        this.blockCache = blockCache;
+        this.fileNumber = fileNumber;
+        this.partitionCacheKey = fileNumber > 0 ? fileNumber : -TABLE_IDS.incrementAndGet();
 
         Footer footer = init();
         indexBlock = readBlock(footer.getIndexBlockHandle());
         metaindexBlockHandle = footer.getMetaindexBlockHandle();
+
+        Block metaindexBlock = new Block(readBlockContents(metaindexBlockHandle), new BytewiseComparator());
+        Slice propertiesHandle = findMetaBlock(metaindexBlock, TableBuilder.PROPERTIES_META_KEY);
+        if (propertiesHandle != null) {
+            Block propertiesBlock = new Block(readBlockContents(BlockHandle.readBlockHandle(propertiesHandle.input())), new BytewiseComparator());
+            properties = TableProperties.decode(propertiesBlock);
+        } else {
+            properties = null;
+        }
+        partitionedIndex = properties != null && properties.isPartitionedIndex();
+
+        Slice rangeDeletionHandle = findMetaBlock(metaindexBlock, TableBuilder.RANGE_DELETION_META_KEY);
+        if (rangeDeletionHandle != null) {
+            // copied out of the block so they stay valid after the table is closed
+            ImmutableList.Builder<Entry<Slice, Slice>> tombstones = ImmutableList.builder();
+            for (Entry<Slice, Slice> entry : readBlock(BlockHandle.readBlockHandle(rangeDeletionHandle.input()))) {
+                tombstones.add(Maps.immutableEntry(entry.getKey().copySlice(), entry.getValue().copySlice()));
+            }
+            rangeTombstones = tombstones.build();
+        } else {
+            rangeTombstones = ImmutableList.of();
+        }
+        opened = true;
     }
 
     protected abstract Footer init() throws IOException;
 
+    /**
+     * Returns the cache for blocks read from the file, or null.  The index and meta blocks read
+     * while the table is opened bypass it, since the table keeps what it needs from them for as
+     * long as it is open.
+     */
+    protected CompressedBlockCache getBlockCache() {
+        return opened ? blockCache : null;
+    }
+
+    private static Slice findMetaBlock(Block metaindexBlock, String name) {
+        Slice key = Slices.copiedBuffer(name, UTF_8);
+        BlockIterator iterator = metaindexBlock.iterator();
+        iterator.seek(key);
+        if (iterator.hasNext() && iterator.peek().getKey().equals(key)) {
+            return iterator.peek().getValue();
+        }
+        return null;
+    }
+
     @Override
     public TableIterator iterator() {
-        return new TableIterator(this, indexBlock.iterator());
+        return new TableIterator(this, indexIterator());
+    }
+
+    /**
+     * Returns an iterator for scanning the table front to back, reading readaheadSize bytes of
+     * data blocks at a time.
+     *
+     * @param readaheadExecutor executor fetching the next chunk while the current one is consumed,
+     * or null to fetch each chunk when it is needed
+     */
+    public TableIterator sequentialIterator(int readaheadSize, Executor readaheadExecutor) {
+        return new TableIterator(this, indexIterator(), newReadaheadReader(readaheadSize, readaheadExecutor));
+    }
+
+    /**
+     * Returns a reader for the data blocks of the table, or null if reading ahead is of no use.
+     */
+    protected ReadaheadReader newReadaheadReader(int readaheadSize, Executor readaheadExecutor) {
+        return null;
+    }
+
+    /**
+     * Iterates the index entries (last key of each data block to the block's handle).
+     */
+    public SeekingIterator<Slice, Slice> indexIterator() {
+        if (partitionedIndex) {
+            return new PartitionedIndexIterator(this, indexBlock.iterator());
+        }
+        return indexBlock.iterator();
+    }
+
+    /**
+     * Returns the statistics recorded when the table was built, or null for tables written
+     * without a properties block.
+     */
+    public TableProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns the range deletions of the table in key order, as pairs of encoded start key and end
+     * user key.
+     */
+    public List<Entry<Slice, Slice>> getRangeTombstones() {
+        return rangeTombstones;
+    }
+
+    /**
+     * Reads every partition of a partitioned index into the partition cache; the index of an
+     * unpartitioned table is already loaded when the table is opened.
+     */
+    public void preloadIndex() {
+        if (partitionedIndex) {
+            BlockIterator topLevelIterator = indexBlock.iterator();
+            while (topLevelIterator.hasNext()) {
+                openIndexPartition(topLevelIterator.next().getValue());
+            }
+        }
+    }
+
+    public boolean isPartitionedIndex() {
+        return partitionedIndex;
+    }
+
+    /**
+     * Bytes of index held for as long as the table is open.  With a partitioned index this is only
+     * the top level; partitions are accounted for by the {@link IndexPartitionCache}.
+     */
+    public long getIndexMemoryUsage() {
+        return indexBlock.size();
+    }
+
+    Block openIndexPartition(Slice blockEntry) {
+        final BlockHandle blockHandle = BlockHandle.readBlockHandle(blockEntry.input());
+        try {
+            if (indexPartitionCache == null) {
+                return readBlock(blockHandle);
+            }
+            return indexPartitionCache.get(partitionCacheKey, blockHandle, new Callable<Block>() {
+                @Override
+                public Block call() throws IOException {
+                    // copied to the heap: the cached partition outlives the table and its mapping
+                    return new Block(readBlockContents(blockHandle), comparator);
+                }
+            });
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
     }
 
     public Block openBlock(Slice blockEntry) {
+        return openBlock(blockEntry, null);
+    }
+
+    /**
+     * Reads the data block through the readahead reader, if there is one.
+     */
+    public Block openBlock(Slice blockEntry, ReadaheadReader readaheadReader) {
         BlockHandle blockHandle = BlockHandle.readBlockHandle(blockEntry.input());
         Block dataBlock;
         try {
-            dataBlock = readBlock(blockHandle);
+            if (readaheadReader == null) {
+                dataBlock = readBlock(blockHandle);
+            } else {
+                dataBlock = new Block(readBlockContents(blockHandle, readaheadReader), comparator);
+            }
         } catch (IOException e) {
             throw Throwables.propagate(e);
         }
         return dataBlock;
     }
 
+    /**
+     * Point lookup: returns the first entry in the data block selected by the index whose key is
+     * greater than or equal to the specified key, or null if there is none or the block's hash
+     * index shows the block holds nothing for the key.  Unlike seeking an iterator this never reads
+     * past the selected block, so callers must still check that the returned key matches.
+     */
+    public BlockEntry get(Slice key) {
+        SeekingIterator<Slice, Slice> indexIterator = indexIterator();
+        indexIterator.seek(key);
+        if (!indexIterator.hasNext()) {
+            return null;
+        }
+
+        BlockIterator dataIterator = openBlock(indexIterator.next().getValue()).iterator();
+        if (dataIterator.seekForGet(key) && dataIterator.hasNext()) {
+            return dataIterator.next();
+        }
+        return null;
+    }
+
+    // shared by all tables; guarded by Table.class
     protected static ByteBuffer uncompressedScratch = ByteBuffer.allocateDirect(4 * 1024 * 1024);
 
-    protected abstract Block readBlock(BlockHandle blockHandle) throws IOException;
+    protected Block readBlock(BlockHandle blockHandle) throws IOException {
+        return new Block(readBlockContents(blockHandle), comparator);
+    }
+
+    /**
+     * Reads the uncompressed contents of the block.
+     */
+    protected abstract Slice readBlockContents(BlockHandle blockHandle) throws IOException;
+
+    /**
+     * Reads the uncompressed contents of the block through the readahead reader.
+     */
+    protected Slice readBlockContents(BlockHandle blockHandle, ReadaheadReader readaheadReader) throws IOException {
+        return readBlockContents(blockHandle);
+    }
 
     protected int uncompressedLength(ByteBuffer data) throws IOException {
         int length = VariableLengthQuantity.readVariableLengthInt(data.duplicate());
@@ -95,7 +318,7 @@ public abstract class Table implements SeekingIterable<Slice, Slice> {
      * be close to the file length.
      */
     public long getApproximateOffsetOf(Slice key) {
-        BlockIterator iterator = indexBlock.iterator();
+        SeekingIterator<Slice, Slice> iterator = indexIterator();
         iterator.seek(key);
         if (iterator.hasNext()) {
             BlockHandle blockHandle = BlockHandle.readBlockHandle(iterator.next().getValue().input());
@@ -119,6 +342,42 @@ public abstract class Table implements SeekingIterable<Slice, Slice> {
         return sb.toString();
     }
 
+    /**
+     * Takes a reference to the table, which stays open until every reference is released.
+     *
+     * @return false if the table has already been closed, in which case no reference was taken
+     */
+    public boolean retain() {
+        while (true) {
+            int current = retained.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (retained.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops a reference.  Dropping the last one closes the table at once; blocks and iterators of
+     * the table must not be used afterwards.
+     */
+    public void release() {
+        int now = retained.decrementAndGet();
+        checkState(now >= 0, "Table %s was released after it was closed", name);
+        if (now == 0) {
+            try {
+                closer().call();
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the task that closes the table.  Running it more than once has no further effect.
+     */
     public Callable<?> closer() {
         return new Closer(fileChannel);
     }
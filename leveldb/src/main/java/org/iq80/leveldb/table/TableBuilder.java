@@ -18,6 +18,7 @@
 package org.iq80.leveldb.table;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.iq80.leveldb.CompressionType;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.util.PureJavaCrc32C;
@@ -28,8 +29,14 @@ import org.iq80.leveldb.util.Snappy;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 import static org.iq80.leveldb.impl.VersionSet.TARGET_FILE_SIZE;
 
@@ -41,6 +48,22 @@ public class TableBuilder {
      */
     public static final long TABLE_MAGIC_NUMBER = 0xdb4775248b80fb57L;
 
+    /**
+     * Metaindex entry pointing at the {@link TableProperties} block.
+     */
+    public static final String PROPERTIES_META_KEY = "leveldb.properties";
+
+    /**
+     * Metaindex entry pointing at the block of range deletions, present only when the table has
+     * any.  The block maps the encoded start key of each range deletion to its end user key.
+     */
+    public static final String RANGE_DELETION_META_KEY = "leveldb.range_del";
+
+    /**
+     * Size of the buffer that coalesces blocks into large sequential writes.
+     */
+    public static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
     private final int blockRestartInterval;
     private final int blockSize;
     private final CompressionType compressionType;
@@ -48,11 +71,27 @@ public class TableBuilder {
     private final FileChannel fileChannel;
     private final BlockBuilder dataBlockBuilder;
     private final BlockBuilder indexBlockBuilder;
+
+    // with a partitioned index, indexBlockBuilder holds the current partition and this builder
+    // maps the last key of every written partition to its handle
+    private final BlockBuilder topLevelIndexBuilder;
     private Slice lastKey;
     private final UserComparator userComparator;
 
     private long entryCount;
 
+    // statistics for the properties block
+    private final EntryClassifier entryClassifier;
+    private long deletionCount;
+    private long rangeDeletionCount;
+    private long rawKeySize;
+    private long rawValueSize;
+    private long blobValueSize;
+    private long dataBlockCount;
+    private long dataSize;
+    private long rawDataSize;
+    private TableProperties properties;
+
     // Either Finish() or Abandon() has been called.
     private boolean closed;
 
@@ -65,12 +104,46 @@ public class TableBuilder {
     // blocks.
     private boolean pendingIndexEntry;
     private BlockHandle pendingHandle;  // Handle to add to index block
+    private Slice indexLastKey;
 
     private Slice compressedOutput;
 
+    // When set, data blocks are compressed on this executor.  The blocks are queued in file order
+    // and each is written, and its index entry added, once it is compressed and its index key is
+    // known, so the file is identical to one built without the executor.
+    private final Executor compressionExecutor;
+    private final int maxPendingBlocks;
+    private final ArrayDeque<PendingBlock> pendingBlocks = new ArrayDeque<>();
+    private long pendingRawSize;
+
+    // created when the first range deletion is added
+    private BlockBuilder rangeDeletionBlockBuilder;
+
+    // position is the size of the table written so far, including the bytes still in writeBuffer
     private long position;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    // when positive, the written data is synced every bytesPerSync bytes rather than all at the end
+    private final long bytesPerSync;
+    private long syncedPosition;
 
     public TableBuilder(Options options, FileChannel fileChannel, UserComparator userComparator) {
+        this(options, fileChannel, userComparator, null);
+    }
+
+    /**
+     * @param compressionExecutor executor compressing the data blocks, or null to compress them on
+     * the calling thread
+     */
+    public TableBuilder(Options options, FileChannel fileChannel, UserComparator userComparator, Executor compressionExecutor) {
+        this(options, fileChannel, userComparator, compressionExecutor, null);
+    }
+
+    /**
+     * @param entryClassifier counts deletions and blob values for the table properties, or null to
+     * leave them at zero
+     */
+    public TableBuilder(Options options, FileChannel fileChannel, UserComparator userComparator, Executor compressionExecutor, EntryClassifier entryClassifier) {
         requireNonNull(options, "options is null");
         requireNonNull(fileChannel, "fileChannel is null");
         try {
@@ -81,16 +154,22 @@ public class TableBuilder {
 
         this.fileChannel = fileChannel;
         this.userComparator = userComparator;
+        this.entryClassifier = entryClassifier;
 
         blockRestartInterval = options.blockRestartInterval();
         blockSize = options.blockSize();
         compressionType = options.compressionType();
+        this.compressionExecutor = compressionType == CompressionType.NONE ? null : compressionExecutor;
+        maxPendingBlocks = Math.max(2 * options.compressionThreads(), 1);
+        bytesPerSync = options.bytesPerSync();
 
-        dataBlockBuilder = new BlockBuilder((int) Math.min(blockSize * 1.1, TARGET_FILE_SIZE), blockRestartInterval, userComparator);
+        dataBlockBuilder = new BlockBuilder((int) Math.min(blockSize * 1.1, TARGET_FILE_SIZE), blockRestartInterval, userComparator,
+                options.blockHashIndex() && userComparator.canHashKeys());
 
         // with expected 50% compression
         int expectedNumberOfBlocks = 1024;
         indexBlockBuilder = new BlockBuilder(BlockHandle.MAX_ENCODED_LENGTH * expectedNumberOfBlocks, 1, userComparator);
+        topLevelIndexBuilder = options.partitionedIndex() ? new BlockBuilder(256, 1, userComparator) : null;
 
         lastKey = Slices.EMPTY_SLICE;
     }
@@ -99,8 +178,18 @@ public class TableBuilder {
         return entryCount;
     }
 
+    /**
+     * Returns the statistics written to the table.
+     * REQUIRES: finish() has been called
+     */
+    public TableProperties getProperties() {
+        checkState(properties != null, "table is not finished");
+        return properties;
+    }
+
     public long getFileSize() throws IOException {
-        return position + dataBlockBuilder.currentSizeEstimate();
+        // blocks still being compressed are counted at their uncompressed size
+        return position + pendingRawSize + dataBlockBuilder.currentSizeEstimate();
     }
 
     public void add(BlockEntry blockEntry) throws IOException {
@@ -124,8 +213,12 @@ public class TableBuilder {
 
             Slice shortestSeparator = userComparator.findShortestSeparator(lastKey, key);
 
-            Slice handleEncoding = BlockHandle.writeBlockHandle(pendingHandle);
-            indexBlockBuilder.add(shortestSeparator, handleEncoding);
+            if (compressionExecutor != null) {
+                pendingBlocks.getLast().indexKey = shortestSeparator;
+                writePendingBlocks(false);
+            } else {
+                addIndexEntry(shortestSeparator, pendingHandle);
+            }
             pendingIndexEntry = false;
         }
 
@@ -133,6 +226,15 @@ public class TableBuilder {
         entryCount++;
         dataBlockBuilder.add(key, value);
 
+        rawKeySize += key.length();
+        rawValueSize += value.length();
+        if (entryClassifier != null) {
+            if (entryClassifier.isDeletion(key, value)) {
+                deletionCount++;
+            }
+            blobValueSize += entryClassifier.getBlobValueSize(key, value);
+        }
+
         int estimatedBlockSize = dataBlockBuilder.currentSizeEstimate();
         if (estimatedBlockSize >= blockSize) {
             flush();
@@ -147,19 +249,77 @@ public class TableBuilder {
 
         checkState(!pendingIndexEntry, "Internal error: Table already has a pending index entry to flush");
 
-        pendingHandle = writeBlock(dataBlockBuilder);
+        Slice raw = dataBlockBuilder.finish();
+        rawDataSize += raw.length();
+        dataBlockCount++;
         pendingIndexEntry = true;
+        if (compressionExecutor != null) {
+            // the builder reuses its buffer, so the task compresses a copy
+            PendingBlock pendingBlock = new PendingBlock(raw.copySlice(), compressionType);
+            dataBlockBuilder.reset();
+            pendingBlocks.addLast(pendingBlock);
+            pendingRawSize += pendingBlock.rawSize;
+            compressionExecutor.execute(pendingBlock.compressed);
+        } else {
+            pendingHandle = writeBlock(dataBlockBuilder);
+            dataSize += pendingHandle.getDataSize();
+        }
+    }
+
+    /**
+     * Writes the queued data blocks, in order, that are compressed and whose index key is known.
+     * Waits for the oldest block when too many are queued, or for all of them when finishing.
+     */
+    private void writePendingBlocks(boolean finishing) throws IOException {
+        while (!pendingBlocks.isEmpty()) {
+            PendingBlock pendingBlock = pendingBlocks.getFirst();
+            if (pendingBlock.indexKey == null) {
+                return;
+            }
+            if (!finishing && !pendingBlock.compressed.isDone() && pendingBlocks.size() <= maxPendingBlocks) {
+                return;
+            }
+            pendingBlocks.removeFirst();
+            pendingRawSize -= pendingBlock.rawSize;
+
+            CompressedBlock compressedBlock;
+            try {
+                compressedBlock = Uninterruptibles.getUninterruptibly(pendingBlock.compressed);
+            } catch (ExecutionException e) {
+                Throwable cause = e;
+                if (e.getCause() != null) {
+                    cause = e.getCause();
+                }
+                throw Throwables.propagate(cause);
+            }
+            BlockHandle blockHandle = writeCompressedBlock(compressedBlock);
+            dataSize += blockHandle.getDataSize();
+            addIndexEntry(pendingBlock.indexKey, blockHandle);
+        }
     }
 
     private BlockHandle writeBlock(BlockBuilder blockBuilder) throws IOException {
         // close the block
-        Slice raw = blockBuilder.finish();
+        BlockHandle blockHandle = writeRawBlock(blockBuilder.finish());
+
+        // clean up state
+        blockBuilder.reset();
+
+        return blockHandle;
+    }
+
+    private BlockHandle writeRawBlock(Slice raw) throws IOException {
+        if (compressionType == CompressionType.SNAPPY) {
+            ensureCompressedOutputCapacity(maxCompressedLength(raw.length()));
+        }
+        return writeCompressedBlock(compressBlock(raw, compressionType, compressedOutput));
+    }
 
+    private static CompressedBlock compressBlock(Slice raw, CompressionType compressionType, Slice compressedOutput) {
         // attempt to compress the block
         Slice blockContents = raw;
         CompressionType blockCompressionType = CompressionType.NONE;
         if (compressionType == CompressionType.SNAPPY) {
-            ensureCompressedOutputCapacity(maxCompressedLength(raw.length()));
             try {
                 int compressedSize = Snappy.compress(raw.getRawArray(), raw.getRawOffset(), raw.length(), compressedOutput.getRawArray(), 0);
 
@@ -177,18 +337,59 @@ public class TableBuilder {
         BlockTrailer blockTrailer = new BlockTrailer(blockCompressionType, crc32c(blockContents, blockCompressionType));
         Slice trailer = BlockTrailer.writeBlockTrailer(blockTrailer);
 
+        return new CompressedBlock(blockContents, trailer);
+    }
+
+    private BlockHandle writeCompressedBlock(CompressedBlock compressedBlock) throws IOException {
         // create a handle to this block
-        BlockHandle blockHandle = new BlockHandle(position, blockContents.length());
+        BlockHandle blockHandle = new BlockHandle(position, compressedBlock.contents.length());
 
         // write data and trailer
-        position += fileChannel.write(new ByteBuffer[]{blockContents.toByteBuffer(), trailer.toByteBuffer()});
-
-        // clean up state
-        blockBuilder.reset();
+        write(compressedBlock.contents);
+        write(compressedBlock.trailer);
 
         return blockHandle;
     }
 
+    private void write(Slice data) throws IOException {
+        if (data.length() > writeBuffer.remaining()) {
+            flushWriteBuffer();
+        }
+        if (data.length() >= writeBuffer.capacity()) {
+            // too large to be worth copying, write it through
+            ByteBuffer buffer = data.toByteBuffer();
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+            position += data.length();
+            syncWrittenData();
+        } else {
+            writeBuffer.put(data.getRawArray(), data.getRawOffset(), data.length());
+            position += data.length();
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            fileChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        syncWrittenData();
+    }
+
+    private void syncWrittenData() throws IOException {
+        if (bytesPerSync <= 0) {
+            return;
+        }
+        long writtenPosition = position - writeBuffer.position();
+        if (writtenPosition - syncedPosition >= bytesPerSync) {
+            // only the pages dirtied since the last sync are written back
+            fileChannel.force(false);
+            syncedPosition = writtenPosition;
+        }
+    }
+
     private static int maxCompressedLength(int length) {
         // Compressed data can be defined as:
         //    compressed := item* literal*
@@ -213,41 +414,105 @@ public class TableBuilder {
         return 32 + length + (length / 6);
     }
 
+    /**
+     * Adds a range deletion, keyed by its encoded start key with the end user key as the value.
+     * Range deletions must be added in key order but are independent of the point entries.
+     */
+    public void addRangeTombstone(Slice key, Slice value) {
+        requireNonNull(key, "key is null");
+        requireNonNull(value, "value is null");
+        checkState(!closed, "table is finished");
+
+        if (rangeDeletionBlockBuilder == null) {
+            rangeDeletionBlockBuilder = new BlockBuilder(256, blockRestartInterval, userComparator);
+        }
+        rangeDeletionBlockBuilder.add(key, value);
+        rangeDeletionCount++;
+    }
+
     public void finish() throws IOException {
         checkState(!closed, "table is finished");
 
         // flush current data block
         flush();
 
+        // write the data blocks still being compressed
+        if (compressionExecutor != null && pendingIndexEntry) {
+            pendingBlocks.getLast().indexKey = userComparator.findShortSuccessor(lastKey);
+            pendingIndexEntry = false;
+        }
+        writePendingBlocks(true);
+
         // mark table as closed
         closed = true;
 
-        // write (empty) meta index block
+        // write properties block
+        properties = new TableProperties(entryCount, deletionCount, rangeDeletionCount, rawKeySize, rawValueSize, blobValueSize, dataBlockCount, dataSize, rawDataSize, System.currentTimeMillis(),
+                topLevelIndexBuilder != null ? TableProperties.PARTITIONED_INDEX : TableProperties.BINARY_SEARCH_INDEX);
+        BlockHandle propertiesBlockHandle = writeRawBlock(properties.encode());
+
+        // write range deletion block
+        BlockHandle rangeDeletionBlockHandle = null;
+        if (rangeDeletionBlockBuilder != null) {
+            rangeDeletionBlockHandle = writeBlock(rangeDeletionBlockBuilder);
+        }
+
+        // write meta index block
         BlockBuilder metaIndexBlockBuilder = new BlockBuilder(256, blockRestartInterval, new BytewiseComparator());
-        // TODO(postrelease): Add stats and other meta blocks
+        metaIndexBlockBuilder.add(Slices.copiedBuffer(PROPERTIES_META_KEY, UTF_8), BlockHandle.writeBlockHandle(propertiesBlockHandle));
+        if (rangeDeletionBlockHandle != null) {
+            metaIndexBlockBuilder.add(Slices.copiedBuffer(RANGE_DELETION_META_KEY, UTF_8), BlockHandle.writeBlockHandle(rangeDeletionBlockHandle));
+        }
         BlockHandle metaindexBlockHandle = writeBlock(metaIndexBlockBuilder);
 
         // add last handle to index block
         if (pendingIndexEntry) {
             Slice shortSuccessor = userComparator.findShortSuccessor(lastKey);
 
-            Slice handleEncoding = BlockHandle.writeBlockHandle(pendingHandle);
-            indexBlockBuilder.add(shortSuccessor, handleEncoding);
+            addIndexEntry(shortSuccessor, pendingHandle);
             pendingIndexEntry = false;
         }
 
         // write index block
-        BlockHandle indexBlockHandle = writeBlock(indexBlockBuilder);
+        BlockHandle indexBlockHandle;
+        if (topLevelIndexBuilder != null) {
+            if (!indexBlockBuilder.isEmpty()) {
+                writeIndexPartition(indexLastKey);
+            }
+            indexBlockHandle = writeBlock(topLevelIndexBuilder);
+        } else {
+            indexBlockHandle = writeBlock(indexBlockBuilder);
+        }
 
         // write footer
         Footer footer = new Footer(metaindexBlockHandle, indexBlockHandle);
         Slice footerEncoding = Footer.writeFooter(footer);
-        position += fileChannel.write(footerEncoding.toByteBuffer());
+        write(footerEncoding);
+        flushWriteBuffer();
+    }
+
+    private void addIndexEntry(Slice key, BlockHandle blockHandle) throws IOException {
+        indexBlockBuilder.add(key, BlockHandle.writeBlockHandle(blockHandle));
+        indexLastKey = key;
+        if (topLevelIndexBuilder != null && indexBlockBuilder.currentSizeEstimate() >= blockSize) {
+            writeIndexPartition(key);
+        }
+    }
+
+    private void writeIndexPartition(Slice lastKey) throws IOException {
+        BlockHandle partitionHandle = writeBlock(indexBlockBuilder);
+        topLevelIndexBuilder.add(lastKey, BlockHandle.writeBlockHandle(partitionHandle));
     }
 
     public void abandon() {
         checkState(!closed, "table is finished");
         closed = true;
+        for (PendingBlock pendingBlock : pendingBlocks) {
+            pendingBlock.compressed.cancel(false);
+        }
+        pendingBlocks.clear();
+        pendingRawSize = 0;
+        writeBuffer.clear();
     }
 
     public static int crc32c(Slice data, CompressionType type) {
@@ -263,4 +528,36 @@ public class TableBuilder {
         }
         compressedOutput = Slices.allocate(capacity);
     }
+
+    private static final class CompressedBlock {
+        private final Slice contents;
+        private final Slice trailer;
+
+        private CompressedBlock(Slice contents, Slice trailer) {
+            this.contents = contents;
+            this.trailer = trailer;
+        }
+    }
+
+    private static final class PendingBlock {
+        private final int rawSize;
+        private final FutureTask<CompressedBlock> compressed;
+
+        // key of the block's index entry, known once the first key of the next block is added
+        private Slice indexKey;
+
+        private PendingBlock(final Slice raw, final CompressionType compressionType) {
+            this.rawSize = raw.length();
+            this.compressed = new FutureTask<>(new Callable<CompressedBlock>() {
+                @Override
+                public CompressedBlock call() {
+                    Slice compressedOutput = null;
+                    if (compressionType == CompressionType.SNAPPY) {
+                        compressedOutput = Slices.allocate(maxCompressedLength(raw.length()));
+                    }
+                    return compressBlock(raw, compressionType, compressedOutput);
+                }
+            });
+        }
+    }
 }
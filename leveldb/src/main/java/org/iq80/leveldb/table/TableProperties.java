@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.table;
+
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.SliceOutput;
+import org.iq80.leveldb.util.Slices;
+import org.iq80.leveldb.util.VariableLengthQuantity;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Statistics about a table collected while it is built and stored in the properties meta block.
+ * The block maps property names to varint values, so readers skip names they do not know and
+ * treat missing ones as zero.
+ */
+public class TableProperties {
+    public static final String ENTRY_COUNT = "leveldb.num.entries";
+    public static final String DELETION_COUNT = "leveldb.num.deletions";
+    public static final String RANGE_DELETION_COUNT = "leveldb.num.range.deletions";
+    public static final String RAW_KEY_SIZE = "leveldb.raw.key.size";
+    public static final String RAW_VALUE_SIZE = "leveldb.raw.value.size";
+    public static final String BLOB_VALUE_SIZE = "leveldb.blob.value.size";
+    public static final String DATA_BLOCK_COUNT = "leveldb.num.data.blocks";
+    public static final String DATA_SIZE = "leveldb.data.size";
+    public static final String RAW_DATA_SIZE = "leveldb.raw.data.size";
+    public static final String CREATION_TIME = "leveldb.creation.time";
+    public static final String INDEX_TYPE = "leveldb.index.type";
+
+    /**
+     * Values of {@link #INDEX_TYPE}; tables without the property have a single index block.
+     */
+    public static final long BINARY_SEARCH_INDEX = 0;
+    public static final long PARTITIONED_INDEX = 1;
+
+    private final long entryCount;
+    private final long deletionCount;
+    private final long rangeDeletionCount;
+    private final long rawKeySize;
+    private final long rawValueSize;
+    private final long blobValueSize;
+    private final long dataBlockCount;
+    private final long dataSize;
+    private final long rawDataSize;
+    private final long creationTime;
+    private final long indexType;
+
+    public TableProperties(long entryCount, long deletionCount, long rangeDeletionCount, long rawKeySize, long rawValueSize, long blobValueSize, long dataBlockCount, long dataSize, long rawDataSize, long creationTime, long indexType) {
+        this.entryCount = entryCount;
+        this.deletionCount = deletionCount;
+        this.rangeDeletionCount = rangeDeletionCount;
+        this.rawKeySize = rawKeySize;
+        this.rawValueSize = rawValueSize;
+        this.blobValueSize = blobValueSize;
+        this.dataBlockCount = dataBlockCount;
+        this.dataSize = dataSize;
+        this.rawDataSize = rawDataSize;
+        this.creationTime = creationTime;
+        this.indexType = indexType;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Number of deletion markers in the table.
+     */
+    public long getDeletionCount() {
+        return deletionCount;
+    }
+
+    /**
+     * Number of range deletions in the range deletion meta block; they are not counted as entries.
+     */
+    public long getRangeDeletionCount() {
+        return rangeDeletionCount;
+    }
+
+    public long getRawKeySize() {
+        return rawKeySize;
+    }
+
+    /**
+     * Bytes of values as stored in the table; values moved to blob files count the size of their
+     * pointer.
+     */
+    public long getRawValueSize() {
+        return rawValueSize;
+    }
+
+    /**
+     * Bytes of the blob file values the table points at.
+     */
+    public long getBlobValueSize() {
+        return blobValueSize;
+    }
+
+    public long getDataBlockCount() {
+        return dataBlockCount;
+    }
+
+    /**
+     * Bytes of data blocks as written to the file, after compression.
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Bytes of data blocks before compression.
+     */
+    public long getRawDataSize() {
+        return rawDataSize;
+    }
+
+    /**
+     * Time the table was written in milliseconds since the epoch, or 0 when it is unknown because
+     * the table predates this property.
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * How the index block is organized, either {@link #BINARY_SEARCH_INDEX} or {@link #PARTITIONED_INDEX}.
+     */
+    public long getIndexType() {
+        return indexType;
+    }
+
+    public boolean isPartitionedIndex() {
+        return indexType == PARTITIONED_INDEX;
+    }
+
+    public double getCompressionRatio() {
+        if (dataSize == 0) {
+            return 1.0;
+        }
+        return 1.0 * rawDataSize / dataSize;
+    }
+
+    public double getDeletionRatio() {
+        if (entryCount == 0) {
+            return 0;
+        }
+        return 1.0 * deletionCount / entryCount;
+    }
+
+    public Slice encode() {
+        Map<String, Long> properties = new TreeMap<>();
+        properties.put(ENTRY_COUNT, entryCount);
+        properties.put(DELETION_COUNT, deletionCount);
+        properties.put(RANGE_DELETION_COUNT, rangeDeletionCount);
+        properties.put(RAW_KEY_SIZE, rawKeySize);
+        properties.put(RAW_VALUE_SIZE, rawValueSize);
+        properties.put(BLOB_VALUE_SIZE, blobValueSize);
+        properties.put(DATA_BLOCK_COUNT, dataBlockCount);
+        properties.put(DATA_SIZE, dataSize);
+        properties.put(RAW_DATA_SIZE, rawDataSize);
+        properties.put(CREATION_TIME, creationTime);
+        properties.put(INDEX_TYPE, indexType);
+
+        BlockBuilder blockBuilder = new BlockBuilder(256, 16, new BytewiseComparator());
+        Slice value = Slices.allocate(10);
+        for (Entry<String, Long> property : properties.entrySet()) {
+            SliceOutput valueOutput = value.output();
+            VariableLengthQuantity.writeVariableLengthLong(property.getValue(), valueOutput);
+            blockBuilder.add(Slices.copiedBuffer(property.getKey(), UTF_8), value.slice(0, valueOutput.size()));
+        }
+        return blockBuilder.finish();
+    }
+
+    public static TableProperties decode(Block block) {
+        requireNonNull(block, "block is null");
+        Map<String, Long> properties = new TreeMap<>();
+        for (Entry<Slice, Slice> entry : block) {
+            properties.put(entry.getKey().toString(UTF_8), VariableLengthQuantity.readVariableLengthLong(entry.getValue().input()));
+        }
+        return new TableProperties(
+                get(properties, ENTRY_COUNT),
+                get(properties, DELETION_COUNT),
+                get(properties, RANGE_DELETION_COUNT),
+                get(properties, RAW_KEY_SIZE),
+                get(properties, RAW_VALUE_SIZE),
+                get(properties, BLOB_VALUE_SIZE),
+                get(properties, DATA_BLOCK_COUNT),
+                get(properties, DATA_SIZE),
+                get(properties, RAW_DATA_SIZE),
+                get(properties, CREATION_TIME),
+                get(properties, INDEX_TYPE));
+    }
+
+    private static long get(Map<String, Long> properties, String name) {
+        Long value = properties.get(name);
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("TableProperties");
+        sb.append("{entryCount=").append(entryCount);
+        sb.append(", deletionCount=").append(deletionCount);
+        sb.append(", rangeDeletionCount=").append(rangeDeletionCount);
+        sb.append(", rawKeySize=").append(rawKeySize);
+        sb.append(", rawValueSize=").append(rawValueSize);
+        sb.append(", blobValueSize=").append(blobValueSize);
+        sb.append(", dataBlockCount=").append(dataBlockCount);
+        sb.append(", dataSize=").append(dataSize);
+        sb.append(", rawDataSize=").append(rawDataSize);
+        sb.append(", creationTime=").append(creationTime);
+        sb.append(", indexType=").append(indexType);
+        sb.append('}');
+        return sb.toString();
+    }
+}
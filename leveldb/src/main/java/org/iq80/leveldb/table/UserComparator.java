@@ -25,7 +25,25 @@ import java.util.Comparator;
 public interface UserComparator extends Comparator<Slice> {
     String name();
 
+    /**
+     * Compares {@code left[leftIndex, leftIndex + leftLength)} to
+     * {@code right[rightIndex, rightIndex + rightLength)} without slicing either key.
+     */
+    int compare(Slice left, int leftIndex, int leftLength, Slice right, int rightIndex, int rightLength);
+
     Slice findShortestSeparator(Slice start, Slice limit);
 
     Slice findShortSuccessor(Slice key);
+
+    /**
+     * Returns the part of the key that all entries a point lookup of the key may find have in
+     * common, which data block hash indexes hash.
+     */
+    Slice hashKey(Slice key);
+
+    /**
+     * Returns true if keys that compare equal have identical hash keys, which data block hash
+     * indexes require; tables ordered by other comparators are written and read without them.
+     */
+    boolean canHashKeys();
 }
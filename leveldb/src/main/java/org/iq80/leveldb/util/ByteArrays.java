@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.util;
+
+import com.google.common.base.Throwables;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+
+/**
+ * Unsigned comparison of byte array regions eight bytes at a time.  The words are read with
+ * {@code sun.misc.Unsafe}, reached reflectively so the build does not depend on it, where it is
+ * available and the platform tolerates unaligned reads, and byte by byte otherwise.
+ */
+public final class ByteArrays {
+    // Unsafe.getLong(Object, long) bound to the Unsafe instance, or null
+    private static final MethodHandle GET_LONG;
+    private static final long BYTE_ARRAY_BASE_OFFSET;
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    static {
+        MethodHandle getLong = null;
+        long baseOffset = 0;
+        String arch = System.getProperty("os.arch");
+        if ("amd64".equals(arch) || "x86_64".equals(arch) || "aarch64".equals(arch)) {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                int indexScale = (Integer) unsafeClass.getMethod("arrayIndexScale", Class.class).invoke(unsafe, byte[].class);
+                if (indexScale == 1) {
+                    baseOffset = (Integer) unsafeClass.getMethod("arrayBaseOffset", Class.class).invoke(unsafe, byte[].class);
+                    getLong = MethodHandles.lookup()
+                            .findVirtual(unsafeClass, "getLong", MethodType.methodType(long.class, Object.class, long.class))
+                            .bindTo(unsafe);
+                }
+            } catch (Exception | LinkageError e) {
+                // fall back to comparing byte by byte
+                getLong = null;
+            }
+        }
+        GET_LONG = getLong;
+        BYTE_ARRAY_BASE_OFFSET = baseOffset;
+    }
+
+    private ByteArrays() {
+    }
+
+    /**
+     * Returns the index of the first byte that differs between {@code left[leftOffset, leftOffset + length)}
+     * and {@code right[rightOffset, rightOffset + length)}, or {@code length} if the regions are equal.
+     * The regions must be within their arrays.
+     */
+    public static int mismatch(byte[] left, int leftOffset, byte[] right, int rightOffset, int length) {
+        int i = 0;
+        if (GET_LONG != null) {
+            long leftAddress = BYTE_ARRAY_BASE_OFFSET + leftOffset;
+            long rightAddress = BYTE_ARRAY_BASE_OFFSET + rightOffset;
+            for (; i + SizeOf.SIZE_OF_LONG <= length; i += SizeOf.SIZE_OF_LONG) {
+                long leftWord = getLong(left, leftAddress + i);
+                long rightWord = getLong(right, rightAddress + i);
+                if (leftWord != rightWord) {
+                    long difference = leftWord ^ rightWord;
+                    int bit = LITTLE_ENDIAN ? Long.numberOfTrailingZeros(difference) : Long.numberOfLeadingZeros(difference);
+                    return i + (bit >>> 3);
+                }
+            }
+        }
+        for (; i < length; i++) {
+            if (left[leftOffset + i] != right[rightOffset + i]) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static long getLong(byte[] array, long address) {
+        try {
+            return (long) GET_LONG.invokeExact((Object) array, address);
+        } catch (Throwable e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Compares two regions byte by byte using an unsigned comparison; a region that is a prefix of
+     * the other sorts first.
+     */
+    public static int compareUnsigned(byte[] left, int leftOffset, int leftLength, byte[] right, int rightOffset, int rightLength) {
+        int minLength = Math.min(leftLength, rightLength);
+        int index = mismatch(left, leftOffset, right, rightOffset, minLength);
+        if (index == minLength) {
+            return leftLength - rightLength;
+        }
+        return (0xFF & left[leftOffset + index]) - (0xFF & right[rightOffset + index]);
+    }
+}
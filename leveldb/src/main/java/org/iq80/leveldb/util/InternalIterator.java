@@ -25,4 +25,9 @@ import org.iq80.leveldb.impl.SeekingIterator;
  *
  * @author <a href="http://hiramchirino.com">Hiram Chirino</a>
  */
-public interface InternalIterator extends SeekingIterator<InternalKey, Slice> {}
+public interface InternalIterator extends SeekingIterator<InternalKey, Slice> {
+    /**
+     * Releases the tables the iterator reads.  The iterator must not be used afterwards.
+     */
+    void close();
+}
@@ -19,35 +19,81 @@ package org.iq80.leveldb.util;
 
 import com.google.common.collect.Maps;
 import org.iq80.leveldb.impl.InternalKey;
+import org.iq80.leveldb.table.Table;
 
 import java.util.Map.Entry;
 
+import static com.google.common.base.Preconditions.checkState;
+
 public class InternalTableIterator extends AbstractSeekingIterator<InternalKey, Slice> implements InternalIterator {
     private final TableIterator tableIterator;
+    private final Table table;
+    private final long globalSequenceNumber;
+    private boolean closed;
 
     public InternalTableIterator(TableIterator tableIterator) {
+        this(tableIterator, null);
+    }
+
+    /**
+     * @param table table whose reference is released when the iterator is closed, or null
+     */
+    public InternalTableIterator(TableIterator tableIterator, Table table) {
+        this(tableIterator, table, 0);
+    }
+
+    /**
+     * @param globalSequenceNumber sequence number given to every entry of a table whose keys are
+     * stored with sequence number 0, or 0 to return the keys as stored
+     */
+    public InternalTableIterator(TableIterator tableIterator, Table table, long globalSequenceNumber) {
         this.tableIterator = tableIterator;
+        this.table = table;
+        this.globalSequenceNumber = globalSequenceNumber;
     }
 
     @Override
     protected void seekToFirstInternal() {
+        checkState(!closed, "Iterator is closed");
         tableIterator.seekToFirst();
     }
 
     @Override
     public void seekInternal(InternalKey targetKey) {
+        checkState(!closed, "Iterator is closed");
         tableIterator.seek(targetKey.encode());
+        if (globalSequenceNumber > targetKey.getSequenceNumber() && tableIterator.hasNext()
+                && new InternalKey(tableIterator.peek().getKey()).getUserKey().equals(targetKey.getUserKey())) {
+            // stored with sequence number 0, the entry of the target user key sorts after the
+            // target, but with its global sequence number it sorts before
+            tableIterator.next();
+        }
     }
 
     @Override
     protected Entry<InternalKey, Slice> getNextElement() {
+        checkState(!closed, "Iterator is closed");
         if (tableIterator.hasNext()) {
             Entry<Slice, Slice> next = tableIterator.next();
-            return Maps.immutableEntry(new InternalKey(next.getKey()), next.getValue());
+            InternalKey key = new InternalKey(next.getKey());
+            if (globalSequenceNumber != 0) {
+                key = new InternalKey(key.getUserKey(), globalSequenceNumber, key.getValueType());
+            }
+            return Maps.immutableEntry(key, next.getValue());
         }
         return null;
     }
 
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (table != null) {
+                table.release();
+            }
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
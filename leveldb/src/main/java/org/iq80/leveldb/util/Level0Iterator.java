@@ -22,39 +22,49 @@ import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.Iterables;
 import org.iq80.leveldb.impl.FileMetaData;
 import org.iq80.leveldb.impl.InternalKey;
-import org.iq80.leveldb.impl.SeekingIterator;
 import org.iq80.leveldb.impl.TableCache;
 
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
 
 public final class Level0Iterator extends AbstractSeekingIterator<InternalKey, Slice> implements InternalIterator {
     private final List<InternalTableIterator> inputs;
-    private final PriorityQueue<ComparableIterator> priorityQueue;
+    private final LoserTree<InternalKey, Slice> loserTree;
     private final Comparator<InternalKey> comparator;
 
     public Level0Iterator(TableCache tableCache, List<FileMetaData> files, Comparator<InternalKey> comparator) {
+        this(tableCache, files, comparator, false);
+    }
+
+    /**
+     * @param sequential whether the files are read front to back, as by compaction, so reading ahead pays off
+     */
+    public Level0Iterator(TableCache tableCache, List<FileMetaData> files, Comparator<InternalKey> comparator, boolean sequential) {
         Builder<InternalTableIterator> builder = ImmutableList.builder();
-        for (FileMetaData file : files) {
-            builder.add(tableCache.newIterator(file));
+        try {
+            for (FileMetaData file : files) {
+                builder.add(sequential ? tableCache.newSequentialIterator(file) : tableCache.newIterator(file));
+            }
+        } catch (RuntimeException e) {
+            for (InternalTableIterator input : builder.build()) {
+                input.close();
+            }
+            throw e;
         }
         this.inputs = builder.build();
         this.comparator = comparator;
 
-        this.priorityQueue = new PriorityQueue<>(Iterables.size(inputs) + 1);
-        resetPriorityQueue(comparator);
+        this.loserTree = new LoserTree<>(inputs, comparator);
+        loserTree.reset();
     }
 
     public Level0Iterator(List<InternalTableIterator> inputs, Comparator<InternalKey> comparator) {
         this.inputs = inputs;
         this.comparator = comparator;
 
-        this.priorityQueue = new PriorityQueue<>(Iterables.size(inputs));
-        resetPriorityQueue(comparator);
+        this.loserTree = new LoserTree<>(inputs, comparator);
+        loserTree.reset();
     }
 
     @Override
@@ -62,7 +72,7 @@ public final class Level0Iterator extends AbstractSeekingIterator<InternalKey, S
         for (InternalTableIterator input : inputs) {
             input.seekToFirst();
         }
-        resetPriorityQueue(comparator);
+        loserTree.reset();
     }
 
     @Override
@@ -70,29 +80,19 @@ public final class Level0Iterator extends AbstractSeekingIterator<InternalKey, S
         for (InternalTableIterator input : inputs) {
             input.seek(targetKey);
         }
-        resetPriorityQueue(comparator);
+        loserTree.reset();
     }
 
-    private void resetPriorityQueue(Comparator<InternalKey> comparator) {
-        int i = 0;
-        for (InternalTableIterator input : inputs) {
-            if (input.hasNext()) {
-                priorityQueue.add(new ComparableIterator(input, comparator, i++, input.next()));
-            }
-        }
+    @Override
+    protected Entry<InternalKey, Slice> getNextElement() {
+        return loserTree.next();
     }
 
     @Override
-    protected Entry<InternalKey, Slice> getNextElement() {
-        Entry<InternalKey, Slice> result = null;
-        ComparableIterator nextIterator = priorityQueue.poll();
-        if (nextIterator != null) {
-            result = nextIterator.next();
-            if (nextIterator.hasNext()) {
-                priorityQueue.add(nextIterator);
-            }
+    public void close() {
+        for (InternalTableIterator input : inputs) {
+            input.close();
         }
-        return result;
     }
 
     @Override
@@ -104,80 +104,4 @@ public final class Level0Iterator extends AbstractSeekingIterator<InternalKey, S
         sb.append('}');
         return sb.toString();
     }
-
-    private static class ComparableIterator implements Iterator<Entry<InternalKey, Slice>>, Comparable<ComparableIterator> {
-        private final SeekingIterator<InternalKey, Slice> iterator;
-        private final Comparator<InternalKey> comparator;
-        private final int ordinal;
-        private Entry<InternalKey, Slice> nextElement;
-
-        private ComparableIterator(SeekingIterator<InternalKey, Slice> iterator, Comparator<InternalKey> comparator, int ordinal, Entry<InternalKey, Slice> nextElement) {
-            this.iterator = iterator;
-            this.comparator = comparator;
-            this.ordinal = ordinal;
-            this.nextElement = nextElement;
-        }
-
-        @Override
-        public boolean hasNext() {
-            return nextElement != null;
-        }
-
-        @Override
-        public Entry<InternalKey, Slice> next() {
-            if (nextElement == null) {
-                throw new NoSuchElementException();
-            }
-
-            Entry<InternalKey, Slice> result = nextElement;
-            if (iterator.hasNext()) {
-                nextElement = iterator.next();
-            } else {
-                nextElement = null;
-            }
-            return result;
-        }
-
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-
-            ComparableIterator comparableIterator = (ComparableIterator) o;
-
-            if (ordinal != comparableIterator.ordinal) {
-                return false;
-            }
-            if (nextElement != null ? !nextElement.equals(comparableIterator.nextElement) : comparableIterator.nextElement != null) {
-                return false;
-            }
-
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            int result = ordinal;
-            result = 31 * result + (nextElement != null ? nextElement.hashCode() : 0);
-            return result;
-        }
-
-        @Override
-        public int compareTo(ComparableIterator that) {
-            int result = comparator.compare(this.nextElement.getKey(), that.nextElement.getKey());
-            if (result == 0) {
-                result = Integer.compare(this.ordinal, that.ordinal);
-            }
-            return result;
-        }
-    }
 }
@@ -29,20 +29,29 @@ public final class LevelIterator extends AbstractSeekingIterator<InternalKey, Sl
     private final TableCache tableCache;
     private final List<FileMetaData> files;
     private final InternalKeyComparator comparator;
+    private final boolean sequential;
     private InternalTableIterator current;
     private int index;
 
     public LevelIterator(TableCache tableCache, List<FileMetaData> files, InternalKeyComparator comparator) {
+        this(tableCache, files, comparator, false);
+    }
+
+    /**
+     * @param sequential whether the files are read front to back, as by compaction, so reading ahead pays off
+     */
+    public LevelIterator(TableCache tableCache, List<FileMetaData> files, InternalKeyComparator comparator, boolean sequential) {
         this.tableCache = tableCache;
         this.files = files;
         this.comparator = comparator;
+        this.sequential = sequential;
     }
 
     @Override
     protected void seekToFirstInternal() {
         // reset index to before first and clear the data iterator
         index = 0;
-        current = null;
+        closeCurrent();
     }
 
     @Override
@@ -79,12 +88,11 @@ public final class LevelIterator extends AbstractSeekingIterator<InternalKey, Sl
         }
 
         // if indexIterator does not have a next, it mean the key does not exist in this iterator
+        closeCurrent();
         if (index < files.size()) {
             // seek the current iterator to the key
             current = openNextFile();
             current.seek(targetKey);
-        } else {
-            current = null;
         }
     }
 
@@ -101,6 +109,7 @@ public final class LevelIterator extends AbstractSeekingIterator<InternalKey, Sl
             }
             if (!(currentHasNext)) {
                 if (index < files.size()) {
+                    closeCurrent();
                     current = openNextFile();
                 } else {
                     break;
@@ -113,14 +122,29 @@ public final class LevelIterator extends AbstractSeekingIterator<InternalKey, Sl
             return current.next();
         } else {
             // set current to empty iterator to avoid extra calls to user iterators
-            current = null;
+            closeCurrent();
             return null;
         }
     }
 
+    private void closeCurrent() {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeCurrent();
+    }
+
     private InternalTableIterator openNextFile() {
         FileMetaData fileMetaData = files.get(index);
         index++;
+        if (sequential) {
+            return tableCache.newSequentialIterator(fileMetaData);
+        }
         return tableCache.newIterator(fileMetaData);
     }
 
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.util;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Merges sorted inputs with a tournament tree of losers.  Each internal node remembers the input
+ * that lost the match played there and the overall winner is kept at the root, so producing the
+ * next entry replays only the matches on the path from the winner's leaf to the root: about log2(n)
+ * comparisons against the cached head entry of each input.  Entries with equal keys come out in
+ * input order.
+ */
+public final class LoserTree<K, V> {
+    private final List<? extends Iterator<? extends Entry<K, V>>> inputs;
+    private final Comparator<K> comparator;
+
+    // head entry of each input, or null once the input is exhausted
+    private final Entry<K, V>[] heads;
+
+    // tree[0] is the winner, tree[1..n-1] the loser of the match at each internal node; leaf i
+    // is at node n + i, so the parent of node j is j / 2
+    private final int[] tree;
+
+    @SuppressWarnings("unchecked")
+    public LoserTree(List<? extends Iterator<? extends Entry<K, V>>> inputs, Comparator<K> comparator) {
+        this.inputs = requireNonNull(inputs, "inputs is null");
+        this.comparator = requireNonNull(comparator, "comparator is null");
+        this.heads = new Entry[inputs.size()];
+        this.tree = new int[Math.max(inputs.size(), 1)];
+    }
+
+    /**
+     * Reads the head of every input and plays all the matches.  Must be called before the first
+     * {@link #next()} and again whenever the inputs are repositioned.
+     */
+    public void reset() {
+        int size = heads.length;
+        for (int i = 0; i < size; i++) {
+            Iterator<? extends Entry<K, V>> input = inputs.get(i);
+            heads[i] = input.hasNext() ? input.next() : null;
+        }
+        if (size == 0) {
+            return;
+        }
+
+        int[] winners = new int[2 * size];
+        for (int i = 0; i < size; i++) {
+            winners[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
+            if (beats(left, right)) {
+                winners[node] = left;
+                tree[node] = right;
+            } else {
+                winners[node] = right;
+                tree[node] = left;
+            }
+        }
+        // with a single input, node 1 is the leaf itself
+        tree[0] = winners[1];
+    }
+
+    /**
+     * Returns the smallest head entry and advances its input, or returns null when every input is
+     * exhausted.
+     */
+    public Entry<K, V> next() {
+        if (heads.length == 0) {
+            return null;
+        }
+        int winner = tree[0];
+        Entry<K, V> result = heads[winner];
+        if (result == null) {
+            return null;
+        }
+
+        Iterator<? extends Entry<K, V>> input = inputs.get(winner);
+        heads[winner] = input.hasNext() ? input.next() : null;
+
+        // replay the matches on the path from the winner's leaf to the root
+        for (int node = (heads.length + winner) >>> 1; node > 0; node >>>= 1) {
+            int loser = tree[node];
+            if (beats(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
+            }
+        }
+        tree[0] = winner;
+        return result;
+    }
+
+    private boolean beats(int left, int right) {
+        Entry<K, V> leftHead = heads[left];
+        Entry<K, V> rightHead = heads[right];
+        if (leftHead == null) {
+            return false;
+        }
+        if (rightHead == null) {
+            return true;
+        }
+        int result = comparator.compare(leftHead.getKey(), rightHead.getKey());
+        return result < 0 || (result == 0 && left < right);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * A read-only mapping of a whole file addressed with long offsets.  The file is mapped in
+ * segments, so it is not limited to the 2 GB a single {@link MappedByteBuffer} can address, and
+ * the segments are unmapped as soon as the file is closed.
+ * <p>
+ * Buffers returned by {@link #read} must not be used after the file is closed.
+ */
+public final class MappedFile implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final long size;
+    private final int segmentSize;
+    private final MappedByteBuffer[] segments;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public MappedFile(FileChannel fileChannel) throws IOException {
+        this(fileChannel, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedFile(FileChannel fileChannel, int segmentSize) throws IOException {
+        checkArgument(segmentSize > 0, "segmentSize must be positive");
+        this.size = fileChannel.size();
+        this.segmentSize = segmentSize;
+
+        int segmentCount = (int) ((size + segmentSize - 1) / segmentSize);
+        segments = new MappedByteBuffer[segmentCount];
+        try {
+            for (int i = 0; i < segmentCount; i++) {
+                long position = (long) i * segmentSize;
+                segments[i] = fileChannel.map(MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns a little endian buffer of the bytes at {@code [offset, offset + length)}.  The
+     * buffer is a view of the mapping unless the range spans two segments, in which case the bytes
+     * are copied to a new direct buffer.
+     */
+    public ByteBuffer read(long offset, int length) {
+        checkState(!closed.get(), "File is closed");
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") is outside the file of " + size + " bytes");
+        }
+
+        int segment = (int) (offset / segmentSize);
+        int position = (int) (offset % segmentSize);
+        if (length == 0 || position + length <= segmentSize) {
+            return view(segment, position, length);
+        }
+
+        ByteBuffer copy = ByteBuffer.allocateDirect(length).order(LITTLE_ENDIAN);
+        while (copy.hasRemaining()) {
+            int chunk = Math.min(copy.remaining(), segmentSize - position);
+            copy.put(view(segment, position, chunk));
+            segment++;
+            position = 0;
+        }
+        copy.flip();
+        return copy;
+    }
+
+    private ByteBuffer view(int segment, int position, int length) {
+        if (length == 0) {
+            return ByteBuffer.allocate(0).order(LITTLE_ENDIAN);
+        }
+        ByteBuffer buffer = segments[segment].duplicate();
+        buffer.limit(position + length).position(position);
+        return buffer.slice().order(LITTLE_ENDIAN);
+    }
+
+    /**
+     * Unmaps all segments.  Closing more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                ByteBufferSupport.unmap(segment);
+            }
+        }
+    }
+}
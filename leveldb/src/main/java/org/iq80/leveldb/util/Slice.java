@@ -578,12 +578,7 @@ public final class Slice implements Comparable<Slice> {
         if (offset == slice.offset && data == slice.data) {
             return true;
         }
-        for (int i = 0; i < length; i++) {
-            if (data[offset + i] != slice.data[slice.offset + i]) {
-                return false;
-            }
-        }
-        return true;
+        return ByteArrays.mismatch(data, offset, slice.data, slice.offset, length) == length;
     }
 
     @Override
@@ -605,8 +600,8 @@ public final class Slice implements Comparable<Slice> {
 
     /**
      * Compares the content of the specified buffer to the content of this
-     * buffer.  This comparison is performed byte by byte using an unsigned
-     * comparison.
+     * buffer.  This comparison is performed using an unsigned comparison,
+     * eight bytes at a time where the platform allows.
      */
     public int compareTo(Slice that) {
         if (this == that) {
@@ -616,15 +611,24 @@ public final class Slice implements Comparable<Slice> {
             return 0;
         }
 
-        int minLength = Math.min(this.length, that.length);
-        for (int i = 0; i < minLength; i++) {
-            int thisByte = 0xFF & this.data[this.offset + i];
-            int thatByte = 0xFF & that.data[that.offset + i];
-            if (thisByte != thatByte) {
-                return (thisByte) - (thatByte);
-            }
-        }
-        return this.length - that.length;
+        return ByteArrays.compareUnsigned(this.data, this.offset, this.length, that.data, that.offset, that.length);
+    }
+
+    /**
+     * Returns the number of leading bytes this buffer shares with the specified buffer.
+     */
+    public int sharedPrefixLength(Slice that) {
+        return ByteArrays.mismatch(this.data, this.offset, that.data, that.offset, Math.min(this.length, that.length));
+    }
+
+    /**
+     * Compares a sub-region of this buffer to a sub-region of the specified buffer using an
+     * unsigned comparison, without creating views of either region.
+     */
+    public int compareTo(int index, int length, Slice that, int thatIndex, int thatLength) {
+        checkPositionIndexes(index, index + length, this.length);
+        checkPositionIndexes(thatIndex, thatIndex + thatLength, that.length);
+        return ByteArrays.compareUnsigned(this.data, this.offset + index, length, that.data, that.offset + thatIndex, thatLength);
     }
 
     /**
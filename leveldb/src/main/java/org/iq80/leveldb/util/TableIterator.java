@@ -17,20 +17,28 @@
  */
 package org.iq80.leveldb.util;
 
+import org.iq80.leveldb.impl.SeekingIterator;
 import org.iq80.leveldb.table.Block;
 import org.iq80.leveldb.table.BlockIterator;
+import org.iq80.leveldb.table.ReadaheadReader;
 import org.iq80.leveldb.table.Table;
 
 import java.util.Map.Entry;
 
 public final class TableIterator extends AbstractSeekingIterator<Slice, Slice> {
     private final Table table;
-    private final BlockIterator blockIterator;
+    private final SeekingIterator<Slice, Slice> blockIterator;
+    private final ReadaheadReader readaheadReader;
     private BlockIterator current;
 
-    public TableIterator(Table table, BlockIterator blockIterator) {
+    public TableIterator(Table table, SeekingIterator<Slice, Slice> blockIterator) {
+        this(table, blockIterator, null);
+    }
+
+    public TableIterator(Table table, SeekingIterator<Slice, Slice> blockIterator, ReadaheadReader readaheadReader) {
         this.table = table;
         this.blockIterator = blockIterator;
+        this.readaheadReader = readaheadReader;
         current = null;
     }
 
@@ -88,7 +96,7 @@ public final class TableIterator extends AbstractSeekingIterator<Slice, Slice> {
 
     private BlockIterator getNextBlock() {
         Slice blockHandle = blockIterator.next().getValue();
-        Block dataBlock = table.openBlock(blockHandle);
+        Block dataBlock = table.openBlock(blockHandle, readaheadReader);
         return dataBlock.iterator();
     }
 
@@ -20,13 +20,18 @@ package org.iq80.leveldb.impl;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.UnsignedBytes;
+import org.iq80.leveldb.AbstractDBSliceComparator;
+import org.iq80.leveldb.CompactionFilter;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBComparator;
+import org.iq80.leveldb.DBException;
 import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.MergeOperator;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.Range;
 import org.iq80.leveldb.ReadOptions;
 import org.iq80.leveldb.Snapshot;
+import org.iq80.leveldb.TtlCompactionFilter;
 import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.WriteOptions;
 import org.iq80.leveldb.util.FileUtils;
@@ -41,10 +46,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.TreeMap;
 
 import static com.google.common.collect.Maps.immutableEntry;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -188,6 +196,649 @@ public class DbImplTest
         assertEquals(db.get("foo"), "v1");
     }
 
+    @Test
+    public void testGetWithBlockHashIndex()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().blockHashIndex(true), databaseDir);
+        for (int i = 0; i < 1000; i++) {
+            db.put(key(i), "v" + i);
+        }
+        db.delete(key(7));
+        db.put(key(8), "updated");
+        db.compactMemTable();
+        for (int i = 0; i < 1000; i++) {
+            String expected = i == 7 ? null : i == 8 ? "updated" : "v" + i;
+            assertEquals(db.get(key(i)), expected);
+        }
+        assertNull(db.get("missing"));
+    }
+
+    @Test
+    public void testBlobValues()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().blobValueThreshold(100).blobMinLiveRatio(0.9), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            expected.put(key(i), i % 10 == 0 ? "small" + i : longString(1000, (char) ('a' + i % 26)));
+            db.put(key(i), expected.get(key(i)));
+        }
+
+        // flushing the memtable moves the large values into a single blob file
+        db.compactMemTable();
+        List<File> blobFiles = blobFiles();
+        assertEquals(blobFiles.size(), 1);
+        File firstBlobFile = blobFiles.get(0);
+        assertValues(db, expected);
+
+        // overwrite and delete enough values that the first blob file becomes sparse
+        for (int i = 0; i < 50; i++) {
+            expected.put(key(i), longString(500, 'z'));
+            db.put(key(i), expected.get(key(i)));
+        }
+        expected.remove(key(99));
+        db.delete(key(99));
+        db.compact("", "~");
+        assertValues(db, expected);
+
+        // garbage collection relocates the remaining values and deletes the file
+        for (int i = 0; i < 100 && firstBlobFile.exists(); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(firstBlobFile.exists());
+        assertValues(db, expected);
+
+        db.reopen();
+        assertValues(db, expected);
+    }
+
+    @Test
+    public void testDeletionTriggeredCompaction()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().compactionDeletionRatio(0.5), databaseDir);
+        for (int i = 0; i < 100; i++) {
+            db.put(key(i), "v" + i);
+        }
+        db.compactMemTable();
+        for (int i = 0; i < 100; i++) {
+            db.delete(key(i));
+        }
+        db.compactMemTable();
+
+        // the file of deletion markers is compacted although no level is over its size target
+        for (int i = 0; i < 100 && db.totalTableFiles() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(db.totalTableFiles(), 0);
+        for (int i = 0; i < 100; i++) {
+            assertNull(db.get(key(i)));
+        }
+    }
+
+    @Test
+    public void testDeletionCountsSurviveReopen()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options(), databaseDir);
+        for (int i = 0; i < 100; i++) {
+            db.put(key(i), "v" + i);
+        }
+        db.compactMemTable();
+        for (int i = 0; i < 100; i++) {
+            db.delete(key(i));
+        }
+        db.compactMemTable();
+        assertEquals(db.totalTableFiles(), 2);
+
+        // the deletion count comes from the manifest, the table is not opened to score it
+        db.reopen(new Options().compactionDeletionRatio(0.5));
+        for (int i = 0; i < 100 && db.totalTableFiles() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(db.totalTableFiles(), 0);
+    }
+
+    @Test
+    public void testAgeTriggeredCompaction()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().maxFileAge(100), databaseDir);
+        for (int i = 0; i < 100; i++) {
+            db.put(key(i), "v" + i);
+        }
+        db.compactMemTable();
+        assertEquals(db.numberOfFilesInLevel(2), 1);
+
+        // once the file is old enough the next read schedules its compaction
+        Thread.sleep(200);
+        assertEquals(db.get(key(0)), "v0");
+        for (int i = 0; i < 100 && db.numberOfFilesInLevel(2) > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(db.numberOfFilesInLevel(2), 0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(db.get(key(i)), "v" + i);
+        }
+    }
+
+    @Test
+    public void testDeleteRange()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options(), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            expected.put(key(i), "v" + i);
+            db.put(key(i), "v" + i);
+        }
+        db.compactMemTable();
+
+        // the range deletion in the memtable hides the values in the table
+        Snapshot snapshot = db.getSnapshot();
+        db.deleteRange(key(10), key(20));
+        for (int i = 10; i < 20; i++) {
+            expected.remove(key(i));
+        }
+        db.put(key(15), "again");
+        expected.put(key(15), "again");
+        assertValues(db, expected);
+        assertEquals(db.get(key(12), snapshot), "v12");
+        snapshot.close();
+
+        // flushed to a table
+        db.compactMemTable();
+        assertValues(db, expected);
+
+        // recovered from the log
+        db.db.write(db.db.createWriteBatch().deleteRange(toByteArray(key(30)), toByteArray(key(40))));
+        for (int i = 30; i < 40; i++) {
+            expected.remove(key(i));
+        }
+        db.reopen();
+        assertValues(db, expected);
+
+        // compaction drops the deleted values and the range deletions with them
+        db.compact("", "~");
+        assertValues(db, expected);
+        db.reopen();
+        assertValues(db, expected);
+    }
+
+    @Test
+    public void testMerge()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().mergeOperator(new CounterMergeOperator()), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                db.put(key(i), String.valueOf(i));
+            }
+            for (int j = 0; j < 3; j++) {
+                db.merge(key(i), "1");
+            }
+            expected.put(key(i), String.valueOf(i % 2 == 0 ? i + 3 : 3));
+        }
+        assertValues(db, expected);
+
+        // operands in a table are merged with newer operands in the memtable
+        db.compactMemTable();
+        Snapshot snapshot = db.getSnapshot();
+        db.merge(key(1), "10");
+        expected.put(key(1), "13");
+        db.delete(key(2));
+        db.merge(key(2), "5");
+        expected.put(key(2), "5");
+        assertValues(db, expected);
+        assertEquals(db.get(key(1), snapshot), "3");
+        assertEquals(db.get(key(2), snapshot), "5");
+        snapshot.close();
+
+        // recovered from the log
+        db.reopen();
+        assertValues(db, expected);
+
+        // compaction into the last level with data applies the operands to the values
+        db.compact("", "~");
+        assertValues(db, expected);
+        assertEquals(db.allEntriesFor(key(1)), asList("13"));
+        assertEquals(db.allEntriesFor(key(2)), asList("5"));
+
+        // operands compacted above the value are combined with each other
+        for (int i = 0; i < 2; i++) {
+            db.merge(key(4), "1");
+            db.compactMemTable();
+        }
+        expected.put(key(4), "9");
+        db.compactRange(0, "", "~");
+        assertValues(db, expected);
+        assertEquals(db.allEntriesFor(key(4)), asList("MERGE 2", "7"));
+
+        db.reopen();
+        assertValues(db, expected);
+    }
+
+    @Test
+    public void testCompactionFilter()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().compactionFilter(new TtlCompactionFilter()), databaseDir);
+        long now = System.currentTimeMillis();
+
+        // an older value of an expiring key lives below the levels compacted next
+        db.put(key(0), "old");
+        db.compactMemTable();
+        db.compactRange(2, "", "~");
+        assertEquals(db.numberOfFilesInLevel(3), 1);
+        db.put(key(50), "x");
+        db.compactMemTable();
+
+        for (int i = 0; i < 100; i++) {
+            long expiry = i % 2 == 0 ? now - 1000 : i % 3 == 0 ? 0 : now + 3600_000;
+            db.db.put(toByteArray(key(i)), TtlCompactionFilter.withExpiry(toByteArray("v" + i), expiry));
+        }
+        db.compactMemTable();
+        assertEquals(db.numberOfFilesInLevel(1), 1);
+        assertEquals(TtlCompactionFilter.stripExpiry(db.db.get(toByteArray(key(0)))), toByteArray("v0"));
+
+        // the expired values are removed, and the old value stays hidden behind a deletion
+        db.compactRange(1, "", "~");
+        for (int i = 0; i < 100; i++) {
+            byte[] value = db.db.get(toByteArray(key(i)));
+            if (i % 2 == 0) {
+                assertNull(value);
+            }
+            else {
+                assertEquals(TtlCompactionFilter.stripExpiry(value), toByteArray("v" + i));
+            }
+        }
+        assertEquals(db.allEntriesFor(key(0)), asList("DEL", "old"));
+
+        db.compact("", "~");
+        assertEquals(db.allEntriesFor(key(0)), asList());
+        assertEquals(db.allEntriesFor(key(1)).size(), 1);
+    }
+
+    @Test
+    public void testCompactionFilterWithoutBlobValues()
+            throws Exception
+    {
+        final Map<String, String> expected = new TreeMap<>();
+        final List<byte[]> filteredValues = new ArrayList<>();
+        CompactionFilter filter = new CompactionFilter()
+        {
+            @Override
+            public String name()
+            {
+                return "test";
+            }
+
+            @Override
+            public byte[] filter(int level, byte[] key, byte[] value)
+            {
+                filteredValues.add(value);
+                return expected.containsKey(new String(key, UTF_8)) ? value : null;
+            }
+
+            @Override
+            public boolean needsBlobValues()
+            {
+                return false;
+            }
+        };
+        DbStringWrapper db = new DbStringWrapper(new Options().blobValueThreshold(100).compactionFilter(filter), databaseDir);
+
+        // a file in level 2 keeps the next flush in level 1, where a compaction filters it
+        db.put(key(50), "x");
+        db.compactMemTable();
+        filteredValues.clear();
+        for (int i = 0; i < 100; i++) {
+            String value = longString(1000, (char) ('a' + i % 26));
+            if (i % 2 == 1) {
+                expected.put(key(i), value);
+            }
+            db.put(key(i), value);
+        }
+        db.compactMemTable();
+        assertEquals(db.numberOfFilesInLevel(1), 1);
+
+        // the filter decides from the key alone, so the blob values are never read for it
+        db.compactRange(1, "", "~");
+        assertFalse(filteredValues.isEmpty());
+        for (byte[] value : filteredValues) {
+            assertEquals(value.length, 0);
+        }
+        assertValues(db, expected);
+    }
+
+    @Test
+    public void testIngestExternalFiles()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options(), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i += 3) {
+            db.put(key(i), "old" + i);
+            expected.put(key(i), "old" + i);
+        }
+        db.compact("", "~");
+        db.put(key(3), "memtable");
+
+        File externalDir = FileUtils.createTempDir("leveldb-external");
+        try {
+            File first = new File(externalDir, "first.sst");
+            try (SstFileWriter writer = new SstFileWriter(new Options(), first)) {
+                for (int i = 0; i < 50; i++) {
+                    writer.put(toByteArray(key(i)), toByteArray("first" + i));
+                    expected.put(key(i), "first" + i);
+                }
+                writer.finish();
+            }
+            File second = new File(externalDir, "second.sst");
+            try (SstFileWriter writer = new SstFileWriter(new Options(), second)) {
+                for (int i = 50; i < 100; i++) {
+                    if (i == 60) {
+                        writer.delete(toByteArray(key(i)));
+                        expected.remove(key(i));
+                    }
+                    else {
+                        writer.put(toByteArray(key(i)), toByteArray("second" + i));
+                        expected.put(key(i), "second" + i);
+                    }
+                }
+                try {
+                    writer.put(toByteArray(key(0)), toByteArray("out of order"));
+                    fail("expected IllegalArgumentException");
+                }
+                catch (IllegalArgumentException expectedException) {
+                    // expected
+                }
+                writer.finish();
+            }
+
+            // the ingested entries are newer than the memtable, which is flushed first
+            Snapshot snapshot = db.getSnapshot();
+            db.db.ingestExternalFiles(asList(first, second));
+            assertTrue(first.exists());
+            assertValues(db, expected);
+            assertEquals(db.get(key(3), snapshot), "memtable");
+            snapshot.close();
+
+            // data written afterwards is newer than the ingested entries
+            db.put(key(1), "after");
+            expected.put(key(1), "after");
+            assertValues(db, expected);
+
+            // a file that overlaps nothing goes to the last level
+            File third = new File(externalDir, "third.sst");
+            try (SstFileWriter writer = new SstFileWriter(new Options(), third)) {
+                writer.put(toByteArray("zz"), toByteArray("last"));
+                writer.finish();
+            }
+            int fileCount = 0;
+            for (int level = 0; level < NUM_LEVELS; level++) {
+                fileCount += db.numberOfFilesInLevel(level);
+            }
+            snapshot = db.getSnapshot();
+            db.db.ingestExternalFiles(asList(third));
+            assertEquals(db.numberOfFilesInLevel(NUM_LEVELS - 1), 1);
+            expected.put("zz", "last");
+            assertValues(db, expected);
+            assertNull(db.get("zz", snapshot));
+            snapshot.close();
+
+            // the memtable, which does not overlap the file, was not flushed
+            for (int level = 0; level < NUM_LEVELS; level++) {
+                fileCount -= db.numberOfFilesInLevel(level);
+            }
+            assertEquals(fileCount, -1);
+
+            // overlapping files are rejected
+            try {
+                db.db.ingestExternalFiles(asList(first, first));
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException expectedException) {
+                // expected
+            }
+
+            db.reopen();
+            assertValues(db, expected);
+            db.compact("", "~");
+            assertValues(db, expected);
+        }
+        finally {
+            FileUtils.deleteRecursively(externalDir);
+        }
+    }
+
+    @Test
+    public void testBulkLoad()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().compressionType(NONE), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        db.put("a", "before");
+        expected.put("a", "before");
+
+        String value = longString(1000, 'v');
+        try (DbImpl.BulkLoad bulkLoad = db.db.bulkLoad()) {
+            for (int i = 0; i < 5000; i++) {
+                bulkLoad.put(toByteArray(key(i)), toByteArray(value));
+                expected.put(key(i), value);
+            }
+            try {
+                bulkLoad.put(toByteArray(key(10)), toByteArray(value));
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException expectedException) {
+                // expected
+            }
+            bulkLoad.commit();
+        }
+
+        // the keys were split into several files in the last level
+        assertTrue(db.numberOfFilesInLevel(NUM_LEVELS - 1) > 1);
+        assertEquals(db.totalTableFiles(), db.numberOfFilesInLevel(NUM_LEVELS - 1));
+        assertEquals(db.get(key(4999)), value);
+        db.put(key(1), "after");
+        expected.put(key(1), "after");
+        assertEquals(db.get(key(1)), "after");
+
+        // a load that overlaps existing data is rejected and leaves nothing behind
+        int tableFiles = db.totalTableFiles();
+        try (DbImpl.BulkLoad bulkLoad = db.db.bulkLoad()) {
+            bulkLoad.put(toByteArray(key(2)), toByteArray("overlap"));
+            bulkLoad.commit();
+            fail("expected DBException");
+        }
+        catch (DBException expectedException) {
+            // expected
+        }
+        assertEquals(db.totalTableFiles(), tableFiles);
+        assertEquals(db.get(key(2)), value);
+
+        // the loaded entries would be visible to every snapshot, so none may be open at commit
+        Snapshot snapshot = db.getSnapshot();
+        try (DbImpl.BulkLoad bulkLoad = db.db.bulkLoad()) {
+            bulkLoad.put(toByteArray("~load"), toByteArray(value));
+            bulkLoad.commit();
+            fail("expected DBException");
+        }
+        catch (DBException expectedException) {
+            // expected
+        }
+        assertEquals(db.totalTableFiles(), tableFiles);
+        assertNull(db.get("~load", snapshot));
+        snapshot.close();
+
+        db.reopen();
+        for (Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(db.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Test
+    public void testParallelCompression()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().compressionThreads(3).blockSize(256), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 3000; i++) {
+            db.put(key(i), "value" + i + longString(100, 'v'));
+            expected.put(key(i), "value" + i + longString(100, 'v'));
+        }
+        db.compact("", "~");
+        assertValues(db, expected);
+
+        db.reopen();
+        assertValues(db, expected);
+    }
+
+    @Test
+    public void testPreloadTables()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().partitionedIndex(true).blockSize(256), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            db.put(key(i), "value" + i);
+            expected.put(key(i), "value" + i);
+            if (i == 1000) {
+                db.compact("", "~");
+            }
+        }
+        db.compactMemTable();
+
+        db.reopen(new Options().partitionedIndex(true).blockSize(256).preloadLevels(NUM_LEVELS).preloadThreads(2));
+        assertValues(db, expected);
+    }
+
+    @Test
+    public void testTableCacheLimits()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options(), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        // three level 0 files, below the compaction trigger
+        for (int i = 0; i < 300; i++) {
+            db.put(key(i), "value" + i);
+            expected.put(key(i), "value" + i);
+            if (i % 100 == 99) {
+                db.compactMemTable();
+            }
+        }
+
+        // every table's index is over the limit, so only the most recently used one stays open
+        db.reopen(new Options().maxOpenFiles(20).tableCacheIndexSize(1));
+        assertValues(db, expected);
+        assertValues(db, expected);
+        Map<String, Long> stats = tableCacheStats(db);
+        assertEquals((long) stats.get("open"), 1);
+        assertTrue(stats.get("hits") > 0);
+        assertTrue(stats.get("misses") > 1);
+        assertEquals((long) stats.get("evictions"), stats.get("misses") - 1);
+        assertTrue(stats.get("index-bytes") > 0);
+
+        // without a memory limit every table stays open
+        db.reopen(new Options().maxOpenFiles(20));
+        assertValues(db, expected);
+        stats = tableCacheStats(db);
+        assertTrue(stats.get("open") > 1);
+        assertEquals((long) stats.get("evictions"), 0);
+        assertEquals(stats.get("open"), stats.get("misses"));
+    }
+
+    @Test
+    public void testMaxCompactionBytes()
+            throws Exception
+    {
+        // every compaction takes a single input file, so each manual compaction below runs in chunks
+        DbStringWrapper db = new DbStringWrapper(new Options().maxCompactionBytes(1), databaseDir);
+        Map<String, String> expected = new TreeMap<>();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 300; i++) {
+                db.put(key(i), "value" + i + "-" + round);
+                expected.put(key(i), "value" + i + "-" + round);
+            }
+            db.compactMemTable();
+            assertValues(db, expected);
+        }
+
+        assertTrue(db.numberOfFilesInLevel(0) > 1);
+        db.compactRange(0, "", "~");
+        assertEquals(db.numberOfFilesInLevel(0), 0);
+        assertValues(db, expected);
+
+        for (int level = 1; level < NUM_LEVELS - 1; level++) {
+            db.compactRange(level, "", "~");
+            assertEquals(db.numberOfFilesInLevel(level), 0);
+            assertValues(db, expected);
+        }
+        assertEquals(db.numberOfFilesInLevel(NUM_LEVELS - 1), db.totalTableFiles());
+    }
+
+    private static Map<String, Long> tableCacheStats(DbStringWrapper db)
+    {
+        Map<String, Long> stats = new HashMap<>();
+        for (String stat : db.db.getProperty("leveldb.table-cache").split(" ")) {
+            String[] parts = stat.split("=");
+            stats.put(parts[0], Long.parseLong(parts[1]));
+        }
+        return stats;
+    }
+
+    private static class CounterMergeOperator
+            implements MergeOperator
+    {
+        @Override
+        public String name()
+        {
+            return "counter";
+        }
+
+        @Override
+        public byte[] fullMerge(byte[] key, byte[] existingValue, List<byte[]> operands)
+        {
+            long value = existingValue == null ? 0 : Long.parseLong(new String(existingValue, UTF_8));
+            for (byte[] operand : operands) {
+                value += Long.parseLong(new String(operand, UTF_8));
+            }
+            return String.valueOf(value).getBytes(UTF_8);
+        }
+
+        @Override
+        public byte[] partialMerge(byte[] key, byte[] leftOperand, byte[] rightOperand)
+        {
+            return fullMerge(key, leftOperand, ImmutableList.of(rightOperand));
+        }
+    }
+
+    private List<File> blobFiles()
+    {
+        List<File> blobFiles = new ArrayList<>();
+        for (File file : Filename.listFiles(databaseDir)) {
+            if (file.getName().endsWith(".blob")) {
+                blobFiles.add(file);
+            }
+        }
+        return blobFiles;
+    }
+
+    private static void assertValues(DbStringWrapper db, Map<String, String> expected)
+            throws IOException
+    {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(db.get(key(i)), expected.get(key(i)));
+        }
+        // close the iterator so its version does not keep obsolete blob files alive
+        try (DBIterator iterator = db.db.iterator()) {
+            assertSequence(new StringDbIterator(iterator), ImmutableList.copyOf(expected.entrySet()));
+        }
+    }
+
     @Test
     public void testGetSnapshot()
             throws Exception
@@ -862,6 +1513,34 @@ public class DbImplTest
         assertFalse(seekingIterator.hasNext());
     }
 
+    @Test
+    public void testSliceComparator()
+            throws Exception
+    {
+        DbStringWrapper db = new DbStringWrapper(new Options().comparator(new ReverseDBSliceComparator()), databaseDir);
+
+        List<Entry<String, String>> entries = new ArrayList<>();
+        for (int i = 999; i >= 0; i--) {
+            entries.add(immutableEntry(key(i), "value" + i));
+        }
+        for (Entry<String, String> entry : entries) {
+            db.put(entry.getKey(), entry.getValue());
+        }
+        db.compactMemTable();
+        assertEquals(db.get(key(500)), "value500");
+
+        SeekingIterator<String, String> seekingIterator = db.iterator();
+        for (Entry<String, String> entry : entries) {
+            assertTrue(seekingIterator.hasNext());
+            assertEquals(seekingIterator.next(), entry);
+        }
+        assertFalse(seekingIterator.hasNext());
+
+        seekingIterator.seek(key(500));
+        assertEquals(seekingIterator.next(), immutableEntry(key(500), "value500"));
+        assertEquals(seekingIterator.next(), immutableEntry(key(499), "value499"));
+    }
+
     @SafeVarargs
     private final void testDb(DbStringWrapper db, Entry<String, String>... entries)
             throws IOException
@@ -989,6 +1668,41 @@ public class DbImplTest
 
     private final ArrayList<DbStringWrapper> opened = new ArrayList<>();
 
+    private static class ReverseDBSliceComparator
+            extends AbstractDBSliceComparator
+    {
+        @Override
+        public String name()
+        {
+            return "test-slice";
+        }
+
+        @Override
+        public int compare(byte[] left, int leftOffset, int leftLength, byte[] right, int rightOffset, int rightLength)
+        {
+            int minLength = Math.min(leftLength, rightLength);
+            for (int i = 0; i < minLength; i++) {
+                int result = Integer.compare(right[rightOffset + i] & 0xff, left[leftOffset + i] & 0xff);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(rightLength, leftLength);
+        }
+
+        @Override
+        public byte[] findShortestSeparator(byte[] start, int startOffset, int startLength, byte[] limit, int limitOffset, int limitLength)
+        {
+            return null;
+        }
+
+        @Override
+        public byte[] findShortSuccessor(byte[] key, int offset, int length)
+        {
+            return null;
+        }
+    }
+
     private static class ReverseDBComparator
             implements DBComparator
     {
@@ -1101,6 +1815,16 @@ public class DbImplTest
             db.delete(toByteArray(key));
         }
 
+        public void deleteRange(String begin, String end)
+        {
+            db.deleteRange(toByteArray(begin), toByteArray(end));
+        }
+
+        public void merge(String key, String value)
+        {
+            db.merge(toByteArray(key), toByteArray(value));
+        }
+
         public SeekingIterator<String, String> iterator()
         {
             return new StringDbIterator(db.iterator());
@@ -1187,6 +1911,9 @@ public class DbImplTest
                     if (entry.getKey().getValueType() == ValueType.VALUE) {
                         result.add(entry.getValue().toString(UTF_8));
                     }
+                    else if (entry.getKey().getValueType() == ValueType.MERGE) {
+                        result.add("MERGE " + entry.getValue().toString(UTF_8));
+                    }
                     else {
                         result.add("DEL");
                     }
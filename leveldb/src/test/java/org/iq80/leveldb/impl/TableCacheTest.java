@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.impl;
+
+import com.google.common.base.Strings;
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.table.BytewiseComparator;
+import org.iq80.leveldb.table.IndexPartitionCache;
+import org.iq80.leveldb.table.TableBuilder;
+import org.iq80.leveldb.util.FileUtils;
+import org.iq80.leveldb.util.Slice;
+import org.iq80.leveldb.util.Slices;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Map.Entry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+public class TableCacheTest
+{
+    private static final int ENTRY_COUNT = 100;
+
+    @Test
+    public void testIndexPartitionsSurviveEviction()
+            throws Exception
+    {
+        File databaseDir = FileUtils.createTempDir("leveldb");
+        try {
+            InternalUserComparator comparator = new InternalUserComparator(new InternalKeyComparator(new BytewiseComparator()));
+            // uncompressed partitions are read in place when the tables are mapped
+            Options options = new Options().compressionType(CompressionType.NONE).blockSize(1).partitionedIndex(true);
+            FileMetaData[] files = new FileMetaData[3];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = writeTable(databaseDir, i + 1, options, comparator);
+            }
+
+            // room for one open table, so every lookup closes the previous table and opens its own
+            // again; its cached partitions must not point into the mapping of the closed table
+            TableCache tableCache = new TableCache(databaseDir, 1, comparator, true, new IndexPartitionCache(1 << 20));
+            try {
+                for (int round = 0; round < 3; round++) {
+                    for (FileMetaData file : files) {
+                        for (int i = 0; i < ENTRY_COUNT; i += 7) {
+                            Entry<InternalKey, Slice> entry = tableCache.get(file, new InternalKey(key(i), SequenceNumber.MAX_SEQUENCE_NUMBER, ValueType.VALUE));
+                            assertNotNull(entry);
+                            assertEquals(entry.getKey().getUserKey(), key(i));
+                            assertEquals(entry.getValue(), value(file.getNumber(), i));
+                        }
+                    }
+                }
+            }
+            finally {
+                tableCache.close();
+            }
+        }
+        finally {
+            FileUtils.deleteRecursively(databaseDir);
+        }
+    }
+
+    private static FileMetaData writeTable(File databaseDir, long number, Options options, InternalUserComparator comparator)
+            throws Exception
+    {
+        File file = new File(databaseDir, Filename.tableFileName(number));
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            FileChannel channel = output.getChannel();
+            TableBuilder builder = new TableBuilder(options, channel, comparator);
+            for (int i = 0; i < ENTRY_COUNT; i++) {
+                builder.add(new InternalKey(key(i), 1, ValueType.VALUE).encode(), value(number, i));
+            }
+            builder.finish();
+        }
+        return new FileMetaData(number, file.length(), new InternalKey(key(0), 1, ValueType.VALUE), new InternalKey(key(ENTRY_COUNT - 1), 1, ValueType.VALUE));
+    }
+
+    private static Slice key(int i)
+    {
+        return Slices.copiedBuffer(String.format("key%06d", i), UTF_8);
+    }
+
+    private static Slice value(long number, int i)
+    {
+        // the tables differ in layout, so a partition of one table does not index another
+        return Slices.copiedBuffer(Strings.repeat("value" + i, (int) number), UTF_8);
+    }
+}
@@ -17,15 +17,22 @@
  */
 package org.iq80.leveldb.table;
 
+import com.google.common.base.Strings;
 import org.iq80.leveldb.util.Slice;
 import org.iq80.leveldb.util.Slices;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
 
 public class BlockTest
 {
@@ -102,6 +109,75 @@ public class BlockTest
         }
     }
 
+    @Test
+    public void testSeekAcrossSharedPrefixes()
+            throws Exception
+    {
+        // runs of keys sharing prefixes of every length, some longer than the seek's scratch
+        // buffers; the suffixes are two apart so the keys derived by before() and after() fall
+        // between entries
+        List<BlockEntry> entries = new ArrayList<>();
+        String prefix = "";
+        for (int i = 0; i < 40; i++) {
+            prefix += (char) ('a' + i % 26);
+            for (int j = 0; j < 3; j++) {
+                entries.add(BlockHelper.createBlockEntry(prefix + "/" + (j * 2) + Strings.repeat("x", i * 2), "value" + i + "/" + j));
+            }
+        }
+        Collections.sort(entries, new Comparator<BlockEntry>()
+        {
+            @Override
+            public int compare(BlockEntry left, BlockEntry right)
+            {
+                return new BytewiseComparator().compare(left.getKey(), right.getKey());
+            }
+        });
+
+        for (int restartInterval : asList(1, 2, 3, 4, 7, 16)) {
+            blockTest(restartInterval, entries);
+        }
+    }
+
+    @Test
+    public void testHashIndex()
+            throws Exception
+    {
+        List<BlockEntry> entries = asList(
+                BlockHelper.createBlockEntry("beer/ale", "Lagunitas  Little Sumpin’ Sumpin’"),
+                BlockHelper.createBlockEntry("beer/ipa", "Lagunitas IPA"),
+                BlockHelper.createBlockEntry("beer/stout", "Lagunitas Imperial Stout"),
+                BlockHelper.createBlockEntry("scotch/light", "Oban 14"),
+                BlockHelper.createBlockEntry("scotch/medium", "Highland Park"),
+                BlockHelper.createBlockEntry("scotch/strong", "Lagavulin"));
+
+        for (int restartInterval = 1; restartInterval < entries.size(); restartInterval++) {
+            BlockBuilder builder = new BlockBuilder(256, restartInterval, new BytewiseComparator(), true);
+            for (BlockEntry entry : entries) {
+                builder.add(entry);
+            }
+            Slice blockSlice = builder.finish();
+            assertEquals(builder.currentSizeEstimate(), blockSlice.length());
+
+            for (Block block : asList(new Block(blockSlice, new BytewiseComparator()), directBlock(blockSlice))) {
+                BlockIterator blockIterator = block.iterator();
+                BlockHelper.assertSequence(blockIterator, entries);
+
+                for (BlockEntry entry : entries) {
+                    List<BlockEntry> nextEntries = entries.subList(entries.indexOf(entry), entries.size());
+                    assertTrue(blockIterator.seekForGet(entry.getKey()));
+                    BlockHelper.assertSequence(blockIterator, nextEntries);
+
+                    blockIterator.seek(BlockHelper.before(entry));
+                    BlockHelper.assertSequence(blockIterator, nextEntries);
+                }
+
+                if (blockIterator.seekForGet(Slices.copiedBuffer("whisky", UTF_8)) && blockIterator.hasNext()) {
+                    assertNotEquals(blockIterator.peek().getKey(), Slices.copiedBuffer("whisky", UTF_8));
+                }
+            }
+        }
+    }
+
     private static void blockTest(int blockRestartInterval, BlockEntry... entries)
     {
         blockTest(blockRestartInterval, asList(entries));
@@ -119,28 +195,40 @@ public class BlockTest
         Slice blockSlice = builder.finish();
         assertEquals(builder.currentSizeEstimate(), BlockHelper.estimateBlockSize(blockRestartInterval, entries));
 
-        Block block = new Block(blockSlice, new BytewiseComparator());
-        assertEquals(block.size(), BlockHelper.estimateBlockSize(blockRestartInterval, entries));
+        for (Block block : asList(new Block(blockSlice, new BytewiseComparator()), directBlock(blockSlice))) {
+            assertEquals(block.size(), BlockHelper.estimateBlockSize(blockRestartInterval, entries));
 
-        BlockIterator blockIterator = block.iterator();
-        BlockHelper.assertSequence(blockIterator, entries);
+            BlockIterator blockIterator = block.iterator();
+            BlockHelper.assertSequence(blockIterator, entries);
 
-        blockIterator.seekToFirst();
-        BlockHelper.assertSequence(blockIterator, entries);
+            blockIterator.seekToFirst();
+            BlockHelper.assertSequence(blockIterator, entries);
 
-        for (BlockEntry entry : entries) {
-            List<BlockEntry> nextEntries = entries.subList(entries.indexOf(entry), entries.size());
-            blockIterator.seek(entry.getKey());
-            BlockHelper.assertSequence(blockIterator, nextEntries);
+            for (BlockEntry entry : entries) {
+                List<BlockEntry> nextEntries = entries.subList(entries.indexOf(entry), entries.size());
+                blockIterator.seek(entry.getKey());
+                BlockHelper.assertSequence(blockIterator, nextEntries);
 
-            blockIterator.seek(BlockHelper.before(entry));
-            BlockHelper.assertSequence(blockIterator, nextEntries);
+                blockIterator.seek(BlockHelper.before(entry));
+                BlockHelper.assertSequence(blockIterator, nextEntries);
 
-            blockIterator.seek(BlockHelper.after(entry));
-            BlockHelper.assertSequence(blockIterator, nextEntries.subList(1, nextEntries.size()));
+                blockIterator.seek(BlockHelper.after(entry));
+                BlockHelper.assertSequence(blockIterator, nextEntries.subList(1, nextEntries.size()));
+            }
+
+            blockIterator.seek(Slices.wrappedBuffer(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}));
+            BlockHelper.assertSequence(blockIterator, Collections.<BlockEntry>emptyList());
         }
+    }
 
-        blockIterator.seek(Slices.wrappedBuffer(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}));
-        BlockHelper.assertSequence(blockIterator, Collections.<BlockEntry>emptyList());
+    /**
+     * Copies the block to a direct buffer, which is read in place like a block of a mapped table.
+     */
+    private static Block directBlock(Slice blockSlice)
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(blockSlice.length());
+        buffer.put(blockSlice.getBytes());
+        buffer.flip();
+        return new Block(buffer, new BytewiseComparator(), null);
     }
 }
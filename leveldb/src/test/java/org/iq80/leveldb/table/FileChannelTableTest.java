@@ -17,11 +17,21 @@
  */
 package org.iq80.leveldb.table;
 
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.util.Closeables;
 import org.iq80.leveldb.util.Slice;
+import org.testng.annotations.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class FileChannelTableTest
         extends TableTest
@@ -32,4 +42,86 @@ public class FileChannelTableTest
     {
         return new FileChannelTable(name, fileChannel, comparator, verifyChecksums);
     }
+
+    @Test
+    public void testCompressedBlockCache()
+            throws Exception
+    {
+        List<BlockEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(BlockHelper.createBlockEntry(String.format("key%06d", i), "value" + i));
+        }
+
+        File file = File.createTempFile("table", ".db");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel fileChannel = randomAccessFile.getChannel();
+        try {
+            TableBuilder builder = new TableBuilder(new Options().blockSize(256), fileChannel, new BytewiseComparator());
+            for (BlockEntry entry : entries) {
+                builder.add(entry);
+            }
+            builder.finish();
+
+            CompressedBlockCache blockCache = new CompressedBlockCache(1 << 20);
+
+            // neither opening the table nor a sequential scan touches the cache
+            Table table = new FileChannelTable(file.getAbsolutePath(), fileChannel, new BytewiseComparator(), true, null, blockCache, 7);
+            assertEquals(blockCache.getMemoryUsage(), 0);
+            assertEquals(blockCache.getMissCount(), 0);
+            BlockHelper.assertSequence(table.sequentialIterator(4096, null), entries);
+            long memoryUsage = blockCache.getMemoryUsage();
+            long misses = blockCache.getMissCount();
+
+            BlockHelper.assertSequence(table.iterator(), entries);
+            assertTrue(blockCache.getMemoryUsage() > memoryUsage);
+            assertTrue(blockCache.getMissCount() > misses);
+            assertEquals(blockCache.getHitCount(), 0);
+
+            // the blocks stay cached for the file number when the table is opened again
+            misses = blockCache.getMissCount();
+            table = new FileChannelTable(file.getAbsolutePath(), fileChannel, new BytewiseComparator(), true, null, blockCache, 7);
+            BlockHelper.assertSequence(table.iterator(), entries);
+            assertEquals(blockCache.getMissCount(), misses);
+            assertTrue(blockCache.getHitCount() > 0);
+        }
+        finally {
+            Closeables.closeQuietly(fileChannel);
+            Closeables.closeQuietly(randomAccessFile);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCompressedBlockCacheEviction()
+            throws Exception
+    {
+        List<BlockEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(BlockHelper.createBlockEntry(String.format("key%06d", i), "value" + i));
+        }
+
+        File file = File.createTempFile("table", ".db");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel fileChannel = randomAccessFile.getChannel();
+        try {
+            TableBuilder builder = new TableBuilder(new Options().blockSize(256), fileChannel, new BytewiseComparator());
+            for (BlockEntry entry : entries) {
+                builder.add(entry);
+            }
+            builder.finish();
+
+            // room for a few blocks only, so blocks are freed while the table is read
+            CompressedBlockCache blockCache = new CompressedBlockCache(1024);
+            Table table = new FileChannelTable(file.getAbsolutePath(), fileChannel, new BytewiseComparator(), true, null, blockCache, 7);
+            for (int i = 0; i < 3; i++) {
+                BlockHelper.assertSequence(table.iterator(), entries);
+            }
+            assertTrue(blockCache.getMemoryUsage() <= 1024);
+        }
+        finally {
+            Closeables.closeQuietly(fileChannel);
+            Closeables.closeQuietly(randomAccessFile);
+            file.delete();
+        }
+    }
 }
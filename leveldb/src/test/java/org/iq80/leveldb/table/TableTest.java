@@ -17,7 +17,16 @@
  */
 package org.iq80.leveldb.table;
 
+import com.google.common.base.Strings;
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.DBComparator;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.impl.BlobIndex;
+import org.iq80.leveldb.impl.InternalEntryClassifier;
+import org.iq80.leveldb.impl.InternalKey;
+import org.iq80.leveldb.impl.InternalKeyComparator;
+import org.iq80.leveldb.impl.InternalUserComparator;
+import org.iq80.leveldb.impl.ValueType;
 import org.iq80.leveldb.impl.SeekingIterator;
 import org.iq80.leveldb.util.Closeables;
 import org.iq80.leveldb.util.Slice;
@@ -30,12 +39,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 public abstract class TableTest
@@ -105,6 +120,192 @@ public abstract class TableTest
         tableTest(BlockHelper.estimateBlockSize(Integer.MAX_VALUE, entries) / 3, Integer.MAX_VALUE, entries);
     }
 
+    @Test
+    public void testPartitionedIndex()
+            throws Exception
+    {
+        List<BlockEntry> entries = asList(
+                BlockHelper.createBlockEntry("beer/ale", "Lagunitas  Little Sumpin’ Sumpin’"),
+                BlockHelper.createBlockEntry("beer/ipa", "Lagunitas IPA"),
+                BlockHelper.createBlockEntry("beer/stout", "Lagunitas Imperial Stout"),
+                BlockHelper.createBlockEntry("scotch/light", "Oban 14"),
+                BlockHelper.createBlockEntry("scotch/medium", "Highland Park"),
+                BlockHelper.createBlockEntry("scotch/strong", "Lagavulin"));
+
+        // one entry per block and one block per index partition
+        tableTest(new Options().blockSize(1).blockRestartInterval(Integer.MAX_VALUE).partitionedIndex(true), entries);
+
+        // about 3 blocks in a single partition
+        tableTest(new Options().blockSize(BlockHelper.estimateBlockSize(Integer.MAX_VALUE, entries) / 3).blockRestartInterval(Integer.MAX_VALUE).partitionedIndex(true), entries);
+
+        tableTest(new Options().blockSize(Integer.MAX_VALUE).partitionedIndex(true), Collections.<BlockEntry>emptyList());
+    }
+
+    @Test
+    public void testPropertiesCountDeletions()
+            throws Exception
+    {
+        InternalUserComparator comparator = new InternalUserComparator(new InternalKeyComparator(new BytewiseComparator()));
+        TableBuilder builder = new TableBuilder(new Options(), fileChannel, comparator, null, new InternalEntryClassifier());
+        builder.add(new InternalKey(Slices.copiedBuffer("a", UTF_8), 3, ValueType.VALUE).encode(), Slices.copiedBuffer("value", UTF_8));
+        builder.add(new InternalKey(Slices.copiedBuffer("b", UTF_8), 2, ValueType.DELETION).encode(), Slices.EMPTY_SLICE);
+        builder.add(new InternalKey(Slices.copiedBuffer("c", UTF_8), 1, ValueType.BLOB_INDEX).encode(), new BlobIndex(7, 0, 1000).encode());
+        builder.finish();
+
+        TableProperties properties = createTable(file.getAbsolutePath(), fileChannel, comparator, true).getProperties();
+        assertEquals(properties.getEntryCount(), 3);
+        assertEquals(properties.getDeletionCount(), 1);
+        assertEquals(properties.getBlobValueSize(), 1000);
+        assertEquals(properties.getDeletionRatio(), 1.0 / 3);
+    }
+
+    @Test
+    public void testHashIndexWithCustomComparator()
+            throws Exception
+    {
+        // keys that differ only in case are equal, so their bytes must not be hashed
+        CustomUserComparator comparator = new CustomUserComparator(new DBComparator()
+        {
+            @Override
+            public String name()
+            {
+                return "case-insensitive";
+            }
+
+            @Override
+            public int compare(byte[] left, byte[] right)
+            {
+                return String.CASE_INSENSITIVE_ORDER.compare(new String(left, UTF_8), new String(right, UTF_8));
+            }
+
+            @Override
+            public byte[] findShortestSeparator(byte[] start, byte[] limit)
+            {
+                return start;
+            }
+
+            @Override
+            public byte[] findShortSuccessor(byte[] key)
+            {
+                return key;
+            }
+        });
+        TableBuilder builder = new TableBuilder(new Options().blockHashIndex(true), fileChannel, comparator);
+        for (int i = 0; i < 100; i++) {
+            builder.add(Slices.copiedBuffer(String.format("key%03d", i), UTF_8), Slices.copiedBuffer("value" + i, UTF_8));
+        }
+        builder.finish();
+
+        Table table = createTable(file.getAbsolutePath(), fileChannel, comparator, true);
+        for (int i = 0; i < 100; i++) {
+            BlockEntry entry = table.get(Slices.copiedBuffer(String.format("KEY%03d", i), UTF_8));
+            assertEquals(entry.getKey(), Slices.copiedBuffer(String.format("key%03d", i), UTF_8));
+        }
+    }
+
+    @Test
+    public void testParallelCompression()
+            throws Exception
+    {
+        List<BlockEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add(BlockHelper.createBlockEntry(String.format("key%06d", i), Strings.repeat("value" + i, 10)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (Options options : asList(new Options().blockSize(256), new Options().blockSize(256).partitionedIndex(true))) {
+                Table expected = buildTable(options, null, entries);
+                Table actual = buildTable(options.compressionThreads(4), executor, entries);
+
+                // the blocks are laid out identically; only the creation time in the properties block may differ
+                assertEquals(actual.getProperties().getDataBlockCount(), expected.getProperties().getDataBlockCount());
+                assertEquals(actual.getProperties().getDataSize(), expected.getProperties().getDataSize());
+                for (BlockEntry entry : entries) {
+                    assertEquals(actual.getApproximateOffsetOf(entry.getKey()), expected.getApproximateOffsetOf(entry.getKey()));
+                }
+                BlockHelper.assertSequence(actual.iterator(), entries);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBufferedWrites()
+            throws Exception
+    {
+        List<BlockEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            entries.add(BlockHelper.createBlockEntry(String.format("key%06d", i * 10), Strings.repeat("value" + i, 30)));
+        }
+
+        // small blocks are coalesced in the write buffer, blocks larger than the buffer are written through
+        tableTest(new Options().blockSize(256).bytesPerSync(4096), entries);
+        tableTest(new Options().blockSize(TableBuilder.WRITE_BUFFER_SIZE).compressionType(CompressionType.NONE).bytesPerSync(4096), entries);
+    }
+
+    @Test
+    public void testSequentialIterator()
+            throws Exception
+    {
+        List<BlockEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add(BlockHelper.createBlockEntry(String.format("key%06d", i), Strings.repeat("value" + i, 10)));
+        }
+        Table table = buildTable(new Options().blockSize(256), null, entries);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // chunks smaller than, around and larger than a block
+            for (int readaheadSize : new int[] {1, 300, 4096, 1 << 20}) {
+                BlockHelper.assertSequence(table.sequentialIterator(readaheadSize, null), entries);
+                BlockHelper.assertSequence(table.sequentialIterator(readaheadSize, executor), entries);
+
+                SeekingIterator<Slice, Slice> iterator = table.sequentialIterator(readaheadSize, executor);
+                iterator.seek(entries.get(1000).getKey());
+                BlockHelper.assertSequence(iterator, entries.subList(1000, entries.size()));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReferenceCounting()
+            throws Exception
+    {
+        List<BlockEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(BlockHelper.createBlockEntry(String.format("key%06d", i), "value" + i));
+        }
+        Table table = buildTable(new Options(), null, entries);
+
+        assertTrue(table.retain());
+        table.release();
+        BlockHelper.assertSequence(table.iterator(), entries);
+        assertTrue(fileChannel.isOpen());
+
+        // releasing the opener's reference closes the table at once
+        table.release();
+        assertFalse(fileChannel.isOpen());
+        assertFalse(table.retain());
+    }
+
+    private Table buildTable(Options options, ExecutorService executor, List<BlockEntry> entries)
+            throws IOException
+    {
+        reopenFile();
+        TableBuilder builder = new TableBuilder(options, fileChannel, new BytewiseComparator(), executor);
+        for (BlockEntry entry : entries) {
+            builder.add(entry);
+        }
+        builder.finish();
+        return createTable(file.getAbsolutePath(), fileChannel, new BytewiseComparator(), true);
+    }
+
     private void tableTest(int blockSize, int blockRestartInterval, BlockEntry... entries)
             throws IOException
     {
@@ -113,9 +314,14 @@ public abstract class TableTest
 
     private void tableTest(int blockSize, int blockRestartInterval, List<BlockEntry> entries)
             throws IOException
+    {
+        tableTest(new Options().blockSize(blockSize).blockRestartInterval(blockRestartInterval), entries);
+    }
+
+    private void tableTest(Options options, List<BlockEntry> entries)
+            throws IOException
     {
         reopenFile();
-        Options options = new Options().blockSize(blockSize).blockRestartInterval(blockRestartInterval);
         TableBuilder builder = new TableBuilder(options, fileChannel, new BytewiseComparator());
 
         for (BlockEntry entry : entries) {
@@ -124,6 +330,21 @@ public abstract class TableTest
         builder.finish();
 
         Table table = createTable(file.getAbsolutePath(), fileChannel, new BytewiseComparator(), true);
+        assertEquals(table.isPartitionedIndex(), options.partitionedIndex());
+
+        TableProperties properties = table.getProperties();
+        long rawKeySize = 0;
+        long rawValueSize = 0;
+        for (BlockEntry entry : entries) {
+            rawKeySize += entry.getKey().length();
+            rawValueSize += entry.getValue().length();
+        }
+        assertEquals(properties.getEntryCount(), entries.size());
+        assertEquals(properties.getDeletionCount(), 0);
+        assertEquals(properties.getRawKeySize(), rawKeySize);
+        assertEquals(properties.getRawValueSize(), rawValueSize);
+        assertEquals(properties.getDataBlockCount() > 0, !entries.isEmpty());
+        assertTrue(properties.getDataSize() <= table.getApproximateOffsetOf(Slices.wrappedBuffer(new byte[] {(byte) 0xFF})));
 
         SeekingIterator<Slice, Slice> seekingIterator = table.iterator();
         BlockHelper.assertSequence(seekingIterator, entries);
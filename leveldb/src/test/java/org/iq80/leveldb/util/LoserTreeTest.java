@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.util;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class LoserTreeTest
+{
+    @Test
+    public void testMerge()
+    {
+        Random random = new Random(42);
+        for (int inputCount = 0; inputCount <= 17; inputCount++) {
+            List<List<Entry<Integer, Integer>>> inputs = new ArrayList<>();
+            List<Entry<Integer, Integer>> expected = new ArrayList<>();
+            for (int input = 0; input < inputCount; input++) {
+                List<Entry<Integer, Integer>> entries = new ArrayList<>();
+                int size = random.nextInt(50);
+                for (int i = 0; i < size; i++) {
+                    // the value records the input, so ties can be checked
+                    entries.add(Maps.immutableEntry(random.nextInt(100), input));
+                }
+                Collections.sort(entries, new Ordering<Entry<Integer, Integer>>()
+                {
+                    @Override
+                    public int compare(Entry<Integer, Integer> left, Entry<Integer, Integer> right)
+                    {
+                        return Integer.compare(left.getKey(), right.getKey());
+                    }
+                });
+                inputs.add(entries);
+                expected.addAll(entries);
+            }
+            // equal keys come out in input order
+            Collections.sort(expected, new Ordering<Entry<Integer, Integer>>()
+            {
+                @Override
+                public int compare(Entry<Integer, Integer> left, Entry<Integer, Integer> right)
+                {
+                    int result = Integer.compare(left.getKey(), right.getKey());
+                    if (result == 0) {
+                        result = Integer.compare(left.getValue(), right.getValue());
+                    }
+                    return result;
+                }
+            });
+
+            List<Iterator<Entry<Integer, Integer>>> iterators = new ArrayList<>();
+            for (List<Entry<Integer, Integer>> input : inputs) {
+                iterators.add(input.iterator());
+            }
+            LoserTree<Integer, Integer> loserTree = new LoserTree<>(iterators, Ordering.<Integer>natural());
+            loserTree.reset();
+
+            List<Entry<Integer, Integer>> actual = new ArrayList<>();
+            for (Entry<Integer, Integer> entry = loserTree.next(); entry != null; entry = loserTree.next()) {
+                actual.add(entry);
+            }
+            assertEquals(actual, expected);
+            assertNull(loserTree.next());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 the original author or authors.
+ * See the notice.md file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.iq80.leveldb.util;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MappedFileTest
+{
+    @Test
+    public void testReadAcrossSegments()
+            throws Exception
+    {
+        File file = File.createTempFile("mapped", ".dat");
+        try {
+            byte[] contents = new byte[1000];
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = (byte) i;
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(contents);
+            }
+
+            try (FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+                    MappedFile mappedFile = new MappedFile(channel, 64)) {
+                assertEquals(mappedFile.size(), contents.length);
+                for (int offset = 0; offset < contents.length; offset += 7) {
+                    for (int length : new int[] {0, 1, 10, 64, 150}) {
+                        if (offset + length > contents.length) {
+                            continue;
+                        }
+                        ByteBuffer buffer = mappedFile.read(offset, length);
+                        assertEquals(buffer.remaining(), length);
+                        for (int i = 0; i < length; i++) {
+                            assertEquals(buffer.get(buffer.position() + i), contents[offset + i]);
+                        }
+                        // only ranges that fit in one segment are views of the mapping
+                        assertEquals(buffer.isReadOnly(), length > 0 && offset % 64 + length <= 64);
+                    }
+                }
+            }
+        }
+        finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testReadPastEnd()
+            throws Exception
+    {
+        File file = File.createTempFile("mapped", ".dat");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[100]);
+        }
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+                MappedFile mappedFile = new MappedFile(channel, 64)) {
+            mappedFile.read(90, 20);
+        }
+        finally {
+            assertTrue(file.delete());
+        }
+    }
+}
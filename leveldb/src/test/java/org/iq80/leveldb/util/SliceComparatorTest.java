@@ -17,8 +17,12 @@
  */
 package org.iq80.leveldb.util;
 
+import com.google.common.primitives.UnsignedBytes;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.iq80.leveldb.util.SliceComparator.SLICE_COMPARATOR;
 import static org.testng.Assert.assertEquals;
@@ -48,6 +52,47 @@ public class SliceComparatorTest
                 Slices.copiedBuffer("abcdefghijklmnopqrstuvwxyz", UTF_8));
     }
 
+    @Test
+    public void testRegionComparison()
+    {
+        Slice left = Slices.copiedBuffer("xxbeer/ipa-suffix", UTF_8);
+        Slice right = Slices.copiedBuffer("beer/ale", UTF_8);
+        for (int leftLength = 0; leftLength <= 8; leftLength++) {
+            for (int rightLength = 0; rightLength <= 8; rightLength++) {
+                int expected = Integer.signum(left.slice(2, leftLength).compareTo(right.slice(0, rightLength)));
+                assertEquals(Integer.signum(left.compareTo(2, leftLength, right, 0, rightLength)), expected);
+                assertEquals(Integer.signum(right.compareTo(0, rightLength, left, 2, leftLength)), -expected);
+            }
+        }
+    }
+
+    @Test
+    public void testMismatchAtEveryPosition()
+    {
+        Random random = new Random(42);
+        byte[] left = new byte[40];
+        random.nextBytes(left);
+        for (int offset = 0; offset < 3; offset++) {
+            for (int length = 0; length + offset + 1 <= left.length; length++) {
+                byte[] right = Arrays.copyOfRange(left, offset + 1, offset + 1 + length);
+                Slice leftSlice = new Slice(left, offset + 1, length);
+                Slice rightSlice = new Slice(right);
+                assertEquals(leftSlice.sharedPrefixLength(rightSlice), length);
+                assertEquals(leftSlice.compareTo(rightSlice), 0);
+                assertEquals(leftSlice, rightSlice);
+                for (int i = 0; i < length; i++) {
+                    byte[] changed = right.clone();
+                    changed[i] = (byte) (changed[i] ^ 0x80);
+                    Slice changedSlice = new Slice(changed);
+                    assertEquals(leftSlice.sharedPrefixLength(changedSlice), i);
+                    assertEquals(Integer.signum(leftSlice.compareTo(changedSlice)),
+                            Integer.signum(UnsignedBytes.lexicographicalComparator().compare(leftSlice.getBytes(), changed)));
+                    assertTrue(!leftSlice.equals(changedSlice));
+                }
+            }
+        }
+    }
+
     public static void assertAllEqual(Slice left, Slice right)
     {
         for (int i = 0; i < left.length(); i++) {